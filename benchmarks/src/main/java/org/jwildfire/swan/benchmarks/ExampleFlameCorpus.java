@@ -0,0 +1,111 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jwildfire.swan.benchmarks;
+
+import org.jwildfire.base.Prefs;
+import org.jwildfire.create.tina.io.FlameReader;
+import org.jwildfire.swan.flames.mapper.FlameMapper;
+import org.jwildfire.swan.flames.mapper.FlameOptimizer;
+import org.jwildfire.swan.flames.mapper.FlameTransformer;
+import org.jwildfire.swan.flames.mapper.LayerMapper;
+import org.jwildfire.swan.flames.mapper.PreserveZClassifier;
+import org.jwildfire.swan.flames.mapper.XFormMapper;
+import org.jwildfire.swan.flames.repository.FlamesRepository;
+import org.jwildfire.swan.flames.repository.VariationResourceRepository;
+import org.jwildfire.swan.flames.service.FlameParseCache;
+import org.jwildfire.swan.flames.service.FlamesService;
+import org.jwildfire.swan.flames.service.RandomFlameGeneratorService;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// the bundled examples/*.flame files which are used as input for all benchmarks
+public class ExampleFlameCorpus {
+  private static final String EXAMPLE_PATTERN = "classpath*:examples/*.flame";
+
+  private static final PreserveZClassifier PRESERVE_Z_CLASSIFIER = new PreserveZClassifier("");
+  private static final VariationResourceRepository RESOURCE_REPOSITORY = new VariationResourceRepository("", 268435456L, 16384);
+
+  private final List<String> flameXmls;
+
+  private ExampleFlameCorpus(List<String> flameXmls) {
+    this.flameXmls = flameXmls;
+  }
+
+  public static ExampleFlameCorpus load() throws IOException {
+    Resource[] resources = new PathMatchingResourcePatternResolver(ExampleFlameCorpus.class.getClassLoader())
+        .getResources(EXAMPLE_PATTERN);
+    Arrays.sort(resources, Comparator.comparing(Resource::getFilename));
+    List<String> xmls = new ArrayList<>();
+    for (Resource resource : resources) {
+      try (InputStream in = resource.getInputStream()) {
+        xmls.add(StreamUtils.copyToString(in, StandardCharsets.UTF_8));
+      }
+    }
+    if (xmls.isEmpty()) {
+      throw new IllegalStateException("No example flames found on the classpath");
+    }
+    return new ExampleFlameCorpus(xmls);
+  }
+
+  public List<String> getFlameXmls() {
+    return flameXmls;
+  }
+
+  public List<org.jwildfire.create.tina.base.Flame> readJwildfireFlames() {
+    List<org.jwildfire.create.tina.base.Flame> res = new ArrayList<>();
+    for (String flameXml : flameXmls) {
+      res.add(readJwildfireFlame(flameXml));
+    }
+    return res;
+  }
+
+  public static org.jwildfire.create.tina.base.Flame readJwildfireFlame(String flameXml) {
+    return new FlameReader(Prefs.getPrefs()).readFlamesfromXML(flameXml).stream().findFirst().orElseThrow();
+  }
+
+  // wires the mapper graph the same way as the Spring context does
+  public static FlameMapper createFlameMapper() {
+    return new FlameMapper(new LayerMapper(createXFormMapper()), createFlameTransformer());
+  }
+
+  public static FlameTransformer createFlameTransformer() {
+    return new FlameTransformer(PRESERVE_Z_CLASSIFIER);
+  }
+
+  public static XFormMapper createXFormMapper() {
+    return new XFormMapper(RESOURCE_REPOSITORY);
+  }
+
+  // a parse-cache of size 0 evicts every entry immediately, i.e. measures the plain pipeline
+  public static FlamesService createFlamesService() {
+    return createFlamesService(0L);
+  }
+
+  public static FlamesService createFlamesService(long parseCacheSizeInBytes) {
+    return new FlamesService(new FlamesRepository(), createFlameMapper(), new FlameParseCache(RESOURCE_REPOSITORY, parseCacheSizeInBytes), new FlameOptimizer(),
+        new RandomFlameGeneratorService(5000L, 5000L, "", true, 16));
+  }
+}
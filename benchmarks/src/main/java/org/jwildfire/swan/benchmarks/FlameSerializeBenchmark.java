@@ -0,0 +1,89 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jwildfire.swan.benchmarks;
+
+import org.jwildfire.create.tina.io.FlameWriter;
+import org.jwildfire.swan.flames.mapper.FlameMapper;
+import org.jwildfire.swan.flames.model.flame.Flame;
+import org.jwildfire.swan.flames.service.FlamesService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the stages of FlamesService.convertFlameToXml, each operation processes the next flame
+ * of the example corpus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FlameSerializeBenchmark {
+  private List<Flame> flames;
+  private List<org.jwildfire.create.tina.base.Flame> jwfFlames;
+  private FlamesService flamesService;
+  private FlameMapper flameMapper;
+  private int idx;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    ExampleFlameCorpus corpus = ExampleFlameCorpus.load();
+    flamesService = ExampleFlameCorpus.createFlamesService();
+    flameMapper = ExampleFlameCorpus.createFlameMapper();
+    flames = new ArrayList<>();
+    jwfFlames = new ArrayList<>();
+    for (String flameXml : corpus.getFlameXmls()) {
+      Flame flame = flamesService.parseFlame(flameXml);
+      flames.add(flame);
+      jwfFlames.add(flameMapper.mapToJwildfire(flame));
+    }
+  }
+
+  private int nextIdx() {
+    idx = (idx + 1) % flames.size();
+    return idx;
+  }
+
+  @Benchmark
+  public org.jwildfire.create.tina.base.Flame mapToJwildfire() {
+    return flameMapper.mapToJwildfire(flames.get(nextIdx()));
+  }
+
+  @Benchmark
+  public String getFlameXml() throws Exception {
+    return new FlameWriter().getFlameXML(jwfFlames.get(nextIdx()));
+  }
+
+  @Benchmark
+  public String convertFlameToXml() {
+    return flamesService.convertFlameToXml(flames.get(nextIdx()));
+  }
+}
@@ -0,0 +1,110 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jwildfire.swan.benchmarks;
+
+import org.jwildfire.swan.flames.mapper.FlameMapper;
+import org.jwildfire.swan.flames.mapper.FlameTransformation;
+import org.jwildfire.swan.flames.mapper.FlameTransformer;
+import org.jwildfire.swan.flames.mapper.XFormMapper;
+import org.jwildfire.swan.flames.model.flame.Flame;
+import org.jwildfire.swan.flames.model.flame.Layer;
+import org.jwildfire.swan.flames.model.flame.XForm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the XFormMapper on its own, each operation maps all xforms of the next layer of the
+ * example corpus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class XFormMapperBenchmark {
+  private List<FlameTransformation> transformations;
+  private List<org.jwildfire.create.tina.base.Layer> jwfLayers;
+  private List<Layer> layers;
+  private XFormMapper xFormMapper;
+  private int idx;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    ExampleFlameCorpus corpus = ExampleFlameCorpus.load();
+    FlameTransformer transformer = ExampleFlameCorpus.createFlameTransformer();
+    FlameMapper flameMapper = ExampleFlameCorpus.createFlameMapper();
+    xFormMapper = ExampleFlameCorpus.createXFormMapper();
+    transformations = new ArrayList<>();
+    jwfLayers = new ArrayList<>();
+    layers = new ArrayList<>();
+    for (org.jwildfire.create.tina.base.Flame jwfFlame : corpus.readJwildfireFlames()) {
+      // map the same (transformed) xforms, which the FlameMapper would pass to the XFormMapper
+      FlameTransformation transformation = transformer.transformFlame(jwfFlame);
+      Flame flame = flameMapper.mapFromJwildfire(jwfFlame);
+      for (int i = 0; i < jwfFlame.getLayers().size(); i++) {
+        transformations.add(transformation);
+        jwfLayers.add(jwfFlame.getLayers().get(i));
+        layers.add(flame.getLayers().get(i));
+      }
+    }
+  }
+
+  private int nextIdx() {
+    idx = (idx + 1) % layers.size();
+    return idx;
+  }
+
+  @Benchmark
+  public void mapFromJwildfire(Blackhole bh) {
+    int i = nextIdx();
+    FlameTransformation transformation = transformations.get(i);
+    org.jwildfire.create.tina.base.Flame jwfFlame = transformation.getFlame();
+    org.jwildfire.create.tina.base.Layer jwfLayer = jwfLayers.get(i);
+    for (org.jwildfire.create.tina.base.XForm xForm : transformation.getXForms(jwfLayer)) {
+      bh.consume(xFormMapper.mapFromJwildfire(jwfFlame, jwfLayer, xForm));
+    }
+    for (org.jwildfire.create.tina.base.XForm xForm : transformation.getFinalXForms(jwfLayer)) {
+      bh.consume(xFormMapper.mapFromJwildfire(jwfFlame, jwfLayer, xForm));
+    }
+  }
+
+  @Benchmark
+  public void mapToJwildfire(Blackhole bh) {
+    Layer layer = layers.get(nextIdx());
+    for (XForm xForm : layer.getXforms()) {
+      bh.consume(xFormMapper.mapToJwildfire(layer, xForm));
+    }
+    for (XForm xForm : layer.getFinalXforms()) {
+      bh.consume(xFormMapper.mapToJwildfire(layer, xForm));
+    }
+  }
+}
@@ -0,0 +1,526 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+
+import {default as SourceFlameParam} from '../../../generated/org/jwildfire/swan/flames/model/flame/FlameParam'
+import {default as SourceFlameParamCurve} from '../../../generated/org/jwildfire/swan/flames/model/flame/FlameParamCurve'
+import FlameParamCurveInterpolation from '../../../generated/org/jwildfire/swan/flames/model/flame/FlameParamCurveInterpolation'
+import FlameParamDataType from '../../../generated/org/jwildfire/swan/flames/model/flame/FlameParamDataType'
+import FlameParamType from '../../../generated/org/jwildfire/swan/flames/model/flame/FlameParamType'
+import VariationResourceType from '../../../generated/org/jwildfire/swan/flames/model/flame/VariationResourceType'
+import {default as SourceXForm} from '../../../generated/org/jwildfire/swan/flames/model/flame/XForm'
+import {default as SourceLayer} from '../../../generated/org/jwildfire/swan/flames/model/flame/Layer'
+import {default as SourceFlame} from '../../../generated/org/jwildfire/swan/flames/model/flame/Flame'
+import {default as SourceVariation} from '../../../generated/org/jwildfire/swan/flames/model/flame/Variation'
+import {default as SourceRandomFlame} from '../../../generated/org/jwildfire/swan/flames/model/flame/RandomFlame'
+
+// Client-side counterpart of FlameBinaryCodec.java, see there for a description of the format.
+// Both must be kept in sync.
+
+export const FLAME_BINARY_MEDIA_TYPE = 'application/x-swan-flame'
+const VERSION = 2
+const MAGIC = [0x53, 0x57, 0x46] // "SWF"
+const RECORD_FLAME = 1
+const RECORD_RANDOM_FLAME = 2
+
+const PARAM_INT = 0x01
+const PARAM_CURVE = 0x02
+const PARAM_HAS_VALUE = 0x04
+
+// same order as the java-enums
+const INTERPOLATIONS = [FlameParamCurveInterpolation.SPLINE, FlameParamCurveInterpolation.BEZIER, FlameParamCurveInterpolation.LINEAR]
+const RESOURCE_TYPES = [VariationResourceType.BYTEARRAY, VariationResourceType.HREF, VariationResourceType.IMAGE_FILENAME,
+    VariationResourceType.IMAGE_FILE, VariationResourceType.SVG_FILE, VariationResourceType.FONT_NAME,
+    VariationResourceType.JAVA_CODE, VariationResourceType.OBJ_MESH, VariationResourceType.FLAME_FILENAME]
+
+const AFFINE_PARAM_SUFFIXES = ['00', '01', '10', '11', '20', '21', 'Rotate', 'Scale']
+const AFFINE_DEFAULTS = [1.0, 0.0, 0.0, 1.0, 0.0, 0.0, 0.0, 1.0]
+// xyC00 ... zxPScale, the "C" is omitted for rotate and scale of the pre-affine transforms (xyRotate, xyScale)
+const XFORM_PARAM_NAMES: string[] = ['', 'P'].flatMap(post => ['xy', 'yz', 'zx'].flatMap(plane =>
+    AFFINE_PARAM_SUFFIXES.map(suffix =>
+        post === '' ? (suffix.length === 2 ? `${plane}C${suffix}` : `${plane}${suffix}`) : `${plane}P${suffix}`)))
+const XFORM_PARAM_MASK_BYTES = 6
+// minimum encoded sizes, used to reject sizes which could not fit into the remaining data
+const MIN_LAYER_BYTES = 2 * 8 + 3
+const MIN_XFORM_BYTES = 3 * 8 + 1 + XFORM_PARAM_MASK_BYTES + 1
+const MIN_VARIATION_BYTES = 4
+
+const FLAME_FIELDS: [string, 'double' | 'int' | 'bool' | 'param' | 'string'][] = [
+    ['brightness', 'double'], ['contrast', 'double'], ['sampleDensity', 'double'], ['lowDensityBrightness', 'double'],
+    ['foregroundOpacity', 'double'], ['vibrancy', 'double'], ['saturation', 'double'], ['gamma', 'double'],
+    ['gammaThreshold', 'double'], ['balanceRed', 'double'], ['balanceGreen', 'double'], ['balanceBlue', 'double'],
+    ['whiteLevel', 'double'], ['pixelsPerUnit', 'double'], ['width', 'int'], ['height', 'int'],
+    ['camZoom', 'param'], ['centreX', 'param'], ['centreY', 'param'], ['camYaw', 'param'], ['camPitch', 'param'],
+    ['camRoll', 'param'], ['camBank', 'param'], ['camDOF', 'double'], ['camDOFArea', 'double'],
+    ['camPerspective', 'double'], ['diminishZ', 'double'], ['camPosX', 'double'], ['camPosY', 'double'],
+    ['camPosZ', 'double'], ['newCamDOF', 'bool'], ['bgTransparency', 'bool'], ['dimZDistance', 'double'],
+    ['camZ', 'double'], ['focusX', 'double'], ['focusY', 'double'], ['focusZ', 'double'], ['camDOFExponent', 'double'],
+    ['motionBlurLength', 'int'], ['motionBlurTimeStep', 'double'], ['motionBlurDecay', 'double'], ['frame', 'int'],
+    ['frameCount', 'int'], ['fps', 'int'], ['resolutionProfile', 'string'], ['qualityProfile', 'string'],
+    ['name', 'string'], ['bgImageFilename', 'string'], ['lastFilename', 'string']]
+
+class Writer {
+    private buffer = new Uint8Array(4096)
+    private view = new DataView(this.buffer.buffer)
+    private pos = 0
+
+    private ensure(size: number) {
+        if (this.pos + size > this.buffer.length) {
+            const newBuffer = new Uint8Array(Math.max(this.buffer.length * 2, this.pos + size))
+            newBuffer.set(this.buffer)
+            this.buffer = newBuffer
+            this.view = new DataView(newBuffer.buffer)
+        }
+    }
+
+    writeHeader(recordType: number) {
+        MAGIC.forEach(b => this.writeByte(b))
+        this.writeByte(VERSION)
+        this.writeByte(recordType)
+    }
+
+    writeByte(value: number) {
+        this.ensure(1)
+        this.buffer[this.pos++] = value & 0xff
+    }
+
+    writeBytes(bytes: Uint8Array) {
+        this.ensure(bytes.length)
+        this.buffer.set(bytes, this.pos)
+        this.pos += bytes.length
+    }
+
+    writeBoolean(value: boolean) {
+        this.writeByte(value ? 1 : 0)
+    }
+
+    writeSize(value: number) {
+        this.writeVarInt(value >>> 0)
+    }
+
+    writeInt(value: number) {
+        const v = Math.round(value) | 0
+        this.writeVarInt(((v << 1) ^ (v >> 31)) >>> 0)
+    }
+
+    private writeVarInt(value: number) {
+        while (value > 0x7f) {
+            this.writeByte((value & 0x7f) | 0x80)
+            value >>>= 7
+        }
+        this.writeByte(value)
+    }
+
+    writeDouble(value: number) {
+        this.ensure(8)
+        this.view.setFloat64(this.pos, value, true)
+        this.pos += 8
+    }
+
+    writeString(value: string | undefined | null) {
+        if (value === undefined || value === null) {
+            this.writeVarInt(0)
+        } else {
+            const bytes = new TextEncoder().encode(value)
+            this.writeVarInt(bytes.length + 1)
+            this.writeBytes(bytes)
+        }
+    }
+
+    toUint8Array(): Uint8Array {
+        return this.buffer.slice(0, this.pos)
+    }
+}
+
+class Reader {
+    private view: DataView
+    private pos = 0
+
+    constructor(private data: Uint8Array) {
+        this.view = new DataView(data.buffer, data.byteOffset, data.byteLength)
+    }
+
+    readHeader(expectedRecordType: number) {
+        MAGIC.forEach(b => {
+            if (this.readByte() !== b) {
+                throw new Error('Invalid flame data')
+            }
+        })
+        const version = this.readByte()
+        if (version !== VERSION) {
+            throw new Error(`Unsupported flame data version ${version}`)
+        }
+        const recordType = this.readByte()
+        if (recordType !== expectedRecordType) {
+            throw new Error(`Unexpected record type ${recordType}`)
+        }
+    }
+
+    readByte(): number {
+        if (this.pos >= this.data.length) {
+            throw new Error('Truncated flame data')
+        }
+        return this.data[this.pos++]
+    }
+
+    readBytes(count: number): Uint8Array {
+        if (this.pos + count > this.data.length) {
+            throw new Error('Truncated flame data')
+        }
+        const res = this.data.subarray(this.pos, this.pos + count)
+        this.pos += count
+        return res
+    }
+
+    readBoolean(): boolean {
+        return this.readByte() !== 0
+    }
+
+    // a size of elements which take at least the given number of bytes each (or one bit of a mask if omitted)
+    readSize(minBytesPerElement?: number): number {
+        const value = this.readVarInt()
+        const remaining = this.data.length - this.pos
+        if (value > (minBytesPerElement ? Math.floor(remaining / minBytesPerElement) : remaining * 8)) {
+            throw new Error(`Invalid size ${value}`)
+        }
+        return value
+    }
+
+    readInt(): number {
+        const value = this.readVarInt()
+        return (value >>> 1) ^ -(value & 1)
+    }
+
+    private readVarInt(): number {
+        let value = 0
+        for (let shift = 0; shift < 35; shift += 7) {
+            const b = this.readByte()
+            value += (b & 0x7f) * Math.pow(2, shift)
+            if ((b & 0x80) === 0) {
+                return value >>> 0
+            }
+        }
+        throw new Error('Malformed varint')
+    }
+
+    readDouble(): number {
+        if (this.pos + 8 > this.data.length) {
+            throw new Error('Truncated flame data')
+        }
+        const res = this.view.getFloat64(this.pos, true)
+        this.pos += 8
+        return res
+    }
+
+    readString(): string | undefined {
+        const length = this.readVarInt()
+        if (length === 0) {
+            return undefined
+        }
+        return new TextDecoder().decode(this.readBytes(length - 1))
+    }
+}
+
+function isBitSet(mask: Uint8Array, idx: number) {
+    return (mask[idx >> 3] & (1 << (idx & 7))) !== 0
+}
+
+function writeParam(writer: Writer, param: SourceFlameParam) {
+    const isInt = param.dataType === FlameParamDataType.INT
+    const isCurve = param.paramType === FlameParamType.CURVE && !!param.curve
+    const value = isInt ? param.intScalar : param.floatScalar
+    const hasValue = value !== undefined && value !== null
+    writer.writeByte((isInt ? PARAM_INT : 0) | (isCurve ? PARAM_CURVE : 0) | (hasValue ? PARAM_HAS_VALUE : 0))
+    if (hasValue) {
+        if (isInt) {
+            writer.writeInt(value!)
+        } else {
+            writer.writeDouble(value!)
+        }
+    }
+    if (isCurve) {
+        writeCurve(writer, param.curve!)
+    }
+}
+
+function readParam(reader: Reader): SourceFlameParam {
+    const tag = reader.readByte()
+    const isInt = (tag & PARAM_INT) !== 0
+    const res: SourceFlameParam = {
+        paramType: (tag & PARAM_CURVE) !== 0 ? FlameParamType.CURVE : FlameParamType.SCALAR,
+        dataType: isInt ? FlameParamDataType.INT : FlameParamDataType.FLOAT
+    }
+    if ((tag & PARAM_HAS_VALUE) !== 0) {
+        if (isInt) {
+            res.intScalar = reader.readInt()
+        } else {
+            res.floatScalar = reader.readDouble()
+        }
+    }
+    if ((tag & PARAM_CURVE) !== 0) {
+        res.curve = readCurve(reader)
+    }
+    return res
+}
+
+function writeCurve(writer: Writer, curve: SourceFlameParamCurve) {
+    writer.writeInt(curve.viewXMin)
+    writer.writeInt(curve.viewXMax)
+    writer.writeDouble(curve.viewYMin)
+    writer.writeDouble(curve.viewYMax)
+    writer.writeByte(Math.max(INTERPOLATIONS.indexOf(curve.interpolation), 0))
+    writer.writeInt(curve.selectedIdx)
+    writer.writeBoolean(curve.locked)
+    const x = curve.x ? curve.x : []
+    const y = curve.y ? curve.y : []
+    const count = Math.min(x.length, y.length)
+    writer.writeSize(count)
+    let prevX = 0
+    for (let i = 0; i < count; i++) {
+        writer.writeInt(x[i] - prevX)
+        prevX = x[i]
+    }
+    for (let i = 0; i < count; i++) {
+        writer.writeDouble(y[i])
+    }
+}
+
+function readCurve(reader: Reader): SourceFlameParamCurve {
+    const viewXMin = reader.readInt()
+    const viewXMax = reader.readInt()
+    const viewYMin = reader.readDouble()
+    const viewYMax = reader.readDouble()
+    const interpolation = INTERPOLATIONS[reader.readByte()]
+    if (interpolation === undefined) {
+        throw new Error('Invalid interpolation')
+    }
+    const selectedIdx = reader.readInt()
+    const locked = reader.readBoolean()
+    const count = reader.readSize(9)
+    const x: number[] = []
+    let prevX = 0
+    for (let i = 0; i < count; i++) {
+        prevX += reader.readInt()
+        x.push(prevX)
+    }
+    const y: number[] = []
+    for (let i = 0; i < count; i++) {
+        y.push(reader.readDouble())
+    }
+    return {viewXMin, viewXMax, viewYMin, viewYMax, interpolation, selectedIdx, x, y, locked}
+}
+
+function isDefaultParam(param: SourceFlameParam, defaultValue: number) {
+    return param.paramType === FlameParamType.SCALAR && param.dataType === FlameParamDataType.FLOAT &&
+        param.floatScalar === defaultValue
+}
+
+function writeXForm(writer: Writer, xForm: SourceXForm) {
+    writer.writeDouble(xForm.weight)
+    writer.writeDouble(xForm.color)
+    writer.writeDouble(xForm.colorSymmetry)
+
+    const modifiedWeights = xForm.modifiedWeights
+    const weightMask = new Uint8Array((modifiedWeights.length + 7) >> 3)
+    modifiedWeights.forEach((weight, i) => {
+        if (weight !== 1.0) {
+            weightMask[i >> 3] |= 1 << (i & 7)
+        }
+    })
+    writer.writeSize(modifiedWeights.length)
+    writer.writeBytes(weightMask)
+    modifiedWeights.filter(weight => weight !== 1.0).forEach(weight => writer.writeDouble(weight))
+
+    const params = xForm as unknown as Record<string, SourceFlameParam>
+    const paramMask = new Uint8Array(XFORM_PARAM_MASK_BYTES)
+    XFORM_PARAM_NAMES.forEach((name, i) => {
+        if (!isDefaultParam(params[name], AFFINE_DEFAULTS[i % AFFINE_DEFAULTS.length])) {
+            paramMask[i >> 3] |= 1 << (i & 7)
+        }
+    })
+    writer.writeBytes(paramMask)
+    XFORM_PARAM_NAMES.forEach((name, i) => {
+        if (isBitSet(paramMask, i)) {
+            writeParam(writer, params[name])
+        }
+    })
+
+    writer.writeSize(xForm.variations.length)
+    xForm.variations.forEach(variation => {
+        writer.writeString(variation.name)
+        writeParam(writer, variation.amount)
+        writer.writeSize(variation.params.length)
+        variation.params.forEach(param => {
+            writer.writeString(param.name)
+            writeParam(writer, param.value)
+        })
+        writer.writeSize(variation.resources.length)
+        variation.resources.forEach(resource => {
+            writer.writeString(resource.name)
+            writer.writeByte(Math.max(RESOURCE_TYPES.indexOf(resource.resourceType), 0))
+            writer.writeString(resource.stringValue)
+            writer.writeString(resource.hash)
+        })
+    })
+}
+
+function readXForm(reader: Reader): SourceXForm {
+    const weight = reader.readDouble()
+    const color = reader.readDouble()
+    const colorSymmetry = reader.readDouble()
+
+    const weightCount = reader.readSize()
+    const weightMask = reader.readBytes((weightCount + 7) >> 3)
+    const modifiedWeights: number[] = []
+    for (let i = 0; i < weightCount; i++) {
+        modifiedWeights.push(isBitSet(weightMask, i) ? reader.readDouble() : 1.0)
+    }
+
+    const res: Record<string, any> = {weight, color, colorSymmetry, modifiedWeights}
+    const paramMask = reader.readBytes(XFORM_PARAM_MASK_BYTES)
+    XFORM_PARAM_NAMES.forEach((name, i) => {
+        res[name] = isBitSet(paramMask, i) ? readParam(reader) : {
+            paramType: FlameParamType.SCALAR,
+            dataType: FlameParamDataType.FLOAT,
+            floatScalar: AFFINE_DEFAULTS[i % AFFINE_DEFAULTS.length]
+        }
+    })
+
+    const variations: SourceVariation[] = []
+    const variationCount = reader.readSize(MIN_VARIATION_BYTES)
+    for (let i = 0; i < variationCount; i++) {
+        const variation: SourceVariation = {name: reader.readString()!, amount: readParam(reader), params: [], resources: []}
+        const paramCount = reader.readSize(2)
+        for (let j = 0; j < paramCount; j++) {
+            variation.params.push({name: reader.readString()!, value: readParam(reader)})
+        }
+        const resourceCount = reader.readSize(4)
+        for (let j = 0; j < resourceCount; j++) {
+            const name = reader.readString()!
+            const resourceType = RESOURCE_TYPES[reader.readByte()]
+            if (resourceType === undefined) {
+                throw new Error('Invalid resource type')
+            }
+            const stringValue = reader.readString()
+            variation.resources.push({name, resourceType, stringValue, hash: reader.readString()})
+        }
+        variations.push(variation)
+    }
+    res.variations = variations
+    return res as SourceXForm
+}
+
+function writeLayer(writer: Writer, layer: SourceLayer) {
+    writer.writeDouble(layer.weight)
+    writer.writeDouble(layer.density)
+    writer.writeSize(layer.gradient.length)
+    let prevR = 0, prevG = 0, prevB = 0
+    layer.gradient.forEach(color => {
+        const r = (color >> 16) & 0xff, g = (color >> 8) & 0xff, b = color & 0xff
+        writer.writeInt(r - prevR)
+        writer.writeInt(g - prevG)
+        writer.writeInt(b - prevB)
+        prevR = r
+        prevG = g
+        prevB = b
+    })
+    writer.writeSize(layer.xforms.length)
+    layer.xforms.forEach(xForm => writeXForm(writer, xForm))
+    writer.writeSize(layer.finalXforms.length)
+    layer.finalXforms.forEach(xForm => writeXForm(writer, xForm))
+}
+
+function readLayer(reader: Reader): SourceLayer {
+    const weight = reader.readDouble()
+    const density = reader.readDouble()
+    const gradient: number[] = []
+    const colorCount = reader.readSize(3)
+    let r = 0, g = 0, b = 0
+    for (let i = 0; i < colorCount; i++) {
+        r += reader.readInt()
+        g += reader.readInt()
+        b += reader.readInt()
+        gradient.push(((r & 0xff) << 16) | ((g & 0xff) << 8) | (b & 0xff))
+    }
+    const xforms: SourceXForm[] = []
+    const xFormCount = reader.readSize(MIN_XFORM_BYTES)
+    for (let i = 0; i < xFormCount; i++) {
+        xforms.push(readXForm(reader))
+    }
+    const finalXforms: SourceXForm[] = []
+    const finalXFormCount = reader.readSize(MIN_XFORM_BYTES)
+    for (let i = 0; i < finalXFormCount; i++) {
+        finalXforms.push(readXForm(reader))
+    }
+    return {weight, density, gradient, xforms, finalXforms}
+}
+
+function writeFlame(writer: Writer, flame: SourceFlame) {
+    const fields = flame as unknown as Record<string, any>
+    FLAME_FIELDS.forEach(([name, type]) => {
+        switch (type) {
+            case 'double': writer.writeDouble(fields[name]); break
+            case 'int': writer.writeInt(fields[name]); break
+            case 'bool': writer.writeBoolean(fields[name]); break
+            case 'param': writeParam(writer, fields[name]); break
+            case 'string': writer.writeString(fields[name]); break
+        }
+    })
+    writer.writeSize(flame.layers.length)
+    flame.layers.forEach(layer => writeLayer(writer, layer))
+}
+
+function readFlame(reader: Reader): SourceFlame {
+    const res: Record<string, any> = {}
+    FLAME_FIELDS.forEach(([name, type]) => {
+        switch (type) {
+            case 'double': res[name] = reader.readDouble(); break
+            case 'int': res[name] = reader.readInt(); break
+            case 'bool': res[name] = reader.readBoolean(); break
+            case 'param': res[name] = readParam(reader); break
+            case 'string': res[name] = reader.readString(); break
+        }
+    })
+    const layers: SourceLayer[] = []
+    const layerCount = reader.readSize(MIN_LAYER_BYTES)
+    for (let i = 0; i < layerCount; i++) {
+        layers.push(readLayer(reader))
+    }
+    res.layers = layers
+    return res as SourceFlame
+}
+
+export class FlameBinaryCodec {
+    static encodeFlame(flame: SourceFlame): Uint8Array {
+        const writer = new Writer()
+        writer.writeHeader(RECORD_FLAME)
+        writeFlame(writer, flame)
+        return writer.toUint8Array()
+    }
+
+    static decodeFlame(data: Uint8Array): SourceFlame {
+        const reader = new Reader(data)
+        reader.readHeader(RECORD_FLAME)
+        return readFlame(reader)
+    }
+
+    static decodeRandomFlame(data: Uint8Array): SourceRandomFlame {
+        const reader = new Reader(data)
+        reader.readHeader(RECORD_RANDOM_FLAME)
+        const flame = readFlame(reader)
+        return {flame, flameXml: reader.readString()!}
+    }
+}
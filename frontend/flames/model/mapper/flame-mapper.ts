@@ -77,7 +77,8 @@ class ResourceMapper {
         return {
           name: source.name,
           type: mapResourceTypeFromBackend(source.resourceType),
-          stringValue: source.stringValue
+          stringValue: source.stringValue,
+          hash: source.hash
       }
     }
 
@@ -100,7 +101,9 @@ class ResourceMapper {
         return {
             name: source.name,
             resourceType: mapResourceTypeToBackend(source.type),
-            stringValue: source.stringValue
+            stringValue: source.stringValue,
+            // the content is sent when it was loaded, so the server does not depend on its resource store
+            hash: source.stringValue ? undefined : source.hash
         }
     }
 
@@ -569,15 +572,16 @@ class ColorMapper {
 
 const COLOR_SCL = 255.0
 
+function packColorComponent(value: number): number {
+    return Math.min(Math.max(Math.round(value * COLOR_SCL), 0), 255)
+}
+
 export class LayerMapper {
     public static mapFromBackend(source: SourceLayer): Layer {
         const res = new Layer()
         res.weight = Parameters.floatParam(source.weight)
         res.density = Parameters.floatParam(source.density)
-        res.gradient = []
-
-        source.gradient.forEach(color => res.gradient.push(
-          new Color(color.r / COLOR_SCL, color.g / COLOR_SCL, color.b / COLOR_SCL)))
+        res.gradient = LayerMapper.mapGradientFromBackend(source.gradient)
 
         source.xforms.map(sxf => {
             res.xforms.push(XFormMapper.mapFromBackend(sxf))
@@ -588,20 +592,24 @@ export class LayerMapper {
         return res
     }
 
+    // the backend sends packed colors (0xRRGGBB)
+    public static mapGradientFromBackend(source: Array<number>): Array<Color> {
+        return source.map(color =>
+          new Color(((color >> 16) & 0xff) / COLOR_SCL, ((color >> 8) & 0xff) / COLOR_SCL, (color & 0xff) / COLOR_SCL))
+    }
+
     public static mapToBackend(source: Layer): SourceLayer {
         const res: SourceLayer = {
             weight: source.weight.value,
             density: source.density.value,
-            gradient: new Array<Color>(),
+            gradient: new Array<number>(),
             xforms: new Array<SourceXForm>(),
             finalXforms: new Array<SourceXForm>()
         }
 
         res.gradient = []
         source.gradient.forEach(color => res.gradient.push(
-          { r: color.r * COLOR_SCL,
-              g: color.g * COLOR_SCL,
-              b: color.b * COLOR_SCL}))
+          (packColorComponent(color.r) << 16) | (packColorComponent(color.g) << 8) | packColorComponent(color.b)))
 
         source.xforms.map(sxf => {
             res.xforms.push(XFormMapper.mapToBackend(sxf))
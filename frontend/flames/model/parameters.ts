@@ -34,6 +34,9 @@ export interface FlameResource {
     name: string
     type: FlameResourceType
     stringValue?: string
+    // large binary resources are sent by the server only by their hash, the content is fetched from
+    // /variation-resources/<hash> before the flame is used (see variation-resource-service)
+    hash?: string
 }
 
 export class FloatScalarParameter implements FlameParameter {
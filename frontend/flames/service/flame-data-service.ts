@@ -0,0 +1,93 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+
+import {FLAME_BINARY_MEDIA_TYPE, FlameBinaryCodec} from "Frontend/flames/model/mapper/flame-binary-codec";
+import {default as SourceFlame} from "Frontend/generated/org/jwildfire/swan/flames/model/flame/Flame";
+import {default as SourceRandomFlame} from "Frontend/generated/org/jwildfire/swan/flames/model/flame/RandomFlame";
+import {variationResourceService} from "Frontend/flames/service/variation-resource-service";
+
+const JSON_MEDIA_TYPE = 'application/json'
+
+// Alternative to the flame-related methods of FlamesEndpoint, using the compact binary format (which is much
+// smaller for complex flames) for the request and/or the response
+export class FlameDataService {
+
+  public async getExampleFlame(name: string, binaryResponse = true): Promise<SourceFlame> {
+    return variationResourceService.requestFlame(() => this.fetchExampleFlame(name, binaryResponse))
+  }
+
+  // optimized flames (e.g. with simplified motion curves) render faster, but should not be saved or exported
+  public async parseFlame(flameXml: string, binaryResponse = true, optimize = false): Promise<SourceFlame> {
+    return variationResourceService.requestFlame(() => this.fetchParsedFlame(flameXml, binaryResponse, optimize))
+  }
+
+  public async convertFlameToXml(flame: SourceFlame, binaryRequest = true): Promise<string> {
+    const response = await this.post('xml', binaryRequest ? FLAME_BINARY_MEDIA_TYPE : JSON_MEDIA_TYPE,
+      this.encodeFlame(flame, binaryRequest), false, 'text/plain')
+    return await response.text()
+  }
+
+  public async generateRandomGradientForFlame(flame: SourceFlame, binaryRequest = true, binaryResponse = true): Promise<SourceRandomFlame> {
+    const response = await this.post('random-gradient', binaryRequest ? FLAME_BINARY_MEDIA_TYPE : JSON_MEDIA_TYPE,
+      this.encodeFlame(flame, binaryRequest), binaryResponse)
+    const res: SourceRandomFlame = binaryResponse ? FlameBinaryCodec.decodeRandomFlame(await this.readBytes(response)) : await response.json()
+    await variationResourceService.loadResources(res.flame)
+    return res
+  }
+
+  private async fetchExampleFlame(name: string, binaryResponse: boolean): Promise<SourceFlame> {
+    const response = await fetch(`flame-data/example/${encodeURIComponent(name)}`, {
+      headers: {
+        'Accept': binaryResponse ? FLAME_BINARY_MEDIA_TYPE : JSON_MEDIA_TYPE
+      }
+    })
+    if (!response.ok) {
+      throw new Error(`Request example failed with status ${response.status}`)
+    }
+    return binaryResponse ? FlameBinaryCodec.decodeFlame(await this.readBytes(response)) : await response.json()
+  }
+
+  private async fetchParsedFlame(flameXml: string, binaryResponse: boolean, optimize: boolean): Promise<SourceFlame> {
+    const response = await this.post(optimize ? 'parse?optimize=true' : 'parse', 'text/plain', flameXml, binaryResponse)
+    return binaryResponse ? FlameBinaryCodec.decodeFlame(await this.readBytes(response)) : await response.json()
+  }
+
+  private encodeFlame(flame: SourceFlame, binary: boolean): BodyInit {
+    return binary ? FlameBinaryCodec.encodeFlame(flame) : JSON.stringify(flame)
+  }
+
+  private async post(path: string, contentType: string, body: BodyInit, binaryResponse: boolean, accept?: string): Promise<Response> {
+    const response = await fetch(`flame-data/${path}`, {
+      method: 'POST',
+      headers: {
+        'Content-Type': contentType,
+        'Accept': accept ? accept : (binaryResponse ? FLAME_BINARY_MEDIA_TYPE : JSON_MEDIA_TYPE)
+      },
+      body: body
+    })
+    if (!response.ok) {
+      throw new Error(`Request ${path} failed with status ${response.status}`)
+    }
+    return response
+  }
+
+  private async readBytes(response: Response): Promise<Uint8Array> {
+    return new Uint8Array(await response.arrayBuffer())
+  }
+}
+
+export const flameDataService = new FlameDataService()
@@ -0,0 +1,120 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+
+import {FlameSessionEndpoint} from "Frontend/generated/endpoints";
+import {default as SourceFlame} from "Frontend/generated/org/jwildfire/swan/flames/model/flame/Flame";
+import {default as SourceXForm} from "Frontend/generated/org/jwildfire/swan/flames/model/flame/XForm";
+import {default as FlamePatch} from "Frontend/generated/org/jwildfire/swan/flames/model/flame/FlamePatch";
+import {default as FlamePatchType} from "Frontend/generated/org/jwildfire/swan/flames/model/flame/FlamePatchType";
+import {cloneDeep} from "lodash";
+
+// Keeps the flame of the editor in a flame-session on the server, so that only the changes since the last request
+// are sent (as patches) instead of the whole flame. Changes which can not be expressed as patches (e.g. of the
+// camera or of the number of layers) open a new session.
+export class FlameSessionService {
+  private sessionId: string | undefined = undefined
+  private sessionFlame: SourceFlame | undefined = undefined
+  private pending: Promise<unknown> = Promise.resolve()
+
+  public async convertFlameToXml(flame: SourceFlame): Promise<string> {
+    return this.withSession(flame, sessionId => FlameSessionEndpoint.getFlameXml(sessionId))
+  }
+
+  public async closeSession() {
+    const sessionId = this.sessionId
+    this.sessionId = undefined
+    this.sessionFlame = undefined
+    if (sessionId) {
+      await FlameSessionEndpoint.closeSession(sessionId)
+    }
+  }
+
+  // requests are serialized, because each one depends on the session state left by the previous one
+  private withSession<T>(flame: SourceFlame, action: (sessionId: string) => Promise<T>): Promise<T> {
+    const res = this.pending.catch(() => undefined).then(async () => {
+      try {
+        return await action(await this.syncSession(flame))
+      } catch (err) {
+        // the session may have been expired, so try once again with a new one
+        this.sessionId = undefined
+        this.sessionFlame = undefined
+        return await action(await this.syncSession(flame))
+      }
+    })
+    this.pending = res
+    return res
+  }
+
+  private async syncSession(flame: SourceFlame): Promise<string> {
+    if (this.sessionId && this.sessionFlame) {
+      const patches = this.createPatches(this.sessionFlame, flame)
+      if (patches) {
+        if (patches.length > 0) {
+          await FlameSessionEndpoint.applyPatches(this.sessionId, patches)
+          this.sessionFlame = cloneDeep(flame)
+        }
+        return this.sessionId
+      }
+      this.closeSession().catch(err => console.log('Error closing flame session', err))
+    }
+    this.sessionId = await FlameSessionEndpoint.openSession(flame)
+    this.sessionFlame = cloneDeep(flame)
+    return this.sessionId
+  }
+
+  // returns undefined if the changes can not be expressed as patches
+  private createPatches(prevFlame: SourceFlame, flame: SourceFlame): FlamePatch[] | undefined {
+    if (JSON.stringify({...prevFlame, layers: []}) !== JSON.stringify({...flame, layers: []})
+      || prevFlame.layers.length !== flame.layers.length) {
+      return undefined
+    }
+    const patches: FlamePatch[] = []
+    for (let layerIndex = 0; layerIndex < flame.layers.length; layerIndex++) {
+      const prevLayer = prevFlame.layers[layerIndex]
+      const layer = flame.layers[layerIndex]
+      if (prevLayer.weight !== layer.weight || prevLayer.density !== layer.density) {
+        return undefined
+      }
+      if (JSON.stringify(prevLayer.gradient) !== JSON.stringify(layer.gradient)) {
+        patches.push({type: FlamePatchType.SET_GRADIENT, layerIndex: layerIndex, xformIndex: 0, finalXForm: false, gradient: layer.gradient})
+      }
+      if (!this.addXFormPatches(patches, layerIndex, false, prevLayer.xforms, layer.xforms)
+        || !this.addXFormPatches(patches, layerIndex, true, prevLayer.finalXforms, layer.finalXforms)) {
+        return undefined
+      }
+    }
+    return patches
+  }
+
+  private addXFormPatches(patches: FlamePatch[], layerIndex: number, finalXForm: boolean, prevXForms: SourceXForm[], xForms: SourceXForm[]): boolean {
+    // removing xforms shifts the indices of the following ones, so only appended xforms are sent as patches
+    if (xForms.length < prevXForms.length) {
+      return false
+    }
+    for (let xformIndex = 0; xformIndex < prevXForms.length; xformIndex++) {
+      if (JSON.stringify(prevXForms[xformIndex]) !== JSON.stringify(xForms[xformIndex])) {
+        patches.push({type: FlamePatchType.REPLACE_XFORM, layerIndex: layerIndex, xformIndex: xformIndex, finalXForm: finalXForm, xform: xForms[xformIndex]})
+      }
+    }
+    for (let xformIndex = prevXForms.length; xformIndex < xForms.length; xformIndex++) {
+      patches.push({type: FlamePatchType.ADD_XFORM, layerIndex: layerIndex, xformIndex: xformIndex, finalXForm: finalXForm, xform: xForms[xformIndex]})
+    }
+    return true
+  }
+}
+
+export const flameSessionService = new FlameSessionService()
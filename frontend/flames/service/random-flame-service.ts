@@ -0,0 +1,142 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+
+import {Subscription} from "@hilla/frontend";
+import {FlamesEndpoint, RandomFeedEndpoint} from "Frontend/generated/endpoints";
+import {default as SourceRandomFlame} from "Frontend/generated/org/jwildfire/swan/flames/model/flame/RandomFlame";
+import {variationResourceService} from "Frontend/flames/service/variation-resource-service";
+
+// Client side of a feed of random items which are pushed by the server. Only count items are requested from
+// the server in total, and at most prefetch items ahead of their consumption.
+// The server only knows the feed when the subscription is connected, so further items are requested only after
+// the first item has arrived (until then they are collected).
+export class RandomFeed<T> {
+  private readonly items = new Array<T>()
+  private readonly consumers = new Array<{resolve: (item: T) => void, reject: (err: any) => void}>()
+  private readonly subscription: Subscription<T>
+  private requested: number
+  private connected = false
+  private unsentRequests = 0
+  private error?: any
+
+  // prepare is applied to each item before it is handed out
+  constructor(private readonly feedId: string, private readonly count: number, prefetch: number,
+              open: (feedId: string, initialDemand: number) => Subscription<T>,
+              private readonly prepare?: (item: T) => Promise<T>) {
+    this.requested = Math.min(count, Math.max(prefetch, 1))
+    this.subscription = open(feedId, this.requested)
+      .onNext(item => {
+        if (!this.connected) {
+          this.connected = true
+          this.sendRequests()
+        }
+        const consumer = this.consumers.shift()
+        consumer ? consumer.resolve(item) : this.items.push(item)
+      })
+      .onError(() => this.fail(new Error(`Feed ${feedId} failed`)))
+  }
+
+  public next(): Promise<T> {
+    const item = this.nextItem()
+    return this.prepare ? item.then(this.prepare) : item
+  }
+
+  private nextItem(): Promise<T> {
+    if (this.requested < this.count) {
+      this.requested++
+      this.unsentRequests++
+      if (this.connected) {
+        this.sendRequests()
+      }
+    }
+    const item = this.items.shift()
+    if (item !== undefined) {
+      return Promise.resolve(item)
+    }
+    if (this.error) {
+      return Promise.reject(this.error)
+    }
+    return new Promise((resolve, reject) => this.consumers.push({resolve, reject}))
+  }
+
+  public close() {
+    this.subscription.cancel()
+    this.fail(new Error(`Feed ${this.feedId} closed`))
+  }
+
+  private sendRequests() {
+    if (this.unsentRequests > 0) {
+      const count = this.unsentRequests
+      this.unsentRequests = 0
+      RandomFeedEndpoint.requestMore(this.feedId, count).catch(err => this.fail(err))
+    }
+  }
+
+  private fail(err: any) {
+    if (!this.error) {
+      this.error = err
+    }
+    this.consumers.splice(0).forEach(consumer => consumer.reject(err))
+  }
+}
+
+// Generates random flames for a set of supported variations, which is registered once at the server (instead
+// of sending the whole list with each request)
+export class RandomFlameService {
+  private variationSetKey?: string
+  private variationSetHandle?: Promise<string>
+
+  public async generateRandomFlame(supportedVariations: string[]): Promise<SourceRandomFlame> {
+    try {
+      return await this.loadResources(await FlamesEndpoint.generateRandomFlameForVariationSet(await this.getVariationSetHandle(supportedVariations)))
+    }
+    catch (err) {
+      // the variation set may have expired at the server (or a resource of the flame), so register it again
+      this.variationSetHandle = undefined
+      return await this.loadResources(await FlamesEndpoint.generateRandomFlameForVariationSet(await this.getVariationSetHandle(supportedVariations)))
+    }
+  }
+
+  public async openRandomFlameFeed(count: number, prefetch: number, supportedVariations: string[]): Promise<RandomFeed<SourceRandomFlame>> {
+    const handle = await this.getVariationSetHandle(supportedVariations)
+    return new RandomFeed<SourceRandomFlame>(await RandomFeedEndpoint.createFeedId(), count, prefetch,
+      (feedId, initialDemand) => RandomFeedEndpoint.randomFlameFeed(feedId, handle, initialDemand),
+      flame => this.loadResources(flame))
+  }
+
+  public async openRandomGradientFeed(count: number, prefetch: number): Promise<RandomFeed<Array<number>>> {
+    return new RandomFeed<Array<number>>(await RandomFeedEndpoint.createFeedId(), count, prefetch,
+      (feedId, initialDemand) => RandomFeedEndpoint.randomGradientFeed(feedId, initialDemand))
+  }
+
+  private async loadResources(flame: SourceRandomFlame): Promise<SourceRandomFlame> {
+    await variationResourceService.loadResources(flame.flame)
+    return flame
+  }
+
+  public getVariationSetHandle(supportedVariations: string[]): Promise<string> {
+    const key = supportedVariations.join(',')
+    if (!this.variationSetHandle || key !== this.variationSetKey) {
+      this.variationSetKey = key
+      this.variationSetHandle = FlamesEndpoint.registerVariationSet(supportedVariations)
+      this.variationSetHandle.catch(() => this.variationSetHandle = undefined)
+    }
+    return this.variationSetHandle
+  }
+}
+
+export const randomFlameService = new RandomFlameService()
@@ -0,0 +1,87 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+
+import {default as SourceFlame} from "Frontend/generated/org/jwildfire/swan/flames/model/flame/Flame";
+import {byteArrayToHexString} from "Frontend/flames/renderer/string-util";
+
+// the responses are cached by the browser anyway, so only a few contents are kept here
+const MAX_CACHED_CONTENTS = 32
+
+export class VariationResourceNotFoundError extends Error {
+}
+
+// Loads the content of large binary variation resources, which the server sends only by their hash
+export class VariationResourceService {
+  private readonly contents = new Map<string, Promise<string>>()
+
+  // fills in the (hex-encoded) content of all resources of the flame which are only referenced by their hash
+  public async loadResources(flame: SourceFlame): Promise<SourceFlame> {
+    const pending = new Array<Promise<void>>()
+    flame.layers.forEach(layer => {
+      [...layer.xforms, ...layer.finalXforms].forEach(xform => {
+        xform.variations.forEach(variation => {
+          variation.resources.forEach(resource => {
+            if (!resource.stringValue && resource.hash) {
+              pending.push(this.getContent(resource.hash).then(content => {
+                resource.stringValue = content
+              }))
+            }
+          })
+        })
+      })
+    })
+    await Promise.all(pending)
+    return flame
+  }
+
+  // requests a flame and loads its resources, the request is sent once again if a resource was removed from the
+  // store of the server meanwhile (the server stores the resources again when it sends the flame)
+  public async requestFlame(request: () => Promise<SourceFlame>): Promise<SourceFlame> {
+    try {
+      return await this.loadResources(await request())
+    }
+    catch (err) {
+      if (err instanceof VariationResourceNotFoundError) {
+        return await this.loadResources(await request())
+      }
+      throw err
+    }
+  }
+
+  private getContent(hash: string): Promise<string> {
+    let content = this.contents.get(hash)
+    if (!content) {
+      content = fetch(`variation-resources/${encodeURIComponent(hash)}`).then(async response => {
+        if (response.status === 404) {
+          throw new VariationResourceNotFoundError(`Unknown variation resource ${hash}`)
+        }
+        if (!response.ok) {
+          throw new Error(`Request of variation resource ${hash} failed with status ${response.status}`)
+        }
+        return byteArrayToHexString(Array.from(new Uint8Array(await response.arrayBuffer())))
+      })
+      content.catch(() => this.contents.delete(hash))
+      this.contents.set(hash, content)
+      if (this.contents.size > MAX_CACHED_CONTENTS) {
+        this.contents.delete(this.contents.keys().next().value)
+      }
+    }
+    return content
+  }
+}
+
+export const variationResourceService = new VariationResourceService()
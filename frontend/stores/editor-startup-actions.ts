@@ -18,7 +18,7 @@
 import {randomizerStore} from "Frontend/stores/randomizer-store";
 import {editorStore} from "Frontend/stores/editor-store";
 import {FlameMapper} from "Frontend/flames/model/mapper/flame-mapper";
-import {FlamesEndpoint} from "Frontend/generated/endpoints";
+import {randomFlameService} from "Frontend/flames/service/random-flame-service";
 import {renderInfoStore} from "Frontend/stores/render-info-store";
 
 export interface StartupAction {
@@ -44,7 +44,7 @@ export class GenerateRandomFlameAction implements StartupAction {
       renderInfoStore.calculating = true
       editorStore.lastError = ''
       try {
-        FlamesEndpoint.generateRandomFlame(editorStore.variations).then(
+        randomFlameService.generateRandomFlame(editorStore.variations).then(
           randomFlame => {
             editorStore.currFlame = FlameMapper.mapFromBackend(randomFlame.flame)
           }
@@ -17,33 +17,90 @@
 
 import { makeAutoObservable } from 'mobx';
 import {GalleryEndpoint} from "Frontend/generated/endpoints";
-import {ExampleFlame, parseExampleFlame, sortExamples, SortOrder} from "Frontend/stores/example-flames";
+import {ExampleFlame, SortOrder} from "Frontend/stores/example-flames";
+import {default as ExampleMetaData} from "Frontend/generated/org/jwildfire/swan/flames/model/gallery/ExampleMetaData";
+import ExampleSortOrder from "Frontend/generated/org/jwildfire/swan/flames/model/gallery/ExampleSortOrder";
+
+const PAGE_SIZE = 24
 
 export class GalleryStore {
   exampleFlames: ExampleFlame[] = []
   initFlag = false
   sortOrder = SortOrder.RANDOM
+  resourcePackVersion = ''
+  totalCount = 0
+  page = -1
+  seed = 0
 
   constructor() {
     makeAutoObservable(this);
   }
 
-  public changeSortOrder(order: SortOrder) {
+  get hasMoreExamples() {
+    return this.exampleFlames.length < this.totalCount
+  }
+
+  public async changeSortOrder(order: SortOrder) {
     if(order!==this.sortOrder || order===SortOrder.RANDOM) {
       this.sortOrder = order
-      this.exampleFlames = sortExamples([...this.exampleFlames], this.sortOrder)
+      this.exampleFlames = []
+      this.page = -1
+      this.seed = Math.floor(Math.random() * Number.MAX_SAFE_INTEGER)
+      await this.loadMoreExamples()
     }
   }
 
   public async initialize() {
     if(!this.initFlag) {
-      const examples = await GalleryEndpoint.getExampleMetaDataList().then(
-          examples => examples.map(example => parseExampleFlame(example)!).filter(example=>example!==undefined))
-      this.exampleFlames = sortExamples(examples, this.sortOrder)
+      this.resourcePackVersion = await GalleryEndpoint.getResourcePackVersion()
+      this.seed = Math.floor(Math.random() * Number.MAX_SAFE_INTEGER)
+      await this.loadMoreExamples()
       this.initFlag = true
     }
   }
 
+  public async loadMoreExamples() {
+    const result = await GalleryEndpoint.queryExamples({
+      tags: [],
+      sortOrder: this.getExampleSortOrder(),
+      seed: this.seed,
+      page: this.page + 1,
+      pageSize: PAGE_SIZE
+    })
+    this.page = result.page
+    this.totalCount = result.totalCount
+    this.exampleFlames = [...this.exampleFlames, ...result.examples.map(example => this.mapExample(example))]
+  }
+
+  public getImageUrl(example: string) {
+    return this.resourcePackVersion !== '' ? this.getResourceUrl(`images/${example}.jpg`) : `./images/${example}.jpg`
+  }
+
+  private getResourceUrl(resource: string) {
+    return `./gallery-resources/${resource}?v=${this.resourcePackVersion}`
+  }
+
+  private getExampleSortOrder() {
+    switch(this.sortOrder) {
+      case SortOrder.NEWEST_FIRST: return ExampleSortOrder.NEWEST_FIRST
+      case SortOrder.OLDEST_FIRST: return ExampleSortOrder.OLDEST_FIRST
+      case SortOrder.RANDOM:
+      default:
+        return ExampleSortOrder.RANDOM
+    }
+  }
+
+  private mapExample(example: ExampleMetaData): ExampleFlame {
+    return {
+      title: example.title,
+      name: example.name,
+      caption: example.caption ? example.caption : '',
+      description: example.description,
+      modified: new Date(example.modified),
+      tags: example.tags
+    }
+  }
+
 }
 
 export const galleryStore = new GalleryStore()
@@ -25,6 +25,7 @@ import '@vaadin/number-field'
 import {batchRendererStore} from "Frontend/stores/batch-renderer-store";
 import {FlamesEndpoint, GalleryEndpoint} from "Frontend/generated/endpoints";
 import {FlameMapper} from "Frontend/flames/model/mapper/flame-mapper";
+import {variationResourceService} from "Frontend/flames/service/variation-resource-service";
 import {Parameters} from "Frontend/flames/model/parameters";
 import {getTimeStamp} from "Frontend/components/utils";
 
@@ -39,6 +40,9 @@ export class RendererUploadPanel extends MobxLitElement {
   @state()
   evalMotionCurves = false
 
+  @state()
+  optimizeFlames = true
+
   @state()
   fromFrame = 1
 
@@ -50,6 +54,7 @@ export class RendererUploadPanel extends MobxLitElement {
       <div style="${this.visible ? `display:block;`: `display:none;`}">
           <div style="margin: 1.0em;">
           <vaadin-checkbox ?checked=${this.evalMotionCurves} @change=${(e: Event)=>this.evalMotionCurves = (e.target as any) ? true: false} label="Render frames/evaluate motion curves"></vaadin-checkbox>
+          <vaadin-checkbox ?checked=${this.optimizeFlames} @change=${(e: Event)=>this.optimizeFlames = (e.target as any).checked} label="Optimize flames (simplify motion curves, remove unused variations)"></vaadin-checkbox>
           <vaadin-number-field label="From frame" @change="${this.fromFrameChanged}" step=${1} min="${1}" value="${this.fromFrame}" has-controls></vaadin-number-field>
           <vaadin-number-field label="To frame" @change="${this.toFrameChanged}" step=${1} min="${1}" value="${this.toFrame}" has-controls></vaadin-number-field>
           </div>
@@ -57,7 +62,7 @@ export class RendererUploadPanel extends MobxLitElement {
                     id="upload"
                     accept="application/flame,.flame"
                     max-files="200"
-                    target="upload"
+                    target="upload-flame"
                     @upload-success="${this.uploadFileSuccessHandler}">
                 <span slot="file-list" style="font-size: x-small;">
                  Most flame-files should work, but please note that not all features are implemented yet in Swan
@@ -108,7 +113,9 @@ export class RendererUploadPanel extends MobxLitElement {
     try {
       const uuid = event.detail.xhr.response
       if(!batchRendererStore.hasFlameWithUuid(uuid)) {
-        FlamesEndpoint.parseTempFlame(uuid).then(parsedFlame => {
+        const parse = this.optimizeFlames ?
+          () => FlamesEndpoint.parseTempFlameOptimized(uuid).then(res => res.flame) : () => FlamesEndpoint.parseTempFlame(uuid)
+        variationResourceService.requestFlame(parse).then(parsedFlame => {
           const flame = FlameMapper.mapFromBackend(parsedFlame)
           if(flame.frameCount.value<=1 || !this.evalMotionCurves) {
             batchRendererStore.addFlameWithUuid(uuid, event.detail.file.name, flame)
@@ -27,7 +27,7 @@ import '@vaadin/tabs'
 
 import {localized, msg} from '@lit/localize';
 import {infoStore} from "Frontend/views/editor/editor-flame-info-dialog-store";
-import {FlamesEndpoint} from "Frontend/generated/endpoints";
+import {flameSessionService} from "Frontend/flames/service/flame-session-service";
 import {FlameMapper} from "Frontend/flames/model/mapper/flame-mapper";
 import {editorStore} from "Frontend/stores/editor-store";
 import 'lit-code'
@@ -128,7 +128,7 @@ export class EditorFlameInfoDialogContent extends MobxLitElement {
   }
 
   generateFlameXml = ()=> {
-    FlamesEndpoint.convertFlameToXml(FlameMapper.mapToBackend(infoStore.currFlame)).then(flameXml => {
+    flameSessionService.convertFlameToXml(FlameMapper.mapToBackend(infoStore.currFlame)).then(flameXml => {
       infoStore.currParamsAsXml = flameXml
 
     })
@@ -1,4 +1,4 @@
-import {FlamesEndpoint} from "Frontend/generated/endpoints";
+import {flameDataService} from "Frontend/flames/service/flame-data-service";
 import {editorStore} from "Frontend/stores/editor-store";
 import {FlameMapper} from "Frontend/flames/model/mapper/flame-mapper";
 import {StartupAction} from "Frontend/stores/editor-startup-actions";
@@ -14,7 +14,7 @@ export class LoadExampleFlameAction implements StartupAction {
 
   execute(): boolean {
     if(!this.executed) {
-      FlamesEndpoint.getExampleFlame(this.exampleName).then(flame => {
+      flameDataService.getExampleFlame(this.exampleName).then(flame => {
         editorStore.refreshing = true
         try {
           this.view.currFlame = FlameMapper.mapFromBackend(flame)
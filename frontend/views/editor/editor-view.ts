@@ -39,7 +39,10 @@ import '@vaadin/app-layout/vaadin-drawer-toggle';
 
 import {FlameRenderer} from '../../flames/renderer/flame-renderer'
 import {FlamesEndpoint} from "Frontend/generated/endpoints";
-import {FlameMapper} from '../../flames/model/mapper/flame-mapper'
+import {flameDataService} from "Frontend/flames/service/flame-data-service";
+import {flameSessionService} from "Frontend/flames/service/flame-session-service";
+import {FlameMapper, LayerMapper} from '../../flames/model/mapper/flame-mapper'
+import {randomFlameService} from 'Frontend/flames/service/random-flame-service'
 import '@vaadin/vaadin-combo-box';
 import '../../components/swan-loading-indicator'
 import '../../components/swan-error-panel'
@@ -197,7 +200,7 @@ export class EditorView extends View implements BeforeEnterObserver {
     }
 
     exportParamsToClipboard = (): void => {
-        FlamesEndpoint.convertFlameToXml(FlameMapper.mapToBackend(this.currFlame)).then(flameXml => {
+        flameSessionService.convertFlameToXml(FlameMapper.mapToBackend(this.currFlame)).then(flameXml => {
             navigator.clipboard.writeText(flameXml)
             this.notificationPnl.showNotifivation(msg('Parameters were copied to the clipboard'))
         })
@@ -210,7 +213,7 @@ export class EditorView extends View implements BeforeEnterObserver {
        navigator.clipboard.readText().then(text => {
            renderInfoStore.calculating = true
            editorStore.lastError = ''
-           FlamesEndpoint.parseFlame(text).then(flame => {
+           flameDataService.parseFlame(text).then(flame => {
                editorStore.refreshing = true
                try {
                  this.currFlame = FlameMapper.mapFromBackend(flame)
@@ -271,7 +274,7 @@ export class EditorView extends View implements BeforeEnterObserver {
         renderInfoStore.calculating = true
         editorStore.lastError = ''
 
-        FlamesEndpoint.generateRandomFlame(editorStore.variations).then(
+        randomFlameService.generateRandomFlame(editorStore.variations).then(
           randomFlame => {
               editorStore.refreshing = true
               try {
@@ -293,7 +296,7 @@ export class EditorView extends View implements BeforeEnterObserver {
         renderInfoStore.calculating = true
         editorStore.lastError = ''
 
-        FlamesEndpoint.generateRandomFlame(editorStore.variations).then(
+        randomFlameService.generateRandomFlame(editorStore.variations).then(
           randomFlame => {
               editorStore.refreshing = true
               try {
@@ -315,11 +318,13 @@ export class EditorView extends View implements BeforeEnterObserver {
         renderInfoStore.calculating = true
         editorStore.lastError = ''
 
-        FlamesEndpoint.generateRandomGradientForFlame(FlameMapper.mapToBackend(this.currFlame)).then(
-          randomFlame => {
+        FlamesEndpoint.generateRandomGradients(1).then(
+          gradients => {
               editorStore.refreshing = true
               try {
-                this.currFlame = FlameMapper.mapFromBackend(randomFlame.flame)
+                const flame = cloneDeep(this.currFlame)
+                flame.layers[0].gradient = LayerMapper.mapGradientFromBackend(gradients[0])
+                this.currFlame = flame
                   this.reRender()
                   renderInfoStore.calculating = false
               }
@@ -371,6 +376,11 @@ export class EditorView extends View implements BeforeEnterObserver {
     editorStore.registerInitCallback(['editor-edit-camera-panel', 'editor-xforms-grid-panel', 'editor-edit-layers-panel'], this.renderFirstFlame)
   }
 
+  disconnectedCallback() {
+    super.disconnectedCallback()
+    flameSessionService.closeSession().catch(err => console.log('Error closing flame session', err))
+  }
+
   renderFirstFlame = ()=> {
     startupActionHolder.action.execute()
     this.reRender()
@@ -66,7 +66,7 @@ export class GalleryView extends View {
                   class="bg-contrast flex items-center justify-center mb-m overflow-hidden rounded-m w-full"
                   style="max-height: 12em;"
                 >
-                  <img alt=${example.title} @click="${this.renderExample.bind(this, example.name)}" class="w-full" style="cursor: pointer;" loading="lazy" src="./images/${example.name}.jpg" />
+                  <img alt=${example.title} @click="${this.renderExample.bind(this, example.name)}" class="w-full" style="cursor: pointer;" loading="lazy" src="${galleryStore.getImageUrl(example.name)}" />
                 </div>
                 <span class="text-xl font-semibold">${example.title}</span>
                 ${(example.caption && example.caption!=='') ? html `<span class="text-s text-secondary">${example.caption}</span>`: nothing}  
@@ -79,6 +79,10 @@ export class GalleryView extends View {
             `
           )}
         </ol>
+        ${galleryStore.hasMoreExamples ? html`
+          <vaadin-horizontal-layout class="justify-center p-m">
+            <vaadin-button @click="${this.loadMoreItems}">${msg('Show more')}</vaadin-button>
+          </vaadin-horizontal-layout>` : nothing}
       </main>
     `;
   }
@@ -100,4 +104,8 @@ export class GalleryView extends View {
   refreshItems = () => {
       galleryStore.changeSortOrder(galleryStore.sortOrder)
   }
+
+  loadMoreItems = () => {
+      galleryStore.loadMoreExamples()
+  }
 }
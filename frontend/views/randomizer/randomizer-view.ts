@@ -27,8 +27,9 @@ import {html, nothing} from 'lit';
 import { customElement } from 'lit/decorators.js';
 import { View } from '../../views/view';
 import {Router} from "@vaadin/router";
-import {FlamesEndpoint} from "Frontend/generated/endpoints";
-import {FlameMapper} from "Frontend/flames/model/mapper/flame-mapper";
+import {FlameMapper, LayerMapper} from "Frontend/flames/model/mapper/flame-mapper";
+import {RandomFeed, randomFlameService} from "Frontend/flames/service/random-flame-service";
+import {default as SourceRandomFlame} from "Frontend/generated/org/jwildfire/swan/flames/model/flame/RandomFlame";
 import {RandomFlame, randomizerStore} from "Frontend/stores/randomizer-store";
 import {SwanRenderPanel} from "Frontend/components/swan-render-panel";
 import '../../components/swan-loading-indicator'
@@ -40,10 +41,16 @@ import '@vaadin/icon';
 import {prefsStore} from "Frontend/stores/prefs-store";
 import {msg, localized} from "@lit/localize";
 import {editorStore} from "Frontend/stores/editor-store";
+import {cloneDeep} from "lodash";
+
+// number of flames or gradients which are generated by the server ahead of rendering
+const FEED_PREFETCH = 4
 
 @localized()
 @customElement('randomizer-view')
 export class RandomizerView extends View {
+  private flameFeed?: Promise<RandomFeed<SourceRandomFlame>>
+  private gradientFeed?: Promise<RandomFeed<Array<number>>>
 
   render = () => {
     return html`
@@ -148,6 +155,8 @@ export class RandomizerView extends View {
     randomizerStore.cancelSignalled = false
     randomizerStore.currRndStackIdx = prefsStore.prefs.randomizerPrefs.subBatchSize
     randomizerStore.currBaseFlamename = flameName
+    this.closeFeeds()
+    this.gradientFeed = randomFlameService.openRandomGradientFeed(randomizerStore.currRndStackIdx, FEED_PREFETCH)
     this.createRandomGradient()
   }
 
@@ -155,6 +164,8 @@ export class RandomizerView extends View {
     randomizerStore.cancelSignalled = false
     randomizerStore.currRndStackIdx = prefsStore.prefs.randomizerPrefs.batchsize
     randomizerStore.currBaseFlamename = undefined
+    this.closeFeeds()
+    this.flameFeed = randomFlameService.openRandomFlameFeed(randomizerStore.currRndStackIdx, FEED_PREFETCH, editorStore.variations)
     this.createRandomFlame()
   }
 
@@ -162,7 +173,8 @@ export class RandomizerView extends View {
     randomizerStore.calculating = true
     randomizerStore.lastError = ''
 
-    FlamesEndpoint.generateRandomFlame(editorStore.variations).then(
+    // the flames are pushed by the server, which generates the next flames while the current one is rendered
+    this.flameFeed!.then(feed => feed.next()).then(
       randomFlame => {
         randomizerStore.currFlame = FlameMapper.mapFromBackend(randomFlame.flame)
         this.getRenderPanel().rerenderFlame()
@@ -170,6 +182,7 @@ export class RandomizerView extends View {
     ).catch(err=> {
       randomizerStore.calculating = false
       randomizerStore.lastError = err
+      this.closeFeeds()
     })
   }
 
@@ -180,18 +193,29 @@ export class RandomizerView extends View {
     if(rndFlame) {
       randomizerStore.calculating = true
 
-      FlamesEndpoint.generateRandomGradientForFlame(FlameMapper.mapToBackend(rndFlame.flame)).then(
-        randomFlame => {
-          randomizerStore.currFlame = FlameMapper.mapFromBackend(randomFlame.flame)
+      // only the gradient of the local flame is exchanged
+      this.gradientFeed!.then(feed => feed.next()).then(
+        gradient => {
+          const flame = cloneDeep(rndFlame.flame)
+          flame.layers[0].gradient = LayerMapper.mapGradientFromBackend(gradient)
+          randomizerStore.currFlame = flame
           this.getRenderPanel().rerenderFlame()
         }
       ).catch(err => {
         randomizerStore.calculating = false
         randomizerStore.lastError = err
+        this.closeFeeds()
       })
     }
   }
 
+  closeFeeds = () => {
+    this.flameFeed?.then(feed => feed.close()).catch(() => {})
+    this.flameFeed = undefined
+    this.gradientFeed?.then(feed => feed.close()).catch(() => {})
+    this.gradientFeed = undefined
+  }
+
   getRenderPanel = (): SwanRenderPanel =>  {
     const renderPnl = document.querySelector('swan-render-panel')! as SwanRenderPanel
     renderPnl.onRenderFinished = this.onRenderFinished
@@ -235,10 +259,14 @@ export class RandomizerView extends View {
         this.createRandomFlame()
       }
     }
+    else {
+      this.closeFeeds()
+    }
   }
 
   cancelBatch = ()=> {
     randomizerStore.cancelSignalled = true
+    this.closeFeeds()
   }
 
   deleteAll = ()=> {
@@ -37,7 +37,7 @@ import '@vaadin/vaadin-notification'
 import '@vaadin/app-layout/vaadin-drawer-toggle';
 
 import {FlameRenderer} from '../../flames/renderer/flame-renderer'
-import {FlamesEndpoint} from "Frontend/generated/endpoints";
+import {flameDataService} from "Frontend/flames/service/flame-data-service";
 import {FlameMapper} from '../../flames/model/mapper/flame-mapper'
 import '@vaadin/vaadin-combo-box';
 import './single-renderer-render-panel'
@@ -123,7 +123,8 @@ export class SingleRendererView extends View implements BeforeEnterObserver {
         navigator.clipboard.readText().then(text => {
               singleRendererStore.calculating = true
               singleRendererStore.lastError = ''
-              FlamesEndpoint.parseFlame(text).then(flame => {
+              // the single renderer never saves the flame, so it may use the optimized flame
+              flameDataService.parseFlame(text, true, true).then(flame => {
                   singleRendererStore.refreshing = true
                   try {
                       singleRendererStore.flame = FlameMapper.mapFromBackend(flame)
@@ -21,14 +21,21 @@ import dev.hilla.Endpoint;
 import dev.hilla.Nonnull;
 import lombok.extern.slf4j.Slf4j;
 
+import org.jwildfire.swan.flames.model.flame.RandomFlameGeneratorStats;
+import org.jwildfire.swan.flames.service.FlameParseCache;
+import org.jwildfire.swan.flames.service.RandomFlameGeneratorService;
 import org.jwildfire.swan.flames.service.SessionInfoService;
 import org.springframework.beans.factory.annotation.Value;
 
+import java.util.List;
+
 @Endpoint
 @AnonymousAllowed
 @Slf4j
 public class AppInfoEndpoint {
   private final SessionInfoService sessionInfoService;
+  private final FlameParseCache parseCache;
+  private final RandomFlameGeneratorService randomFlameGeneratorService;
 
   @Value("${swan.appVersion}")
   private String appVersion;
@@ -36,8 +43,10 @@ public class AppInfoEndpoint {
   @Value("${swan.appBuildDate}")
   private String appBuildDate;
 
-  public AppInfoEndpoint(SessionInfoService sessionInfoService) {
+  public AppInfoEndpoint(SessionInfoService sessionInfoService, FlameParseCache parseCache, RandomFlameGeneratorService randomFlameGeneratorService) {
     this.sessionInfoService = sessionInfoService;
+    this.parseCache = parseCache;
+    this.randomFlameGeneratorService = randomFlameGeneratorService;
   }
 
   public @Nonnull String getAppVersion() {
@@ -76,4 +85,20 @@ public class AppInfoEndpoint {
     return sessionInfoService.getFlamesParsed();
   }
 
+  public @Nonnull long getParseCacheHitCount() {
+    return parseCache.getHitCount();
+  }
+
+  public @Nonnull long getParseCacheMissCount() {
+    return parseCache.getMissCount();
+  }
+
+  public @Nonnull long getParseCacheEvictionCount() {
+    return parseCache.getEvictionCount();
+  }
+
+  public @Nonnull List<@Nonnull RandomFlameGeneratorStats> getRandomFlameGeneratorStats() {
+    return randomFlameGeneratorService.getStats();
+  }
+
 }
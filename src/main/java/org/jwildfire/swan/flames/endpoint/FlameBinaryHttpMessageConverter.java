@@ -0,0 +1,77 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jwildfire.swan.flames.endpoint;
+
+import org.jwildfire.swan.flames.mapper.FlameBinaryCodec;
+import org.jwildfire.swan.flames.model.flame.Flame;
+import org.jwildfire.swan.flames.model.flame.RandomFlame;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Reads and writes flames in the compact binary format, it is picked by Spring MVC whenever the client sends
+ * or accepts the media type of FlameBinaryCodec.
+ */
+@Component
+public class FlameBinaryHttpMessageConverter extends AbstractHttpMessageConverter<Object> {
+  public static final MediaType MEDIA_TYPE = MediaType.parseMediaType(FlameBinaryCodec.MEDIA_TYPE);
+
+  private final int maxSize;
+
+  public FlameBinaryHttpMessageConverter(@Value("${swan.flameData.maxSizeInBytes:4194304}") int maxSize) {
+    super(MEDIA_TYPE);
+    this.maxSize = maxSize;
+  }
+
+  @Override
+  protected boolean supports(Class<?> clazz) {
+    return Flame.class.equals(clazz) || RandomFlame.class.equals(clazz);
+  }
+
+  @Override
+  protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+    long contentLength = inputMessage.getHeaders().getContentLength();
+    if(contentLength > maxSize) {
+      throw new HttpMessageNotReadableException(String.format("Flame data of %d bytes exceeds the limit of %d bytes", contentLength, maxSize), inputMessage);
+    }
+    // the content-length is optional (e.g. chunked requests), so the read is bounded, too
+    byte[] data = inputMessage.getBody().readNBytes(maxSize + 1);
+    if(data.length > maxSize) {
+      throw new HttpMessageNotReadableException(String.format("Flame data exceeds the limit of %d bytes", maxSize), inputMessage);
+    }
+    try {
+      return RandomFlame.class.equals(clazz) ? FlameBinaryCodec.decodeRandomFlame(data) : FlameBinaryCodec.decodeFlame(data);
+    }
+    catch(IllegalArgumentException ex) {
+      throw new HttpMessageNotReadableException(ex.getMessage(), ex, inputMessage);
+    }
+  }
+
+  @Override
+  protected void writeInternal(Object value, HttpOutputMessage outputMessage) throws IOException {
+    byte[] data = value instanceof RandomFlame ? FlameBinaryCodec.encode((RandomFlame) value) : FlameBinaryCodec.encode((Flame) value);
+    outputMessage.getHeaders().setContentLength(data.length);
+    outputMessage.getBody().write(data);
+  }
+}
@@ -0,0 +1,103 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jwildfire.swan.flames.endpoint;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jwildfire.swan.flames.mapper.FlameBinaryCodec;
+import org.jwildfire.swan.flames.model.flame.Flame;
+import org.jwildfire.swan.flames.model.flame.RandomFlame;
+import org.jwildfire.swan.flames.service.ExampleFlameService;
+import org.jwildfire.swan.flames.service.FlamesService;
+import org.jwildfire.swan.flames.service.SessionInfoService;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Alternative to the flame-related methods of FlamesEndpoint for clients which want to transfer flames in the
+ * compact binary format. The format of the request is selected by the Content-Type, the format of the response
+ * by the Accept-header, both may be JSON or binary.
+ */
+@RestController
+@RequestMapping("/flame-data")
+@Slf4j
+public class FlameDataController {
+  private final FlamesService service;
+  private final SessionInfoService sessionInfoService;
+  private final ExampleFlameService exampleFlameService;
+
+  public FlameDataController(FlamesService service, SessionInfoService sessionInfoService, ExampleFlameService exampleFlameService) {
+    this.service = service;
+    this.sessionInfoService = sessionInfoService;
+    this.exampleFlameService = exampleFlameService;
+  }
+
+  @GetMapping(value = "/example/{name}", produces = {FlameBinaryCodec.MEDIA_TYPE, MediaType.APPLICATION_JSON_VALUE})
+  public Flame getExampleFlame(@PathVariable String name) {
+    try {
+      Flame flame = exampleFlameService.getExampleFlame(name);
+      sessionInfoService.incExampleFlamesProvided();
+      return flame;
+    } catch (Throwable ex) {
+      log.error(String.format("Error reading example %s", name), ex);
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @PostMapping(value = "/parse", consumes = {MediaType.TEXT_PLAIN_VALUE, MediaType.APPLICATION_XML_VALUE},
+      produces = {FlameBinaryCodec.MEDIA_TYPE, MediaType.APPLICATION_JSON_VALUE})
+  public Flame parseFlame(@RequestBody String flameXml, @RequestParam(defaultValue = "false") boolean optimize) {
+    try {
+      // the optimized flame (e.g. with simplified motion curves) is meant for rendering only, not for saving
+      Flame flame = optimize ? service.optimizeFlame(service.parseFlame(flameXml)).getFlame() : service.parseFlame(flameXml);
+      sessionInfoService.incFlamesParsed();
+      return flame;
+    } catch (Throwable ex) {
+      log.error("Error parsing flame", ex);
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @PostMapping(value = "/xml", consumes = {FlameBinaryCodec.MEDIA_TYPE, MediaType.APPLICATION_JSON_VALUE},
+      produces = MediaType.TEXT_PLAIN_VALUE)
+  public String convertFlameToXml(@RequestBody Flame flame) {
+    try {
+      return service.convertFlameToXml(flame);
+    } catch (Throwable ex) {
+      log.error("Error converting flame", ex);
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @PostMapping(value = "/random-gradient", consumes = {FlameBinaryCodec.MEDIA_TYPE, MediaType.APPLICATION_JSON_VALUE},
+      produces = {FlameBinaryCodec.MEDIA_TYPE, MediaType.APPLICATION_JSON_VALUE})
+  public RandomFlame generateRandomGradientForFlame(@RequestBody Flame refFlame) {
+    try {
+      RandomFlame res = service.generateRandomGradientForFlame(refFlame);
+      sessionInfoService.incRandomGradientsCreated();
+      return res;
+    } catch (Throwable ex) {
+      log.error("Error generating random gradient", ex);
+      throw new RuntimeException(ex);
+    }
+  }
+}
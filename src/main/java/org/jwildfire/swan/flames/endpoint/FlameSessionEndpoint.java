@@ -0,0 +1,93 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jwildfire.swan.flames.endpoint;
+
+import com.vaadin.flow.server.auth.AnonymousAllowed;
+import dev.hilla.Endpoint;
+import dev.hilla.Nonnull;
+import lombok.extern.slf4j.Slf4j;
+import org.jwildfire.swan.flames.model.flame.Flame;
+import org.jwildfire.swan.flames.model.flame.FlamePatch;
+import org.jwildfire.swan.flames.service.FlameSessionService;
+
+import java.util.List;
+import java.util.UUID;
+
+@Endpoint
+@AnonymousAllowed
+@Slf4j
+public class FlameSessionEndpoint {
+  private final FlameSessionService service;
+
+  public FlameSessionEndpoint(FlameSessionService service) {
+    this.service = service;
+  }
+
+  public @Nonnull String openSession(@Nonnull Flame flame) {
+    try {
+      return service.openSession(flame).toString();
+    } catch (Throwable ex) {
+      log.error("Error opening flame session", ex);
+      throw new RuntimeException(ex);
+    }
+  }
+
+  public void closeSession(@Nonnull String sessionId) {
+    try {
+      service.closeSession(UUID.fromString(sessionId));
+    } catch (Throwable ex) {
+      log.error("Error closing flame session", ex);
+      throw new RuntimeException(ex);
+    }
+  }
+
+  public void applyPatches(@Nonnull String sessionId, @Nonnull List<@Nonnull FlamePatch> patches) {
+    try {
+      service.applyPatches(UUID.fromString(sessionId), patches);
+    } catch (Throwable ex) {
+      log.error("Error applying flame patches", ex);
+      throw new RuntimeException(ex);
+    }
+  }
+
+  public @Nonnull Flame getFlame(@Nonnull String sessionId) {
+    try {
+      return service.getFlame(UUID.fromString(sessionId));
+    } catch (Throwable ex) {
+      log.error("Error reading session flame", ex);
+      throw new RuntimeException(ex);
+    }
+  }
+
+  public @Nonnull String getFlameXml(@Nonnull String sessionId) {
+    try {
+      return service.getFlameXml(UUID.fromString(sessionId));
+    } catch (Throwable ex) {
+      log.error("Error converting session flame to xml", ex);
+      throw new RuntimeException(ex);
+    }
+  }
+
+  public @Nonnull int[] generateRandomGradient(@Nonnull String sessionId, int layerIndex) {
+    try {
+      return service.generateRandomGradient(UUID.fromString(sessionId), layerIndex);
+    } catch (Throwable ex) {
+      log.error("Error generating random gradient", ex);
+      throw new RuntimeException(ex);
+    }
+  }
+}
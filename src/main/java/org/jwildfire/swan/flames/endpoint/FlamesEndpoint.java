@@ -16,21 +16,24 @@
 */
 package org.jwildfire.swan.flames.endpoint;
 
-import com.google.common.base.Charsets;
-import com.google.common.io.Resources;
 import com.vaadin.flow.server.auth.AnonymousAllowed;
 import dev.hilla.Endpoint;
 import dev.hilla.Nonnull;
 import lombok.extern.slf4j.Slf4j;
 import org.jwildfire.swan.flames.model.flame.Flame;
+import org.jwildfire.swan.flames.model.flame.OptimizedFlame;
 import org.jwildfire.swan.flames.model.flame.RandomFlame;
+import org.jwildfire.swan.flames.model.upload.FlameLibraryEntry;
 import org.jwildfire.swan.flames.repository.TempFileUploadRepository;
+import org.jwildfire.swan.flames.service.ExampleFlameService;
 import org.jwildfire.swan.flames.service.FlamesService;
+import org.jwildfire.swan.flames.service.RandomFlamePool;
 import org.jwildfire.swan.flames.service.SessionInfoService;
+import org.jwildfire.swan.flames.service.TempFlameService;
+import org.jwildfire.swan.flames.service.VariationFilter;
+import org.jwildfire.swan.flames.service.VariationSetRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.UUID;
 
@@ -42,11 +45,19 @@ public class FlamesEndpoint {
   private final FlamesService service;
   private final SessionInfoService sessionInfoService;
   private final TempFileUploadRepository tempFileUploadRepository;
+  private final ExampleFlameService exampleFlameService;
+  private final RandomFlamePool randomFlamePool;
+  private final VariationSetRegistry variationSetRegistry;
+  private final TempFlameService tempFlameService;
 
-  public FlamesEndpoint(@Autowired FlamesService service, SessionInfoService sessionInfoService, TempFileUploadRepository tempFileUploadRepository) {
+  public FlamesEndpoint(@Autowired FlamesService service, SessionInfoService sessionInfoService, TempFileUploadRepository tempFileUploadRepository, ExampleFlameService exampleFlameService, RandomFlamePool randomFlamePool, VariationSetRegistry variationSetRegistry, TempFlameService tempFlameService) {
     this.service = service;
     this.sessionInfoService = sessionInfoService;
     this.tempFileUploadRepository = tempFileUploadRepository;
+    this.exampleFlameService = exampleFlameService;
+    this.randomFlamePool = randomFlamePool;
+    this.variationSetRegistry = variationSetRegistry;
+    this.tempFlameService = tempFlameService;
   }
 
   public int count() {
@@ -54,14 +65,12 @@ public class FlamesEndpoint {
   }
 
   public @Nonnull Flame getExampleFlame(String name) {
-    URL url = Resources.getResource(String.format("examples/%s.flame", name));
     try {
-      String flameXml = Resources.toString(url, StandardCharsets.UTF_8);
-      Flame flame = service.parseFlame(flameXml);
+      Flame flame = exampleFlameService.getExampleFlame(name);
       sessionInfoService.incExampleFlamesProvided();
       return flame;
     } catch (Throwable ex) {
-      log.error(String.format("Error reading file %s", url), ex);
+      log.error(String.format("Error reading example %s", name), ex);
       throw new RuntimeException(ex);
     }
   }
@@ -77,9 +86,50 @@ public class FlamesEndpoint {
     }
   }
 
+  public @Nonnull OptimizedFlame parseFlameOptimized(String flameXml) {
+    try {
+      OptimizedFlame res = service.optimizeFlame(service.parseFlame(flameXml));
+      sessionInfoService.incFlamesParsed();
+      return res;
+    } catch (Throwable ex) {
+      log.error("Error parsing flame", ex);
+      throw new RuntimeException(ex);
+    }
+  }
+
+  public @Nonnull OptimizedFlame optimizeFlame(@Nonnull Flame flame) {
+    try {
+      return service.optimizeFlame(flame);
+    } catch (Throwable ex) {
+      log.error("Error optimizing flame", ex);
+      throw new RuntimeException(ex);
+    }
+  }
+
   public @Nonnull RandomFlame generateRandomFlame(@Nonnull List<@Nonnull String> supportedVariations) {
     try {
-      RandomFlame res = service.generateRandomFlame(supportedVariations);
+      RandomFlame res = randomFlamePool.get(VariationFilter.of(supportedVariations));
+      sessionInfoService.incRandomFlamesCreated();
+      return res;
+    } catch (Throwable ex) {
+      log.error("Error generating random flame", ex);
+      throw new RuntimeException(ex);
+    }
+  }
+
+  // registers the variations supported by the client, the returned handle may be passed to generateRandomFlameForVariationSet
+  public @Nonnull String registerVariationSet(@Nonnull List<@Nonnull String> supportedVariations) {
+    try {
+      return variationSetRegistry.register(supportedVariations);
+    } catch (Throwable ex) {
+      log.error("Error registering variation set", ex);
+      throw new RuntimeException(ex);
+    }
+  }
+
+  public @Nonnull RandomFlame generateRandomFlameForVariationSet(@Nonnull String variationSetHandle) {
+    try {
+      RandomFlame res = randomFlamePool.get(variationSetRegistry.get(variationSetHandle));
       sessionInfoService.incRandomFlamesCreated();
       return res;
     } catch (Throwable ex) {
@@ -88,6 +138,10 @@ public class FlamesEndpoint {
     }
   }
 
+  public @Nonnull List<@Nonnull String> getRandomFlameGeneratorNames() {
+    return service.getRandomFlameGeneratorNames();
+  }
+
   public @Nonnull RandomFlame generateRandomGradientForFlame(@Nonnull Flame refFlame) {
     try {
       RandomFlame res = service.generateRandomGradientForFlame(refFlame);
@@ -99,6 +153,17 @@ public class FlamesEndpoint {
     }
   }
 
+  public @Nonnull List<@Nonnull int[]> generateRandomGradients(int count) {
+    try {
+      List<int[]> res = service.generateRandomGradients(count);
+      sessionInfoService.incRandomGradientsCreated(res.size());
+      return res;
+    } catch (Throwable ex) {
+      log.error("Error generating random gradients", ex);
+      throw new RuntimeException(ex);
+    }
+  }
+
   public @Nonnull String convertFlameToXml(@Nonnull Flame flame) {
     try {
       return service.convertFlameToXml(flame);
@@ -118,9 +183,8 @@ public class FlamesEndpoint {
   public @Nonnull Flame parseTempFlame(@Nonnull String uuidStr) {
     try {
       final UUID uuid = UUID.fromString(unquote(uuidStr));
-      byte[] flameData = tempFileUploadRepository.getContent(uuid);
-      String flameXml = new String(flameData, Charsets.UTF_8);
-      Flame flame = service.parseFlame(flameXml);
+      // usually parsed by the upload already (see TempFileUploadController), so it is taken from the parse cache
+      Flame flame = tempFlameService.parseFlame(uuid);
       sessionInfoService.incFlamesParsed();
       tempFileUploadRepository.removeTempFile(uuid);
       return flame;
@@ -130,4 +194,39 @@ public class FlamesEndpoint {
     }
   }
 
+  // lists the flames of an uploaded flame library, the upload is kept until it expires
+  public @Nonnull List<@Nonnull FlameLibraryEntry> getTempFlameLibraryEntries(@Nonnull String uuidStr) {
+    try {
+      return tempFlameService.getLibraryEntries(UUID.fromString(unquote(uuidStr)));
+    } catch (Throwable ex) {
+      log.error("Error indexing flame library", ex);
+      throw new RuntimeException(ex);
+    }
+  }
+
+  // for clients which only render the flame, the optimized flame (e.g. with simplified motion curves) must not be saved
+  public @Nonnull OptimizedFlame parseTempFlameOptimized(@Nonnull String uuidStr) {
+    try {
+      final UUID uuid = UUID.fromString(unquote(uuidStr));
+      OptimizedFlame res = service.optimizeFlame(tempFlameService.parseFlame(uuid));
+      sessionInfoService.incFlamesParsed();
+      tempFileUploadRepository.removeTempFile(uuid);
+      return res;
+    } catch (Throwable ex) {
+      log.error("Error parsing flame", ex);
+      throw new RuntimeException(ex);
+    }
+  }
+
+  public @Nonnull Flame parseTempFlameLibraryEntry(@Nonnull String uuidStr, int index) {
+    try {
+      Flame flame = tempFlameService.parseLibraryEntry(UUID.fromString(unquote(uuidStr)), index);
+      sessionInfoService.incFlamesParsed();
+      return flame;
+    } catch (Throwable ex) {
+      log.error("Error parsing flame", ex);
+      throw new RuntimeException(ex);
+    }
+  }
+
 }
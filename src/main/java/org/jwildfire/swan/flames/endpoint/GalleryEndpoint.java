@@ -20,56 +20,64 @@ import com.vaadin.flow.server.auth.AnonymousAllowed;
 import dev.hilla.Endpoint;
 import dev.hilla.Nonnull;
 import lombok.extern.slf4j.Slf4j;
-import org.jwildfire.base.Tools;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
-import org.springframework.core.io.support.ResourcePatternResolver;
+import org.jwildfire.swan.flames.model.gallery.ExampleQuery;
+import org.jwildfire.swan.flames.model.gallery.ExampleQueryResult;
+import org.jwildfire.swan.flames.model.gallery.ExampleTag;
+import org.jwildfire.swan.flames.repository.ExampleIndexRepository;
+import org.jwildfire.swan.flames.repository.GalleryPackRepository;
+import org.jwildfire.swan.flames.service.ExampleQueryService;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 @Endpoint
 @AnonymousAllowed
 @Slf4j
 public class GalleryEndpoint {
-  private static List<String> examples = null;
   private static List<String> exampleMetaData = null;
   private static final String EXAMPLE_PATH = "examples";
 
+  private final ExampleIndexRepository exampleIndexRepository;
+  private final GalleryPackRepository galleryPackRepository;
+  private final ExampleQueryService exampleQueryService;
+
+  public GalleryEndpoint(ExampleIndexRepository exampleIndexRepository, GalleryPackRepository galleryPackRepository, ExampleQueryService exampleQueryService) {
+    this.exampleIndexRepository = exampleIndexRepository;
+    this.galleryPackRepository = galleryPackRepository;
+    this.exampleQueryService = exampleQueryService;
+  }
+
+  public @Nonnull ExampleQueryResult queryExamples(@Nonnull ExampleQuery query) {
+    try {
+      return exampleQueryService.query(query);
+    } catch (Throwable ex) {
+      log.error("Error querying examples", ex);
+      throw new RuntimeException(ex);
+    }
+  }
+
+  public @Nonnull List<@Nonnull ExampleTag> getExampleTags() {
+    try {
+      return exampleQueryService.getTags();
+    } catch (Throwable ex) {
+      log.error("Error accessing example tags", ex);
+      throw new RuntimeException(ex);
+    }
+  }
+
+  // version of the gallery resources, which are served by the GalleryResourceController, or an
+  // empty string if the gallery pack is not available
+  public @Nonnull String getResourcePackVersion() {
+    return galleryPackRepository.isAvailable() ? galleryPackRepository.getVersion() : "";
+  }
+
   public @Nonnull List<@Nonnull String> getExampleList() {
     try {
-      if(examples ==null) {
-        List<String> metaData = new ArrayList<>();
-        ClassLoader cl = getClassLoader();
-        ResourcePatternResolver resolver = new PathMatchingResourcePatternResolver(cl);
-        Resource[] resources = resolver.getResources("classpath*:examples/example*.flame") ;
-        for (Resource resource: resources){
-          // in dev mode the entries sometimes seem to get duplicated, where a number is appended
-          // to the duplicates (e. g. "example001" -> "example001 2").
-          // We now skip these entries by filtering any entry having a space char in the name
-          if(!resource.getFilename().contains(" ")) {
-            try(InputStream in=getResourceAsStream(String.format("%s/%s", EXAMPLE_PATH, resource.getFilename()))) {
-              if(in==null) {
-                continue;
-              }
-            }
-            try(InputStream in=getResourceAsStream(String.format("%s/%s.json", EXAMPLE_PATH, Tools.trimFileExt(resource.getFilename())))) {
-              if(in!=null) {
-                metaData.add(Tools.trimFileExt(resource.getFilename()));
-              }
-            }
-          }
-        }
-        examples = metaData;
-      }
-      return examples;
+      return exampleIndexRepository.getExampleNames();
     } catch (Throwable ex) {
       log.error("Error accessing example example-list", ex);
       throw new RuntimeException(ex);
@@ -94,7 +102,7 @@ public class GalleryEndpoint {
 
   public @Nonnull String getExampleMetaData(@Nonnull String example) {
     try {
-      return getResourceContent(String.format("%s/%s.json", EXAMPLE_PATH, example));
+      return exampleIndexRepository.getMetaData(example).orElseThrow();
     } catch (Throwable ex) {
       log.error("Error accessing example meta-data", ex);
       throw new RuntimeException(ex);
@@ -111,16 +119,12 @@ public class GalleryEndpoint {
   }
 
   private String getResourceContent(String filename) throws IOException {
+    Optional<String> packedContent = galleryPackRepository.getContentAsString(filename);
+    if(packedContent.isPresent()) {
+      return packedContent.get();
+    }
     try(InputStream inputStream = getResourceAsStream(filename)) {
-      StringBuilder textBuilder = new StringBuilder();
-      try (Reader reader = new BufferedReader(new InputStreamReader
-              (inputStream, Charset.forName(StandardCharsets.UTF_8.name())))) {
-        int c = 0;
-        while ((c = reader.read()) != -1) {
-          textBuilder.append((char) c);
-        }
-        return textBuilder.toString();
-      }
+      return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
     }
   }
 
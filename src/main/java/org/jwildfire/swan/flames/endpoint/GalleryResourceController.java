@@ -0,0 +1,105 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+
+package org.jwildfire.swan.flames.endpoint;
+
+import org.jwildfire.swan.flames.repository.GalleryPack;
+import org.jwildfire.swan.flames.repository.GalleryPackRepository;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Optional;
+
+/**
+ * Serves the resources of the gallery pack. Requests carrying the current pack version (parameter "v")
+ * may be cached forever, all others must be revalidated using the ETag.
+ */
+@Controller
+public class GalleryResourceController {
+  private static final String CACHE_IMMUTABLE = "public, max-age=31536000, immutable";
+  private static final String CACHE_REVALIDATE = "public, no-cache";
+  // request attributes of the Tomcat sendfile-support
+  private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+  private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+  private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+  private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+  private final GalleryPackRepository repository;
+
+  public GalleryResourceController(GalleryPackRepository repository) {
+    this.repository = repository;
+  }
+
+  @GetMapping("/gallery-resources/{folder}/{name:.+}")
+  public void getResource(@PathVariable String folder, @PathVariable String name,
+                          @RequestParam(name = "v", required = false) String version,
+                          HttpServletRequest request, HttpServletResponse response) throws IOException {
+    Optional<GalleryPack.Entry> entry = repository.getEntry(folder + "/" + name);
+    if (entry.isEmpty()) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    GalleryPack.Entry resource = entry.get();
+    String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+    boolean gzip = resource.hasGzipVariant() && acceptEncoding != null && acceptEncoding.contains("gzip");
+    String etag = "\"" + resource.getEtag() + (gzip ? "-gz" : "") + "\"";
+
+    response.setHeader(HttpHeaders.ETAG, etag);
+    response.setHeader(HttpHeaders.CACHE_CONTROL,
+        repository.getVersion().equals(version) ? CACHE_IMMUTABLE : CACHE_REVALIDATE);
+    if (resource.hasGzipVariant()) {
+      response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    }
+    String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+    if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    long offset = gzip ? resource.getGzipOffset() : resource.getOffset();
+    int length = gzip ? resource.getGzipLength() : resource.getLength();
+    response.setContentType(resource.getContentType());
+    response.setContentLengthLong(length);
+    if (gzip) {
+      response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+    }
+    if ("HEAD".equals(request.getMethod())) {
+      return;
+    }
+    if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+      // let the container transfer the bytes directly from the pack file
+      request.setAttribute(SENDFILE_FILENAME, repository.getPackFile().toAbsolutePath().toString());
+      request.setAttribute(SENDFILE_START, offset);
+      request.setAttribute(SENDFILE_END, offset + length);
+    } else {
+      ByteBuffer content = repository.getContent(resource, gzip);
+      WritableByteChannel channel = Channels.newChannel(response.getOutputStream());
+      while (content.hasRemaining()) {
+        channel.write(content);
+      }
+    }
+  }
+}
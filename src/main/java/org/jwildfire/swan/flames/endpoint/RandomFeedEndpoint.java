@@ -0,0 +1,81 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jwildfire.swan.flames.endpoint;
+
+import com.vaadin.flow.server.auth.AnonymousAllowed;
+import dev.hilla.Endpoint;
+import dev.hilla.Nonnull;
+import lombok.extern.slf4j.Slf4j;
+import org.jwildfire.swan.flames.model.flame.RandomFlame;
+import org.jwildfire.swan.flames.service.RandomFeedService;
+import org.jwildfire.swan.flames.service.SessionInfoService;
+import org.jwildfire.swan.flames.service.VariationSetRegistry;
+import reactor.core.publisher.Flux;
+
+// The feedId is created by createFeedId, it is used to open one feed and to request further items of it
+@Endpoint
+@AnonymousAllowed
+@Slf4j
+public class RandomFeedEndpoint {
+  private final RandomFeedService service;
+  private final VariationSetRegistry variationSetRegistry;
+  private final SessionInfoService sessionInfoService;
+
+  public RandomFeedEndpoint(RandomFeedService service, VariationSetRegistry variationSetRegistry, SessionInfoService sessionInfoService) {
+    this.service = service;
+    this.variationSetRegistry = variationSetRegistry;
+    this.sessionInfoService = sessionInfoService;
+  }
+
+  public @Nonnull String createFeedId() {
+    try {
+      return service.createFeedId();
+    } catch (Throwable ex) {
+      log.error("Error creating feed id", ex);
+      throw new RuntimeException(ex);
+    }
+  }
+
+  public @Nonnull Flux<@Nonnull RandomFlame> randomFlameFeed(@Nonnull String feedId, @Nonnull String variationSetHandle, int initialDemand) {
+    try {
+      return service.randomFlameFeed(feedId, variationSetRegistry.get(variationSetHandle), initialDemand)
+          .doOnNext(flame -> sessionInfoService.incRandomFlamesCreated());
+    } catch (Throwable ex) {
+      log.error("Error opening random flame feed", ex);
+      throw new RuntimeException(ex);
+    }
+  }
+
+  public @Nonnull Flux<@Nonnull int[]> randomGradientFeed(@Nonnull String feedId, int initialDemand) {
+    try {
+      return service.randomGradientFeed(feedId, initialDemand)
+          .doOnNext(gradient -> sessionInfoService.incRandomGradientsCreated());
+    } catch (Throwable ex) {
+      log.error("Error opening random gradient feed", ex);
+      throw new RuntimeException(ex);
+    }
+  }
+
+  public void requestMore(@Nonnull String feedId, int count) {
+    try {
+      service.requestMore(feedId, count);
+    } catch (Throwable ex) {
+      log.error("Error requesting feed items", ex);
+      throw new RuntimeException(ex);
+    }
+  }
+}
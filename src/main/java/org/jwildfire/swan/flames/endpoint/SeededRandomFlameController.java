@@ -0,0 +1,99 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jwildfire.swan.flames.endpoint;
+
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+import org.jwildfire.swan.flames.mapper.FlameBinaryCodec;
+import org.jwildfire.swan.flames.model.flame.RandomFlame;
+import org.jwildfire.swan.flames.repository.VariationResourceRepository;
+import org.jwildfire.swan.flames.service.SeededRandomFlameService;
+import org.jwildfire.swan.flames.service.SessionInfoService;
+import org.jwildfire.swan.flames.service.VariationFilter;
+import org.jwildfire.swan.flames.service.VariationSetRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+/**
+ * Serves seeded random flames by GET, so that they can be cached by the browser or a reverse proxy and shared
+ * by link. The variation set is referenced by a handle of FlamesEndpoint.registerVariationSet, the format
+ * of the response is selected by the Accept-header (JSON or binary).
+ * The ETag is derived from the content. Only flames of a persistent store (swan.seededFlames.dir) are stable
+ * across restarts and may be cached as immutable, otherwise they are cached only for a short time.
+ */
+@RestController
+@Slf4j
+public class SeededRandomFlameController {
+  private static final String CACHE_IMMUTABLE = "public, max-age=31536000, immutable";
+  private final SeededRandomFlameService service;
+  private final VariationSetRegistry variationSetRegistry;
+  private final SessionInfoService sessionInfoService;
+  private final VariationResourceRepository resourceRepository;
+  private final String cacheControl;
+
+  public SeededRandomFlameController(SeededRandomFlameService service, VariationSetRegistry variationSetRegistry, SessionInfoService sessionInfoService,
+                                     VariationResourceRepository resourceRepository,
+                                     @Value("${swan.seededFlames.maxAgeInSeconds:300}") long maxAgeInSeconds) {
+    this.service = service;
+    this.variationSetRegistry = variationSetRegistry;
+    this.sessionInfoService = sessionInfoService;
+    this.resourceRepository = resourceRepository;
+    this.cacheControl = service.isPersistent() ? CACHE_IMMUTABLE : String.format("public, max-age=%d", Math.max(maxAgeInSeconds, 0));
+  }
+
+  @GetMapping(value = "/random-flames/{variationSetHandle}/{seed}", produces = {FlameBinaryCodec.MEDIA_TYPE, MediaType.APPLICATION_JSON_VALUE})
+  public ResponseEntity<RandomFlame> getRandomFlame(@PathVariable String variationSetHandle, @PathVariable long seed,
+                                                   @RequestParam(required = false) String generator, WebRequest request) {
+    VariationFilter variationFilter;
+    try {
+      variationFilter = variationSetRegistry.get(variationSetHandle);
+    } catch (IllegalArgumentException ex) {
+      return ResponseEntity.notFound().build();
+    }
+    if (!service.isValidGeneratorName(generator)) {
+      return ResponseEntity.badRequest().build();
+    }
+    try {
+      byte[] data = service.getRandomFlameData(variationFilter, generator, seed);
+      String etag = "\"" + Hashing.sha256().hashBytes(data) + "\"";
+      if (request.checkNotModified(etag)) {
+        return null;
+      }
+      RandomFlame res = FlameBinaryCodec.decodeRandomFlame(data);
+      resourceRepository.externalize(res.getFlame());
+      sessionInfoService.incRandomFlamesCreated();
+      return ResponseEntity.ok()
+          .eTag(etag)
+          .header(HttpHeaders.CACHE_CONTROL, cacheControl)
+          .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+          .body(res);
+    } catch (SeededRandomFlameService.TooManyGenerationsException ex) {
+      return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+    } catch (Throwable ex) {
+      log.error("Error generating seeded random flame", ex);
+      throw new RuntimeException(ex);
+    }
+  }
+}
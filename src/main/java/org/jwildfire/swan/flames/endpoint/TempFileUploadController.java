@@ -17,7 +17,9 @@
 
 package org.jwildfire.swan.flames.endpoint;
 
+import lombok.extern.slf4j.Slf4j;
 import org.jwildfire.swan.flames.repository.TempFileUploadRepository;
+import org.jwildfire.swan.flames.service.TempFlameService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -29,11 +31,14 @@ import org.springframework.web.multipart.MultipartFile;
 import java.util.UUID;
 
 @Controller
+@Slf4j
 public class TempFileUploadController {
   private final TempFileUploadRepository repository;
+  private final TempFlameService tempFlameService;
 
-  public TempFileUploadController(TempFileUploadRepository repository) {
+  public TempFileUploadController(TempFileUploadRepository repository, TempFlameService tempFlameService) {
     this.repository = repository;
+    this.tempFlameService = tempFlameService;
   }
 
   @PostMapping("/upload")
@@ -43,4 +48,22 @@ public class TempFileUploadController {
     return ResponseEntity.ok().body(repository.addFile(file));
   }
 
+  // stores and parses (the first flame of) an uploaded flame file, the returned uuid can be passed to
+  // FlamesEndpoint.parseTempFlame() which then takes the flame from the parse cache
+  @PostMapping("/upload-flame")
+  @ResponseBody
+  public ResponseEntity<UUID> handleFlameUpload(
+      @RequestParam("file") MultipartFile file) {
+    UUID uuid = repository.addFile(file);
+    try {
+      tempFlameService.parseFlame(uuid);
+    }
+    catch (Throwable ex) {
+      log.error("Error parsing uploaded flame", ex);
+      repository.removeTempFile(uuid);
+      return ResponseEntity.badRequest().build();
+    }
+    return ResponseEntity.ok().body(uuid);
+  }
+
 }
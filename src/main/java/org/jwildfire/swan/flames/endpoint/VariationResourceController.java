@@ -0,0 +1,62 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jwildfire.swan.flames.endpoint;
+
+import org.jwildfire.swan.flames.repository.VariationResourceRepository;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.context.request.WebRequest;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Serves the content of binary variation resources by their hash. As the content can never change for a
+ * given hash, responses may be cached forever. Range requests are handled by Spring for Resource bodies.
+ */
+@Controller
+public class VariationResourceController {
+  private static final String CACHE_IMMUTABLE = "public, max-age=31536000, immutable";
+  private final VariationResourceRepository repository;
+
+  public VariationResourceController(VariationResourceRepository repository) {
+    this.repository = repository;
+  }
+
+  @GetMapping("/variation-resources/{hash}")
+  public ResponseEntity<Resource> getResource(@PathVariable String hash, WebRequest request) {
+    Optional<Path> file = repository.getFile(hash);
+    if (file.isEmpty()) {
+      return ResponseEntity.notFound().build();
+    }
+    String etag = "\"" + hash + "\"";
+    if (request.checkNotModified(etag)) {
+      return null;
+    }
+    return ResponseEntity.ok()
+        .eTag(etag)
+        .header(HttpHeaders.CACHE_CONTROL, CACHE_IMMUTABLE)
+        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+        .body(new FileSystemResource(file.get()));
+  }
+}
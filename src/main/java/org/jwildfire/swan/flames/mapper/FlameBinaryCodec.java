@@ -0,0 +1,631 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jwildfire.swan.flames.mapper;
+
+import org.jwildfire.swan.flames.model.flame.Flame;
+import org.jwildfire.swan.flames.model.flame.FlameParam;
+import org.jwildfire.swan.flames.model.flame.FlameParamCurve;
+import org.jwildfire.swan.flames.model.flame.FlameParamCurveInterpolation;
+import org.jwildfire.swan.flames.model.flame.FlameParamDataType;
+import org.jwildfire.swan.flames.model.flame.FlameParamType;
+import org.jwildfire.swan.flames.model.flame.Layer;
+import org.jwildfire.swan.flames.model.flame.RandomFlame;
+import org.jwildfire.swan.flames.model.flame.Variation;
+import org.jwildfire.swan.flames.model.flame.VariationParam;
+import org.jwildfire.swan.flames.model.flame.VariationResource;
+import org.jwildfire.swan.flames.model.flame.VariationResourceType;
+import org.jwildfire.swan.flames.model.flame.XForm;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary encoding of the flame-model, as an alternative to the (verbose) JSON of the endpoints.
+ * Must be kept in sync with the client-side codec (frontend/flames/model/mapper/flame-binary-codec.ts).
+ *
+ * Layout (version 2): magic "SWF", version byte, record type byte, followed by the record. Doubles are
+ * stored as little-endian IEEE 754, integers and sizes as (zigzag-)varints, strings as varint(length + 1)
+ * followed by UTF-8 bytes (0 means null). The affine params of xforms and xaos weights which have their
+ * default value are omitted and marked by a bitmask, the gradient is delta-coded.
+ */
+public final class FlameBinaryCodec {
+  public static final String MEDIA_TYPE = "application/x-swan-flame";
+  public static final int VERSION = 2;
+
+  private static final byte[] MAGIC = {'S', 'W', 'F'};
+  private static final int RECORD_FLAME = 1;
+  private static final int RECORD_RANDOM_FLAME = 2;
+
+  // bits of the tag byte of a param
+  private static final int PARAM_INT = 0x01;
+  private static final int PARAM_CURVE = 0x02;
+  private static final int PARAM_HAS_VALUE = 0x04;
+
+  private static final int XFORM_PARAM_MASK_BYTES = 6;
+
+  // minimum encoded sizes, used to reject sizes which could not fit into the remaining data
+  private static final int MIN_LAYER_BYTES = 2 * 8 + 3;
+  private static final int MIN_XFORM_BYTES = 3 * 8 + 1 + XFORM_PARAM_MASK_BYTES + 1;
+  private static final int MIN_VARIATION_BYTES = 4;
+  // a double decoded from a single bit of a mask takes 64 times its encoded size, so the total number of those
+  // elements is bounded by a multiple of the data size
+  private static final int MIN_MASK_ALLOCATION = 65536;
+  private static final int MAX_MASK_EXPANSION = 16;
+
+  private FlameBinaryCodec() {
+  }
+
+  public static byte[] encode(Flame flame) {
+    Writer writer = new Writer();
+    writer.writeHeader(RECORD_FLAME);
+    writeFlame(writer, flame);
+    return writer.toByteArray();
+  }
+
+  public static byte[] encode(RandomFlame randomFlame) {
+    Writer writer = new Writer();
+    writer.writeHeader(RECORD_RANDOM_FLAME);
+    writeFlame(writer, randomFlame.getFlame());
+    writer.writeString(randomFlame.getFlameXml());
+    return writer.toByteArray();
+  }
+
+  public static Flame decodeFlame(byte[] data) {
+    Reader reader = new Reader(data);
+    try {
+      reader.readHeader(RECORD_FLAME);
+      return readFlame(reader);
+    }
+    catch(BufferUnderflowException ex) {
+      throw new IllegalArgumentException("Truncated flame data", ex);
+    }
+  }
+
+  public static RandomFlame decodeRandomFlame(byte[] data) {
+    Reader reader = new Reader(data);
+    try {
+      reader.readHeader(RECORD_RANDOM_FLAME);
+      Flame flame = readFlame(reader);
+      return new RandomFlame(flame, reader.readString());
+    }
+    catch(BufferUnderflowException ex) {
+      throw new IllegalArgumentException("Truncated flame data", ex);
+    }
+  }
+
+  private static void writeFlame(Writer writer, Flame flame) {
+    writer.writeDouble(flame.getBrightness());
+    writer.writeDouble(flame.getContrast());
+    writer.writeDouble(flame.getSampleDensity());
+    writer.writeDouble(flame.getLowDensityBrightness());
+    writer.writeDouble(flame.getForegroundOpacity());
+    writer.writeDouble(flame.getVibrancy());
+    writer.writeDouble(flame.getSaturation());
+    writer.writeDouble(flame.getGamma());
+    writer.writeDouble(flame.getGammaThreshold());
+    writer.writeDouble(flame.getBalanceRed());
+    writer.writeDouble(flame.getBalanceGreen());
+    writer.writeDouble(flame.getBalanceBlue());
+    writer.writeDouble(flame.getWhiteLevel());
+    writer.writeDouble(flame.getPixelsPerUnit());
+    writer.writeInt(flame.getWidth());
+    writer.writeInt(flame.getHeight());
+    writeParam(writer, flame.getCamZoom());
+    writeParam(writer, flame.getCentreX());
+    writeParam(writer, flame.getCentreY());
+    writeParam(writer, flame.getCamYaw());
+    writeParam(writer, flame.getCamPitch());
+    writeParam(writer, flame.getCamRoll());
+    writeParam(writer, flame.getCamBank());
+    writer.writeDouble(flame.getCamDOF());
+    writer.writeDouble(flame.getCamDOFArea());
+    writer.writeDouble(flame.getCamPerspective());
+    writer.writeDouble(flame.getDiminishZ());
+    writer.writeDouble(flame.getCamPosX());
+    writer.writeDouble(flame.getCamPosY());
+    writer.writeDouble(flame.getCamPosZ());
+    writer.writeBoolean(flame.isNewCamDOF());
+    writer.writeBoolean(flame.isBgTransparency());
+    writer.writeDouble(flame.getDimZDistance());
+    writer.writeDouble(flame.getCamZ());
+    writer.writeDouble(flame.getFocusX());
+    writer.writeDouble(flame.getFocusY());
+    writer.writeDouble(flame.getFocusZ());
+    writer.writeDouble(flame.getCamDOFExponent());
+    writer.writeInt(flame.getMotionBlurLength());
+    writer.writeDouble(flame.getMotionBlurTimeStep());
+    writer.writeDouble(flame.getMotionBlurDecay());
+    writer.writeInt(flame.getFrame());
+    writer.writeInt(flame.getFrameCount());
+    writer.writeInt(flame.getFps());
+    writer.writeString(flame.getResolutionProfile());
+    writer.writeString(flame.getQualityProfile());
+    writer.writeString(flame.getName());
+    writer.writeString(flame.getBgImageFilename());
+    writer.writeString(flame.getLastFilename());
+    writer.writeSize(flame.getLayers().size());
+    for(Layer layer : flame.getLayers()) {
+      writeLayer(writer, layer);
+    }
+  }
+
+  private static Flame readFlame(Reader reader) {
+    Flame flame = new Flame();
+    flame.setBrightness(reader.readDouble());
+    flame.setContrast(reader.readDouble());
+    flame.setSampleDensity(reader.readDouble());
+    flame.setLowDensityBrightness(reader.readDouble());
+    flame.setForegroundOpacity(reader.readDouble());
+    flame.setVibrancy(reader.readDouble());
+    flame.setSaturation(reader.readDouble());
+    flame.setGamma(reader.readDouble());
+    flame.setGammaThreshold(reader.readDouble());
+    flame.setBalanceRed(reader.readDouble());
+    flame.setBalanceGreen(reader.readDouble());
+    flame.setBalanceBlue(reader.readDouble());
+    flame.setWhiteLevel(reader.readDouble());
+    flame.setPixelsPerUnit(reader.readDouble());
+    flame.setWidth(reader.readInt());
+    flame.setHeight(reader.readInt());
+    flame.setCamZoom(readParam(reader));
+    flame.setCentreX(readParam(reader));
+    flame.setCentreY(readParam(reader));
+    flame.setCamYaw(readParam(reader));
+    flame.setCamPitch(readParam(reader));
+    flame.setCamRoll(readParam(reader));
+    flame.setCamBank(readParam(reader));
+    flame.setCamDOF(reader.readDouble());
+    flame.setCamDOFArea(reader.readDouble());
+    flame.setCamPerspective(reader.readDouble());
+    flame.setDiminishZ(reader.readDouble());
+    flame.setCamPosX(reader.readDouble());
+    flame.setCamPosY(reader.readDouble());
+    flame.setCamPosZ(reader.readDouble());
+    flame.setNewCamDOF(reader.readBoolean());
+    flame.setBgTransparency(reader.readBoolean());
+    flame.setDimZDistance(reader.readDouble());
+    flame.setCamZ(reader.readDouble());
+    flame.setFocusX(reader.readDouble());
+    flame.setFocusY(reader.readDouble());
+    flame.setFocusZ(reader.readDouble());
+    flame.setCamDOFExponent(reader.readDouble());
+    flame.setMotionBlurLength(reader.readInt());
+    flame.setMotionBlurTimeStep(reader.readDouble());
+    flame.setMotionBlurDecay(reader.readDouble());
+    flame.setFrame(reader.readInt());
+    flame.setFrameCount(reader.readInt());
+    flame.setFps(reader.readInt());
+    flame.setResolutionProfile(reader.readString());
+    flame.setQualityProfile(reader.readString());
+    flame.setName(reader.readString());
+    flame.setBgImageFilename(reader.readString());
+    flame.setLastFilename(reader.readString());
+    int layerCount = reader.readSize(MIN_LAYER_BYTES);
+    for(int i = 0; i < layerCount; i++) {
+      flame.getLayers().add(readLayer(reader));
+    }
+    return flame;
+  }
+
+  private static void writeLayer(Writer writer, Layer layer) {
+    writer.writeDouble(layer.getWeight());
+    writer.writeDouble(layer.getDensity());
+    // neighbouring colors of a gradient are usually similar, so the deltas fit into one byte most of the time
+    int[] gradient = layer.getGradient();
+    writer.writeSize(gradient.length);
+    int prevR = 0, prevG = 0, prevB = 0;
+    for(int color : gradient) {
+      int r = (color >> 16) & 0xff, g = (color >> 8) & 0xff, b = color & 0xff;
+      writer.writeInt(r - prevR);
+      writer.writeInt(g - prevG);
+      writer.writeInt(b - prevB);
+      prevR = r;
+      prevG = g;
+      prevB = b;
+    }
+    writer.writeSize(layer.getXforms().size());
+    for(XForm xForm : layer.getXforms()) {
+      writeXForm(writer, xForm);
+    }
+    writer.writeSize(layer.getFinalXforms().size());
+    for(XForm xForm : layer.getFinalXforms()) {
+      writeXForm(writer, xForm);
+    }
+  }
+
+  private static Layer readLayer(Reader reader) {
+    Layer layer = new Layer();
+    layer.setWeight(reader.readDouble());
+    layer.setDensity(reader.readDouble());
+    // three varints per color
+    int[] gradient = new int[reader.readSize(3)];
+    int r = 0, g = 0, b = 0;
+    for(int i = 0; i < gradient.length; i++) {
+      r += reader.readInt();
+      g += reader.readInt();
+      b += reader.readInt();
+      gradient[i] = ((r & 0xff) << 16) | ((g & 0xff) << 8) | (b & 0xff);
+    }
+    layer.setGradient(gradient);
+    int xFormCount = reader.readSize(MIN_XFORM_BYTES);
+    for(int i = 0; i < xFormCount; i++) {
+      layer.getXforms().add(readXForm(reader));
+    }
+    int finalXFormCount = reader.readSize(MIN_XFORM_BYTES);
+    for(int i = 0; i < finalXFormCount; i++) {
+      layer.getFinalXforms().add(readXForm(reader));
+    }
+    return layer;
+  }
+
+  private static void writeXForm(Writer writer, XForm xForm) {
+    writer.writeDouble(xForm.getWeight());
+    writer.writeDouble(xForm.getColor());
+    writer.writeDouble(xForm.getColorSymmetry());
+
+    double[] modifiedWeights = xForm.getModifiedWeights();
+    byte[] weightMask = new byte[(modifiedWeights.length + 7) / 8];
+    for(int i = 0; i < modifiedWeights.length; i++) {
+      if(modifiedWeights[i] != 1.0) {
+        weightMask[i >> 3] |= 1 << (i & 7);
+      }
+    }
+    writer.writeSize(modifiedWeights.length);
+    writer.writeBytes(weightMask);
+    for(double weight : modifiedWeights) {
+      if(weight != 1.0) {
+        writer.writeDouble(weight);
+      }
+    }
+
+    byte[] paramMask = new byte[XFORM_PARAM_MASK_BYTES];
+    for(int i = 0; i < XFormAffineParams.COUNT; i++) {
+      if(!isDefault(XFormAffineParams.get(xForm, i), XFormAffineParams.getDefault(i))) {
+        paramMask[i >> 3] |= 1 << (i & 7);
+      }
+    }
+    writer.writeBytes(paramMask);
+    for(int i = 0; i < XFormAffineParams.COUNT; i++) {
+      if((paramMask[i >> 3] & (1 << (i & 7))) != 0) {
+        writeParam(writer, XFormAffineParams.get(xForm, i));
+      }
+    }
+
+    writer.writeSize(xForm.getVariations().size());
+    for(Variation variation : xForm.getVariations()) {
+      writer.writeString(variation.getName());
+      writeParam(writer, variation.getAmount());
+      writer.writeSize(variation.getParams().size());
+      for(VariationParam param : variation.getParams()) {
+        writer.writeString(param.getName());
+        writeParam(writer, param.getValue());
+      }
+      writer.writeSize(variation.getResources().size());
+      for(VariationResource resource : variation.getResources()) {
+        writer.writeString(resource.getName());
+        writer.writeByte(resource.getResourceType().ordinal());
+        writer.writeString(resource.getStringValue());
+        writer.writeString(resource.getHash());
+      }
+    }
+  }
+
+  private static XForm readXForm(Reader reader) {
+    XForm xForm = new XForm();
+    xForm.setWeight(reader.readDouble());
+    xForm.setColor(reader.readDouble());
+    xForm.setColorSymmetry(reader.readDouble());
+
+    double[] modifiedWeights = new double[reader.readMaskSize()];
+    byte[] weightMask = reader.readBytes((modifiedWeights.length + 7) / 8);
+    for(int i = 0; i < modifiedWeights.length; i++) {
+      modifiedWeights[i] = (weightMask[i >> 3] & (1 << (i & 7))) != 0 ? reader.readDouble() : 1.0;
+    }
+    xForm.setModifiedWeights(modifiedWeights);
+
+    byte[] paramMask = reader.readBytes(XFORM_PARAM_MASK_BYTES);
+    for(int i = 0; i < XFormAffineParams.COUNT; i++) {
+      FlameParam param = (paramMask[i >> 3] & (1 << (i & 7))) != 0 ?
+          readParam(reader) : FlameParam.floatScalar(XFormAffineParams.getDefault(i));
+      XFormAffineParams.set(xForm, i, param);
+    }
+
+    int variationCount = reader.readSize(MIN_VARIATION_BYTES);
+    for(int i = 0; i < variationCount; i++) {
+      Variation variation = new Variation(reader.readString(), readParam(reader));
+      // name and tag of the value
+      int paramCount = reader.readSize(2);
+      for(int j = 0; j < paramCount; j++) {
+        variation.getParams().add(new VariationParam(reader.readString(), readParam(reader)));
+      }
+      // name, type, value and hash
+      int resourceCount = reader.readSize(4);
+      for(int j = 0; j < resourceCount; j++) {
+        String name = reader.readString();
+        int resourceType = reader.readByte();
+        if(resourceType >= VariationResourceType.values().length) {
+          throw new IllegalArgumentException(String.format("Invalid resource type %d", resourceType));
+        }
+        String stringValue = reader.readString();
+        variation.getResources().add(new VariationResource(name, VariationResourceType.values()[resourceType], stringValue, reader.readString()));
+      }
+      xForm.getVariations().add(variation);
+    }
+    return xForm;
+  }
+
+  private static boolean isDefault(FlameParam param, double defaultValue) {
+    return param.getParamType() == FlameParamType.SCALAR && param.getDataType() == FlameParamDataType.FLOAT
+        && param.getFloatScalar() != null && param.getFloatScalar() == defaultValue;
+  }
+
+  private static void writeParam(Writer writer, FlameParam param) {
+    boolean isInt = param.getDataType() == FlameParamDataType.INT;
+    boolean isCurve = param.getParamType() == FlameParamType.CURVE && param.getCurve() != null;
+    boolean hasValue = isInt ? param.getIntScalar() != null : param.getFloatScalar() != null;
+    writer.writeByte((isInt ? PARAM_INT : 0) | (isCurve ? PARAM_CURVE : 0) | (hasValue ? PARAM_HAS_VALUE : 0));
+    if(hasValue) {
+      if(isInt) {
+        writer.writeInt(param.getIntScalar());
+      }
+      else {
+        writer.writeDouble(param.getFloatScalar());
+      }
+    }
+    if(isCurve) {
+      writeCurve(writer, param.getCurve());
+    }
+  }
+
+  private static FlameParam readParam(Reader reader) {
+    int tag = reader.readByte();
+    boolean isInt = (tag & PARAM_INT) != 0;
+    boolean isCurve = (tag & PARAM_CURVE) != 0;
+    Double floatScalar = null;
+    Integer intScalar = null;
+    if((tag & PARAM_HAS_VALUE) != 0) {
+      if(isInt) {
+        intScalar = reader.readInt();
+      }
+      else {
+        floatScalar = reader.readDouble();
+      }
+    }
+    if(isCurve) {
+      return new FlameParam(FlameParamType.CURVE, isInt ? FlameParamDataType.INT : FlameParamDataType.FLOAT,
+          floatScalar, intScalar, readCurve(reader));
+    }
+    else if(isInt && intScalar != null) {
+      return FlameParam.intScalar(intScalar);
+    }
+    else if(!isInt && floatScalar != null) {
+      return FlameParam.floatScalar(floatScalar);
+    }
+    return new FlameParam(FlameParamType.SCALAR, isInt ? FlameParamDataType.INT : FlameParamDataType.FLOAT,
+        floatScalar, intScalar, null);
+  }
+
+  private static void writeCurve(Writer writer, FlameParamCurve curve) {
+    writer.writeInt(curve.getViewXMin());
+    writer.writeInt(curve.getViewXMax());
+    writer.writeDouble(curve.getViewYMin());
+    writer.writeDouble(curve.getViewYMax());
+    writer.writeByte(curve.getInterpolation().ordinal());
+    writer.writeInt(curve.getSelectedIdx());
+    writer.writeBoolean(curve.isLocked());
+    int[] x = curve.getX() != null ? curve.getX() : new int[0];
+    double[] y = curve.getY() != null ? curve.getY() : new double[0];
+    int count = Math.min(x.length, y.length);
+    writer.writeSize(count);
+    // the frame numbers are ascending, so store the deltas
+    int prevX = 0;
+    for(int i = 0; i < count; i++) {
+      writer.writeInt(x[i] - prevX);
+      prevX = x[i];
+    }
+    for(int i = 0; i < count; i++) {
+      writer.writeDouble(y[i]);
+    }
+  }
+
+  private static FlameParamCurve readCurve(Reader reader) {
+    FlameParamCurve curve = new FlameParamCurve();
+    curve.setViewXMin(reader.readInt());
+    curve.setViewXMax(reader.readInt());
+    curve.setViewYMin(reader.readDouble());
+    curve.setViewYMax(reader.readDouble());
+    int interpolation = reader.readByte();
+    if(interpolation >= FlameParamCurveInterpolation.values().length) {
+      throw new IllegalArgumentException(String.format("Invalid interpolation %d", interpolation));
+    }
+    curve.setInterpolation(FlameParamCurveInterpolation.values()[interpolation]);
+    curve.setSelectedIdx(reader.readInt());
+    curve.setLocked(reader.readBoolean());
+    // varint and double per point
+    int count = reader.readSize(9);
+    int[] x = new int[count];
+    int prevX = 0;
+    for(int i = 0; i < count; i++) {
+      x[i] = prevX + reader.readInt();
+      prevX = x[i];
+    }
+    double[] y = new double[count];
+    for(int i = 0; i < count; i++) {
+      y[i] = reader.readDouble();
+    }
+    curve.setX(x);
+    curve.setY(y);
+    return curve;
+  }
+
+  private static class Writer {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+
+    void writeHeader(int recordType) {
+      out.writeBytes(MAGIC);
+      out.write(VERSION);
+      out.write(recordType);
+    }
+
+    void writeByte(int value) {
+      out.write(value);
+    }
+
+    void writeBytes(byte[] bytes) {
+      out.writeBytes(bytes);
+    }
+
+    void writeBoolean(boolean value) {
+      out.write(value ? 1 : 0);
+    }
+
+    void writeSize(int value) {
+      writeVarInt(value);
+    }
+
+    // zigzag-encoding, so that small negative numbers are small, too
+    void writeInt(int value) {
+      writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    private void writeVarInt(int value) {
+      while((value & ~0x7f) != 0) {
+        out.write((value & 0x7f) | 0x80);
+        value >>>= 7;
+      }
+      out.write(value);
+    }
+
+    void writeDouble(double value) {
+      long bits = Double.doubleToRawLongBits(value);
+      for(int i = 0; i < 8; i++) {
+        out.write((int) (bits >>> (i * 8)) & 0xff);
+      }
+    }
+
+    void writeString(String value) {
+      if(value == null) {
+        writeVarInt(0);
+      }
+      else {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length + 1);
+        out.writeBytes(bytes);
+      }
+    }
+
+    byte[] toByteArray() {
+      return out.toByteArray();
+    }
+  }
+
+  private static class Reader {
+    private final ByteBuffer buffer;
+    private long allocationBudget;
+
+    Reader(byte[] data) {
+      buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+      allocationBudget = MIN_MASK_ALLOCATION + (long) data.length * MAX_MASK_EXPANSION;
+    }
+
+    void readHeader(int expectedRecordType) {
+      for(byte b : MAGIC) {
+        if(buffer.get() != b) {
+          throw new IllegalArgumentException("Invalid flame data");
+        }
+      }
+      int version = readByte();
+      if(version != VERSION) {
+        throw new IllegalArgumentException(String.format("Unsupported flame data version %d", version));
+      }
+      int recordType = readByte();
+      if(recordType != expectedRecordType) {
+        throw new IllegalArgumentException(String.format("Unexpected record type %d", recordType));
+      }
+    }
+
+    int readByte() {
+      return buffer.get() & 0xff;
+    }
+
+    byte[] readBytes(int count) {
+      byte[] res = new byte[count];
+      buffer.get(res);
+      return res;
+    }
+
+    boolean readBoolean() {
+      return buffer.get() != 0;
+    }
+
+    // a size of elements which take at least the given number of bytes each, so larger sizes must be corrupt
+    int readSize(int minBytesPerElement) {
+      int value = readVarInt();
+      if(value < 0 || value > buffer.remaining() / minBytesPerElement) {
+        throw new IllegalArgumentException(String.format("Invalid size %d", value));
+      }
+      return value;
+    }
+
+    // a size of elements which take only one bit of a mask each (e.g. the xaos weights), the decoded elements are
+    // much larger than their encoding, so they are charged against the allocation budget, too
+    int readMaskSize() {
+      int value = readVarInt();
+      if(value < 0 || value > buffer.remaining() * 8L || value > allocationBudget) {
+        throw new IllegalArgumentException(String.format("Invalid size %d", value));
+      }
+      allocationBudget -= value;
+      return value;
+    }
+
+    int readInt() {
+      int value = readVarInt();
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    private int readVarInt() {
+      int value = 0;
+      for(int shift = 0; shift < 35; shift += 7) {
+        int b = buffer.get();
+        value |= (b & 0x7f) << shift;
+        if((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IllegalArgumentException("Malformed varint");
+    }
+
+    double readDouble() {
+      return buffer.getDouble();
+    }
+
+    String readString() {
+      int length = readVarInt();
+      if(length == 0) {
+        return null;
+      }
+      if(length - 1 > buffer.remaining() || length < 0) {
+        throw new IllegalArgumentException(String.format("Invalid string length %d", length - 1));
+      }
+      byte[] bytes = readBytes(length - 1);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+  }
+}
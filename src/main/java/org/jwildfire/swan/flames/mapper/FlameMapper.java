@@ -30,7 +30,8 @@ public class FlameMapper {
   }
 
   public Flame mapFromJwildfire(org.jwildfire.create.tina.base.Flame source) {
-    org.jwildfire.create.tina.base.Flame transformedSource = transformer.transformFlame(source);
+    FlameTransformation transformation = transformer.transformFlame(source);
+    org.jwildfire.create.tina.base.Flame transformedSource = transformation.getFlame();
     Flame res = new Flame();
     res.setBrightness(transformedSource.getBrightness());
     res.setWhiteLevel(transformedSource.getWhiteLevel());
@@ -83,7 +84,7 @@ public class FlameMapper {
     res.setLastFilename(transformedSource.getLastFilename());
     res.getLayers().clear();
     transformedSource.getLayers().stream()
-        .forEach(layer -> res.getLayers().add(layerMapper.mapFromJwildfire(transformedSource, layer)));
+        .forEach(layer -> res.getLayers().add(layerMapper.mapFromJwildfire(transformation, layer)));
     return res;
   }
 
@@ -0,0 +1,297 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jwildfire.swan.flames.mapper;
+
+import org.jwildfire.create.tina.variation.VariationFunc;
+import org.jwildfire.create.tina.variation.VariationFuncList;
+import org.jwildfire.create.tina.variation.VariationFuncType;
+import org.jwildfire.swan.flames.model.flame.Flame;
+import org.jwildfire.swan.flames.model.flame.FlameOptimizationReport;
+import org.jwildfire.swan.flames.model.flame.FlameParam;
+import org.jwildfire.swan.flames.model.flame.FlameParamType;
+import org.jwildfire.swan.flames.model.flame.Layer;
+import org.jwildfire.swan.flames.model.flame.Variation;
+import org.jwildfire.swan.flames.model.flame.VariationParam;
+import org.jwildfire.swan.flames.model.flame.XForm;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Simplifies a mapped flame without changing its look. Each remaining variation is turned into GLSL by the
+// shader generator of the client, so every removed variation makes the shader smaller and faster.
+@Service
+public class FlameOptimizer {
+  private static final double TOLERANCE = 1.0e-9;
+  // variations which just add amount * (affine-transformed point) and may be merged by adding up their amounts
+  private static final Set<String> LINEAR_VARIATIONS = Set.of("linear", "linear3D", "zscale", "ztranslate");
+  private static final Set<VariationFuncType> NON_ADDITIVE_TYPES = EnumSet.of(VariationFuncType.VARTYPE_CROP,
+      VariationFuncType.VARTYPE_DC, VariationFuncType.VARTYPE_PREPOST, VariationFuncType.VARTYPE_SIMULATION);
+
+  private final Map<String, Boolean> additiveVariations = new ConcurrentHashMap<>();
+
+  // optimizes the flame in place, the caller is responsible for passing a copy if the original must be kept
+  public FlameOptimizationReport optimize(Flame flame) {
+    FlameOptimizationReport report = new FlameOptimizationReport();
+    simplifyCurves(flame, report);
+    for(int layerIdx = 0; layerIdx < flame.getLayers().size(); layerIdx++) {
+      Layer layer = flame.getLayers().get(layerIdx);
+      removeZeroWeightXForms(layer, layerIdx, report);
+      for(int i = 0; i < layer.getXforms().size(); i++) {
+        optimizeXForm(layer.getXforms().get(i), String.format("layer %d, xform %d", layerIdx + 1, i + 1), report);
+      }
+      int finalIdx = 0;
+      for(Iterator<XForm> it = layer.getFinalXforms().iterator(); it.hasNext(); ) {
+        XForm xForm = it.next();
+        String location = String.format("layer %d, final xform %d", layerIdx + 1, ++finalIdx);
+        optimizeXForm(xForm, location, report);
+        if(isIdentity(xForm)) {
+          it.remove();
+          report.setRemovedFinalXForms(report.getRemovedFinalXForms() + 1);
+          report.getMessages().add(String.format("%s: removed final xform without effect", location));
+        }
+      }
+    }
+    return report;
+  }
+
+  // motion curves are simplified here and not when mapping, because the optimized flame is only rendered
+  private void simplifyCurves(Flame flame, FlameOptimizationReport report) {
+    int before = report.getSimplifiedCurves();
+    flame.setCamZoom(simplifyCurve(flame.getCamZoom(), report));
+    flame.setCentreX(simplifyCurve(flame.getCentreX(), report));
+    flame.setCentreY(simplifyCurve(flame.getCentreY(), report));
+    flame.setCamYaw(simplifyCurve(flame.getCamYaw(), report));
+    flame.setCamPitch(simplifyCurve(flame.getCamPitch(), report));
+    flame.setCamRoll(simplifyCurve(flame.getCamRoll(), report));
+    flame.setCamBank(simplifyCurve(flame.getCamBank(), report));
+    for(Layer layer : flame.getLayers()) {
+      for(XForm xForm : layer.getXforms()) {
+        simplifyCurves(xForm, report);
+      }
+      for(XForm xForm : layer.getFinalXforms()) {
+        simplifyCurves(xForm, report);
+      }
+    }
+    if(report.getSimplifiedCurves() > before) {
+      report.getMessages().add(String.format("simplified %d motion curves", report.getSimplifiedCurves() - before));
+    }
+  }
+
+  private void simplifyCurves(XForm xForm, FlameOptimizationReport report) {
+    for(int i = 0; i < XFormAffineParams.COUNT; i++) {
+      XFormAffineParams.set(xForm, i, simplifyCurve(XFormAffineParams.get(xForm, i), report));
+    }
+    for(Variation variation : xForm.getVariations()) {
+      variation.setAmount(simplifyCurve(variation.getAmount(), report));
+      for(VariationParam param : variation.getParams()) {
+        param.setValue(simplifyCurve(param.getValue(), report));
+      }
+    }
+  }
+
+  private FlameParam simplifyCurve(FlameParam param, FlameOptimizationReport report) {
+    FlameParam res = MotionCurveSimplifier.simplify(param);
+    if(res != param) {
+      report.setSimplifiedCurves(report.getSimplifiedCurves() + 1);
+    }
+    return res;
+  }
+
+  private void removeZeroWeightXForms(Layer layer, int layerIdx, FlameOptimizationReport report) {
+    List<XForm> xForms = layer.getXforms();
+    if(xForms.stream().allMatch(xForm -> xForm.getWeight() <= 0.0)) {
+      return;
+    }
+    int originalIdx = 0;
+    for(int i = 0; i < xForms.size(); originalIdx++) {
+      if(xForms.get(i).getWeight() == 0.0) {
+        xForms.remove(i);
+        // keep the xaos-table consistent, the weights are indexed by the target xform
+        for(XForm other : xForms) {
+          double[] weights = other.getModifiedWeights();
+          if(i < weights.length) {
+            double[] newWeights = new double[weights.length - 1];
+            System.arraycopy(weights, 0, newWeights, 0, i);
+            System.arraycopy(weights, i + 1, newWeights, i, weights.length - i - 1);
+            other.setModifiedWeights(newWeights);
+          }
+        }
+        report.setRemovedXForms(report.getRemovedXForms() + 1);
+        report.getMessages().add(String.format("layer %d, xform %d: removed zero-weight xform", layerIdx + 1, originalIdx + 1));
+      }
+      else {
+        i++;
+      }
+    }
+  }
+
+  private void optimizeXForm(XForm xForm, String location, FlameOptimizationReport report) {
+    mergeLinearVariations(xForm, location, report);
+    removeZeroAmountVariations(xForm, location, report);
+    if(foldPostAffine(xForm)) {
+      report.setFoldedPostAffines(report.getFoldedPostAffines() + 1);
+      report.getMessages().add(String.format("%s: folded post affine into identity", location));
+    }
+  }
+
+  private void mergeLinearVariations(XForm xForm, String location, FlameOptimizationReport report) {
+    List<Variation> variations = xForm.getVariations();
+    for(int i = 0; i < variations.size(); i++) {
+      Variation target = variations.get(i);
+      if(!isMergeable(target)) {
+        continue;
+      }
+      for(int j = i + 1; j < variations.size(); ) {
+        Variation other = variations.get(j);
+        if(target.getName().equals(other.getName()) && isMergeable(other)) {
+          target.setAmount(FlameParam.floatScalar(target.getAmount().getFloatScalar() + other.getAmount().getFloatScalar()));
+          variations.remove(j);
+          report.setMergedVariations(report.getMergedVariations() + 1);
+          report.getMessages().add(String.format("%s: merged variation %s", location, other.getName()));
+        }
+        else {
+          j++;
+        }
+      }
+    }
+  }
+
+  private boolean isMergeable(Variation variation) {
+    return LINEAR_VARIATIONS.contains(variation.getName()) && isScalar(variation.getAmount())
+        && variation.getParams().isEmpty() && variation.getResources().isEmpty();
+  }
+
+  private void removeZeroAmountVariations(XForm xForm, String location, FlameOptimizationReport report) {
+    for(Iterator<Variation> it = xForm.getVariations().iterator(); it.hasNext(); ) {
+      Variation variation = it.next();
+      if(isScalar(variation.getAmount(), 0.0) && isAdditive(variation.getName())) {
+        it.remove();
+        report.setRemovedVariations(report.getRemovedVariations() + 1);
+        report.getMessages().add(String.format("%s: removed zero-amount variation %s", location, variation.getName()));
+      }
+    }
+  }
+
+  private boolean isAdditive(String name) {
+    return additiveVariations.computeIfAbsent(name, FlameOptimizer::isAdditiveVariation);
+  }
+
+  // decided by the metadata of the variation in jwildfire-lib: pre- and post-variations (priority != 0) may
+  // overwrite the point, and cropping, direct-color- or simulation-variations act independent of their amount,
+  // so only the remaining "regular" variations, which just add amount * f(point), are safe to remove at amount 0
+  private static boolean isAdditiveVariation(String name) {
+    if(name.startsWith("dc_") || name.endsWith("_dc")) {
+      return false;
+    }
+    try {
+      VariationFunc func = VariationFuncList.getVariationFuncInstance(name, false);
+      if(func == null || func.getPriority() != 0) {
+        return false;
+      }
+      VariationFuncType[] types = func.getVariationTypes();
+      return types != null && Arrays.stream(types).noneMatch(NON_ADDITIVE_TYPES::contains);
+    }
+    catch (Exception ex) {
+      // unknown to jwildfire-lib, keep it
+      return false;
+    }
+  }
+
+  // snaps nearly-identity post affines (e.g. caused by rounding in the flame file) to the exact identity,
+  // which is skipped by the shader generator
+  private boolean foldPostAffine(XForm xForm) {
+    boolean changed = false;
+    changed |= snap(xForm::getXyP00, xForm::setXyP00, 1.0);
+    changed |= snap(xForm::getXyP01, xForm::setXyP01, 0.0);
+    changed |= snap(xForm::getXyP10, xForm::setXyP10, 0.0);
+    changed |= snap(xForm::getXyP11, xForm::setXyP11, 1.0);
+    changed |= snap(xForm::getXyPRotate, xForm::setXyPRotate, 0.0);
+    changed |= snap(xForm::getXyPScale, xForm::setXyPScale, 1.0);
+    changed |= snap(xForm::getYzP00, xForm::setYzP00, 1.0);
+    changed |= snap(xForm::getYzP01, xForm::setYzP01, 0.0);
+    changed |= snap(xForm::getYzP10, xForm::setYzP10, 0.0);
+    changed |= snap(xForm::getYzP11, xForm::setYzP11, 1.0);
+    changed |= snap(xForm::getYzPRotate, xForm::setYzPRotate, 0.0);
+    changed |= snap(xForm::getYzPScale, xForm::setYzPScale, 1.0);
+    changed |= snap(xForm::getZxP00, xForm::setZxP00, 1.0);
+    changed |= snap(xForm::getZxP01, xForm::setZxP01, 0.0);
+    changed |= snap(xForm::getZxP10, xForm::setZxP10, 0.0);
+    changed |= snap(xForm::getZxP11, xForm::setZxP11, 1.0);
+    changed |= snap(xForm::getZxPRotate, xForm::setZxPRotate, 0.0);
+    changed |= snap(xForm::getZxPScale, xForm::setZxPScale, 1.0);
+    return changed && hasIdentityPostAffine(xForm);
+  }
+
+  private boolean snap(Supplier<FlameParam> getter, Consumer<FlameParam> setter, double value) {
+    FlameParam param = getter.get();
+    if(param != null && isScalar(param) && param.getFloatScalar() != value && Math.abs(param.getFloatScalar() - value) < TOLERANCE) {
+      setter.accept(FlameParam.floatScalar(value));
+      return true;
+    }
+    return false;
+  }
+
+  private boolean isIdentity(XForm xForm) {
+    if(xForm.getVariations().size() != 1) {
+      return false;
+    }
+    Variation variation = xForm.getVariations().get(0);
+    return "linear3D".equals(variation.getName()) && isScalar(variation.getAmount(), 1.0)
+        && variation.getParams().isEmpty() && variation.getResources().isEmpty()
+        && hasIdentityAffine(xForm) && hasIdentityPostAffine(xForm);
+  }
+
+  private boolean hasIdentityAffine(XForm xForm) {
+    return isScalar(xForm.getXyC00(), 1.0) && isScalar(xForm.getXyC01(), 0.0) && isScalar(xForm.getXyC10(), 0.0)
+        && isScalar(xForm.getXyC11(), 1.0) && isScalar(xForm.getXyC20(), 0.0) && isScalar(xForm.getXyC21(), 0.0)
+        && isScalar(xForm.getXyRotate(), 0.0) && isScalar(xForm.getXyScale(), 1.0)
+        && isScalar(xForm.getYzC00(), 1.0) && isScalar(xForm.getYzC01(), 0.0) && isScalar(xForm.getYzC10(), 0.0)
+        && isScalar(xForm.getYzC11(), 1.0) && isScalar(xForm.getYzC20(), 0.0) && isScalar(xForm.getYzC21(), 0.0)
+        && isScalar(xForm.getYzRotate(), 0.0) && isScalar(xForm.getYzScale(), 1.0)
+        && isScalar(xForm.getZxC00(), 1.0) && isScalar(xForm.getZxC01(), 0.0) && isScalar(xForm.getZxC10(), 0.0)
+        && isScalar(xForm.getZxC11(), 1.0) && isScalar(xForm.getZxC20(), 0.0) && isScalar(xForm.getZxC21(), 0.0)
+        && isScalar(xForm.getZxRotate(), 0.0) && isScalar(xForm.getZxScale(), 1.0);
+  }
+
+  private boolean hasIdentityPostAffine(XForm xForm) {
+    return isScalar(xForm.getXyP00(), 1.0) && isScalar(xForm.getXyP01(), 0.0) && isScalar(xForm.getXyP10(), 0.0)
+        && isScalar(xForm.getXyP11(), 1.0) && isScalar(xForm.getXyP20(), 0.0) && isScalar(xForm.getXyP21(), 0.0)
+        && isScalar(xForm.getXyPRotate(), 0.0) && isScalar(xForm.getXyPScale(), 1.0)
+        && isScalar(xForm.getYzP00(), 1.0) && isScalar(xForm.getYzP01(), 0.0) && isScalar(xForm.getYzP10(), 0.0)
+        && isScalar(xForm.getYzP11(), 1.0) && isScalar(xForm.getYzP20(), 0.0) && isScalar(xForm.getYzP21(), 0.0)
+        && isScalar(xForm.getYzPRotate(), 0.0) && isScalar(xForm.getYzPScale(), 1.0)
+        && isScalar(xForm.getZxP00(), 1.0) && isScalar(xForm.getZxP01(), 0.0) && isScalar(xForm.getZxP10(), 0.0)
+        && isScalar(xForm.getZxP11(), 1.0) && isScalar(xForm.getZxP20(), 0.0) && isScalar(xForm.getZxP21(), 0.0)
+        && isScalar(xForm.getZxPRotate(), 0.0) && isScalar(xForm.getZxPScale(), 1.0);
+  }
+
+  private boolean isScalar(FlameParam param) {
+    return param.getParamType() == FlameParamType.SCALAR && param.getFloatScalar() != null;
+  }
+
+  private boolean isScalar(FlameParam param, double value) {
+    return param != null && isScalar(param) && param.getFloatScalar() == value;
+  }
+}
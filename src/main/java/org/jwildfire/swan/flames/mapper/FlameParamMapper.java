@@ -29,7 +29,7 @@ public class FlameParamMapper {
 
   public static FlameParam mapFloatParamFromJwildfire(double value, MotionCurve motionCurve) {
     if(motionCurve==null || !motionCurve.isEnabled()) {
-      return new FlameParam(FlameParamType.SCALAR, FlameParamDataType.FLOAT, value, null, null);
+      return FlameParam.floatScalar(value);
     }
     else {
       return new FlameParam(FlameParamType.CURVE, FlameParamDataType.FLOAT, value, null, mapMotionCurveFromJWildfire(motionCurve));
@@ -38,7 +38,7 @@ public class FlameParamMapper {
 
   public static FlameParam mapIntParamFromJwildfire(int value, MotionCurve motionCurve) {
     if(motionCurve==null || !motionCurve.isEnabled()) {
-      return new FlameParam(FlameParamType.SCALAR, FlameParamDataType.INT, null, value, null);
+      return FlameParam.intScalar(value);
     }
     else {
       return new FlameParam(FlameParamType.CURVE, FlameParamDataType.INT, null, value, mapMotionCurveFromJWildfire(motionCurve));
@@ -46,6 +46,8 @@ public class FlameParamMapper {
   }
 
   private static FlameParamCurve mapMotionCurveFromJWildfire(MotionCurve motionCurve) {
+    // curves are mapped unchanged, so that they survive the way back to JWildfire (e.g. when saving the flame),
+    // the FlameOptimizer simplifies them in copies which are only rendered
     return new FlameParamCurve(motionCurve.getViewXMin(),
             motionCurve.getViewXMax(), motionCurve.getViewYMin(), motionCurve.getViewYMax(),
             mapInterpolationFromJWildfire(motionCurve.getInterpolation()),
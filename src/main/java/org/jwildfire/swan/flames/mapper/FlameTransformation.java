@@ -0,0 +1,86 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+
+package org.jwildfire.swan.flames.mapper;
+
+import org.jwildfire.create.tina.base.Flame;
+import org.jwildfire.create.tina.base.Layer;
+import org.jwildfire.create.tina.base.XForm;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of the FlameTransformer: the unmodified source flame together with the changes to apply.
+ * Only the xforms which are actually changed are copied (copy-on-write), all other parts of the
+ * flame are shared with the source.
+ */
+public class FlameTransformation {
+  private final Flame flame;
+  private final Map<XForm, XForm> replacedXForms = new IdentityHashMap<>();
+  private final List<XForm> additionalFinalXForms = new ArrayList<>();
+
+  public FlameTransformation(Flame flame) {
+    this.flame = flame;
+  }
+
+  public Flame getFlame() {
+    return flame;
+  }
+
+  public boolean isIdentity() {
+    return replacedXForms.isEmpty() && additionalFinalXForms.isEmpty();
+  }
+
+  public List<XForm> getXForms(Layer layer) {
+    return applyReplacements(layer.getXForms(), 0);
+  }
+
+  public List<XForm> getFinalXForms(Layer layer) {
+    List<XForm> res = applyReplacements(layer.getFinalXForms(), additionalFinalXForms.size());
+    res.addAll(applyReplacements(additionalFinalXForms, 0));
+    return res;
+  }
+
+  // returns the xform to use instead of the given one, which must not be modified itself
+  public XForm getXForm(XForm xForm) {
+    return replacedXForms.getOrDefault(xForm, xForm);
+  }
+
+  void replaceXForm(XForm original, XForm replacement) {
+    replacedXForms.put(original, replacement);
+  }
+
+  void addFinalXForm(XForm xForm) {
+    additionalFinalXForms.add(xForm);
+  }
+
+  // final xforms which are added to every layer
+  List<XForm> getAdditionalFinalXForms() {
+    return additionalFinalXForms;
+  }
+
+  private List<XForm> applyReplacements(List<XForm> xForms, int additionalCapacity) {
+    List<XForm> res = new ArrayList<>(xForms.size() + additionalCapacity);
+    for (XForm xForm : xForms) {
+      res.add(getXForm(xForm));
+    }
+    return res;
+  }
+}
@@ -18,17 +18,11 @@
 
 package org.jwildfire.swan.flames.mapper;
 
-import org.jwildfire.base.Prefs;
 import org.jwildfire.base.mathlib.MathLib;
 import org.jwildfire.create.tina.base.Flame;
 import org.jwildfire.create.tina.base.Layer;
 import org.jwildfire.create.tina.base.PostSymmetryType;
 import org.jwildfire.create.tina.base.XForm;
-import org.jwildfire.create.tina.base.XYZPoint;
-import org.jwildfire.create.tina.random.AbstractRandomGenerator;
-import org.jwildfire.create.tina.random.MarsagliaRandomGenerator;
-import org.jwildfire.create.tina.render.FlameRenderer;
-import org.jwildfire.create.tina.variation.FlameTransformationContext;
 import org.jwildfire.create.tina.variation.PostAxisSymmetryWFFunc;
 import org.jwildfire.create.tina.variation.PostPointSymmetryWFFunc;
 import org.jwildfire.create.tina.variation.Variation;
@@ -36,16 +30,17 @@ import org.jwildfire.create.tina.variation.VariationFunc;
 import org.jwildfire.create.tina.variation.VariationFuncList;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
-import java.util.Map;
-
 @Service
 public class FlameTransformer {
-  private static FlameTransformationContext ctx;
+  private final PreserveZClassifier preserveZClassifier;
+
+  public FlameTransformer(PreserveZClassifier preserveZClassifier) {
+    this.preserveZClassifier = preserveZClassifier;
+  }
 
-  // apply some Swan-specific changes
-  public Flame transformFlame(Flame pFlame) {
-    Flame flame = pFlame.makeCopy();
+  // apply some Swan-specific changes, the source flame itself is never modified
+  public FlameTransformation transformFlame(Flame flame) {
+    FlameTransformation res = new FlameTransformation(flame);
     // apply post symmetry by using a final transform
     switch(flame.getPostSymmetryType()) {
       case POINT:
@@ -54,7 +49,7 @@ public class FlameTransformer {
         func.setParameter(PostPointSymmetryWFFunc.PARAM_CENTRE_X, flame.getPostSymmetryCentreX());
         func.setParameter(PostPointSymmetryWFFunc.PARAM_CENTRE_Y, flame.getPostSymmetryCentreY());
         func.setParameter(PostPointSymmetryWFFunc.PARAM_ORDER, flame.getPostSymmetryOrder());
-        addPostSymmetryVariation(flame, func, 1.0);
+        res.addFinalXForm(createPostSymmetryXForm(func, 1.0));
       }
       break;
       case X_AXIS:
@@ -65,27 +60,28 @@ public class FlameTransformer {
         func.setParameter(PostAxisSymmetryWFFunc.PARAM_CENTRE_X, flame.getPostSymmetryCentreX());
         func.setParameter(PostAxisSymmetryWFFunc.PARAM_CENTRE_Y, flame.getPostSymmetryCentreY());
         func.setParameter(PostAxisSymmetryWFFunc.PARAM_ROTATION, flame.getPostSymmetryRotation());
-        addPostSymmetryVariation(flame, func, flame.getPostSymmetryDistance());
+        res.addFinalXForm(createPostSymmetryXForm(func, flame.getPostSymmetryDistance()));
       }
       break;
     }
-    flame.setPostSymmetryType(PostSymmetryType.NONE);
     // emulate the preserveZ-feature by adding zscale-transforms
     if(flame.isPreserveZ()) {
       for(Layer layer: flame.getLayers()) {
         for(XForm xForm: layer.getXForms()) {
-          processXFormPreserveZ(layer, xForm);
+          processXFormPreserveZ(res, xForm);
         }
         for(XForm xForm: layer.getFinalXForms()) {
-          processXFormPreserveZ(layer, xForm);
+          processXFormPreserveZ(res, xForm);
         }
       }
-      flame.setPreserveZ(false);
+      for(XForm xForm: res.getAdditionalFinalXForms()) {
+        processXFormPreserveZ(res, xForm);
+      }
     }
-    return flame;
+    return res;
   }
 
-  private void processXFormPreserveZ(Layer layer, XForm xForm) {
+  private void processXFormPreserveZ(FlameTransformation transformation, XForm xForm) {
     double preserveAmount = 0.0;
     final String zScaleVarName = "zscale";
     int zScaleIdx = -1;
@@ -94,76 +90,28 @@ public class FlameTransformer {
       if(zScaleIdx<0 && zScaleVarName.equals(variation.getFunc().getName())) {
         zScaleIdx = i;
       }
-      if(preservesZCoordinate(layer, xForm, variation)) {
+      if(preserveZClassifier.preservesZCoordinate(variation.getFunc().getName())) {
         preserveAmount += variation.getAmount();
       }
     }
     if(MathLib.fabs(preserveAmount)>MathLib.EPSILON) {
+      XForm changedXForm = xForm.makeCopy();
       if(zScaleIdx>=0) {
-        Variation zScale = xForm.getVariation(zScaleIdx);
+        Variation zScale = changedXForm.getVariation(zScaleIdx);
         zScale.setAmount(zScale.getAmount() + preserveAmount);
       }
       else {
-        xForm.addVariation(preserveAmount, VariationFuncList.getVariationFuncInstance(zScaleVarName, true));
+        changedXForm.addVariation(preserveAmount, VariationFuncList.getVariationFuncInstance(zScaleVarName, true));
       }
+      transformation.replaceXForm(xForm, changedXForm);
     }
   }
 
-  private static Map<String, Boolean> preserveZCache = new HashMap<>();
-
-  private boolean preservesZCoordinate(Layer layer, XForm xForm, Variation variation) {
-    Boolean preserveZ = preserveZCache.get(variation.getFunc().getName());
-    if(preserveZ==null) {
-      try {
-        final double x = 0.5;
-        final double y = 0.25;
-        final double z = 23.45;
-        {
-          FlameTransformationContext ctx = createFlameTransformationContext();
-          variation.getFunc().initOnce(ctx, layer, xForm, variation.getAmount());
-          variation.getFunc().init(ctx, layer, xForm, variation.getAmount());
-
-          XYZPoint affine1TP = new XYZPoint();
-          affine1TP.x = x;
-          affine1TP.y = y;
-          affine1TP.z = z;
-          XYZPoint affine2TP = affine1TP.makeCopy();
-
-          XYZPoint var1TP = new XYZPoint();
-          XYZPoint var2TP = new XYZPoint();
-
-          ctx.setPreserveZCoordinate(true);
-          variation.transform(ctx, xForm, affine1TP, var1TP);
-          ctx.setPreserveZCoordinate(false);
-          variation.transform(ctx, xForm, affine2TP, var2TP);
-          preserveZ = MathLib.fabs(var1TP.z - z * variation.getAmount()) < MathLib.EPSILON && MathLib.fabs(var2TP.z) < MathLib.EPSILON;
-          // System.err.println("VAR: " + variation.getFunc().getName()+" " + var1TP.z +" " + var2TP.z + " " + preserveZ);
-        }
-      }
-      catch(Exception ex) {
-        // some more comlicated variation which failes outside real rendering,
-        // let it ignore for now
-        preserveZ = Boolean.FALSE;
-        ex.printStackTrace();
-      }
-      preserveZCache.put(variation.getFunc().getName(), preserveZ);
-    }
-    return preserveZ;
-  }
-
-  private void addPostSymmetryVariation(Flame flame, VariationFunc func, double amount) {
+  private XForm createPostSymmetryXForm(VariationFunc func, double amount) {
     XForm xForm = new XForm();
     xForm.addVariation(1.0, VariationFuncList.getVariationFuncInstance("linear3D", true));
     xForm.addVariation(amount, func);
-    for(Layer layer: flame.getLayers()) {
-      layer.getFinalXForms().add(xForm);
-    }
-  }
-
-  private FlameTransformationContext createFlameTransformationContext() {
-    FlameRenderer renderer = new FlameRenderer(new Flame(), Prefs.getPrefs(), false, true);
-    AbstractRandomGenerator randGen = new MarsagliaRandomGenerator();
-    return new FlameTransformationContext(renderer, randGen,1,1);
+    return xForm;
   }
 }
 
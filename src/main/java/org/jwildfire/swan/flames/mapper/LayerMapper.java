@@ -17,7 +17,7 @@
 package org.jwildfire.swan.flames.mapper;
 
 import org.jwildfire.create.tina.palette.RGBColor;
-import org.jwildfire.swan.flames.model.flame.Color;
+import org.jwildfire.create.tina.palette.RGBPalette;
 import org.jwildfire.swan.flames.model.flame.Layer;
 import org.springframework.stereotype.Service;
 
@@ -29,17 +29,15 @@ public class LayerMapper {
     this.xFormMapper = xFormMapper;
   }
 
-  public Layer mapFromJwildfire(org.jwildfire.create.tina.base.Flame sourceFlame, org.jwildfire.create.tina.base.Layer source) {
+  public Layer mapFromJwildfire(FlameTransformation transformation, org.jwildfire.create.tina.base.Layer source) {
+    org.jwildfire.create.tina.base.Flame sourceFlame = transformation.getFlame();
     Layer res = new Layer();
     res.setWeight(source.getWeight());
     res.setDensity(source.getDensity());
-    for(int i=0;i<source.getPalette().getSize();i++) {
-      RGBColor color = source.getPalette().getColor(i);
-      res.getGradient().add(new Color(color.getRed(), color.getGreen(), color.getBlue()));
-    }
-    source.getXForms().stream()
+    res.setGradient(mapGradientFromJwildfire(source.getPalette()));
+    transformation.getXForms(source).stream()
         .forEach(xForm -> res.getXforms().add(xFormMapper.mapFromJwildfire(sourceFlame, source, xForm)));
-    source.getFinalXForms().stream()
+    transformation.getFinalXForms(source).stream()
         .forEach(xForm -> res.getFinalXforms().add(xFormMapper.mapFromJwildfire(sourceFlame, source, xForm)));
     return res;
   }
@@ -48,16 +46,37 @@ public class LayerMapper {
     org.jwildfire.create.tina.base.Layer res = new org.jwildfire.create.tina.base.Layer();
     res.setWeight(source.getWeight());
     res.setDensity(source.getDensity());
-
-    for(int i=0;i<source.getGradient().size();i++) {
-      Color color = source.getGradient().get(i);
-      res.getPalette().setColor(i, color.getR(), color.getG(), color.getB());
-    }
-
+    res.setPalette(mapGradientToJwildfire(source.getGradient()));
     source.getXforms().stream()
             .forEach(xForm -> res.getXForms().add(xFormMapper.mapToJwildfire(source, xForm)));
     source.getFinalXforms().stream()
             .forEach(xForm -> res.getFinalXForms().add(xFormMapper.mapToJwildfire(source, xForm)));
     return res;
   }
+
+  public static int[] mapGradientFromJwildfire(RGBPalette source) {
+    int[] res = new int[source.getSize()];
+    for(int i=0;i<res.length;i++) {
+      RGBColor color = source.getColor(i);
+      res[i] = packColor(color.getRed(), color.getGreen(), color.getBlue());
+    }
+    return res;
+  }
+
+  public static RGBPalette mapGradientToJwildfire(int[] source) {
+    RGBPalette res = new RGBPalette();
+    for(int i=0;i<source.length;i++) {
+      int color = source[i];
+      res.setColor(i, (color >> 16) & 0xff, (color >> 8) & 0xff, color & 0xff);
+    }
+    return res;
+  }
+
+  private static int packColor(int r, int g, int b) {
+    return (clamp(r) << 16) | (clamp(g) << 8) | clamp(b);
+  }
+
+  private static int clamp(int value) {
+    return value < 0 ? 0 : Math.min(value, 255);
+  }
 }
@@ -0,0 +1,195 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jwildfire.swan.flames.mapper;
+
+import org.jwildfire.envelope.Envelope;
+import org.jwildfire.swan.flames.model.flame.FlameParam;
+import org.jwildfire.swan.flames.model.flame.FlameParamCurve;
+import org.jwildfire.swan.flames.model.flame.FlameParamCurveInterpolation;
+import org.jwildfire.swan.flames.model.flame.FlameParamDataType;
+import org.jwildfire.swan.flames.model.flame.FlameParamType;
+
+import java.util.Arrays;
+
+// Reduces the size of motion curves, which are evaluated per frame at the client. Simplified curves are only
+// meant for rendering, they must not be mapped back to JWildfire (e.g. to save a flame)
+final class MotionCurveSimplifier {
+  // max. difference of values which are considered to be equal
+  static final double FLAT_TOLERANCE = 1.0e-9;
+  // max. deviation of a thinned curve, relative to the value range of the curve
+  static final double THINNING_TOLERANCE = 1.0e-4;
+  // thinning of non-linear curves requires to evaluate the whole curve for every candidate point, skip large curves
+  private static final long MAX_SPLINE_EVALUATIONS = 20_000L;
+
+  private MotionCurveSimplifier() {
+  }
+
+  // returns a simplified copy of the param, or the param itself if it can not be simplified
+  static FlameParam simplify(FlameParam param) {
+    if(param == null || param.getParamType() != FlameParamType.CURVE || param.getCurve() == null) {
+      return param;
+    }
+    double[] y = param.getCurve().getY();
+    // a curve with constant values is folded into a scalar, which is cheaper to transfer and evaluate
+    if(isFlat(y)) {
+      return param.getDataType() == FlameParamDataType.INT ?
+          FlameParam.intScalar((int)Math.round(y[0])) : FlameParam.floatScalar(y[0]);
+    }
+    FlameParamCurve thinned = thin(param.getCurve());
+    if(thinned == param.getCurve()) {
+      return param;
+    }
+    return new FlameParam(param.getParamType(), param.getDataType(), param.getFloatScalar(), param.getIntScalar(), thinned);
+  }
+
+  static boolean isFlat(double[] y) {
+    if(y == null || y.length == 0) {
+      return false;
+    }
+    double tolerance = FLAT_TOLERANCE * Math.max(1.0, Math.abs(y[0]));
+    for(int i = 1; i < y.length; i++) {
+      if(Math.abs(y[i] - y[0]) > tolerance) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // removes points which do not change the shape of the curve (within a tolerance), the interpolation is kept
+  static FlameParamCurve thin(FlameParamCurve curve) {
+    int[] x = curve.getX();
+    double[] y = curve.getY();
+    if(x == null || y == null || x.length != y.length || x.length <= 2) {
+      return curve;
+    }
+    boolean[] keep = curve.getInterpolation() == FlameParamCurveInterpolation.LINEAR ?
+        thinLinear(x, y, getTolerance(y)) : thinInterpolated(x, y, curve.getInterpolation(), getTolerance(y));
+    if(keep == null) {
+      return curve;
+    }
+    int count = 0;
+    for(boolean k : keep) {
+      if(k) {
+        count++;
+      }
+    }
+    if(count == x.length) {
+      return curve;
+    }
+    int[] newX = new int[count];
+    double[] newY = new double[count];
+    for(int i = 0, j = 0; i < x.length; i++) {
+      if(keep[i]) {
+        newX[j] = x[i];
+        newY[j++] = y[i];
+      }
+    }
+    return new FlameParamCurve(curve.getViewXMin(), curve.getViewXMax(), curve.getViewYMin(),
+        curve.getViewYMax(), curve.getInterpolation(), Math.min(curve.getSelectedIdx(), count - 1), newX, newY,
+        curve.isLocked());
+  }
+
+  private static double getTolerance(double[] y) {
+    double min = Arrays.stream(y).min().orElse(0.0);
+    double max = Arrays.stream(y).max().orElse(0.0);
+    return Math.max(FLAT_TOLERANCE, THINNING_TOLERANCE * (max - min));
+  }
+
+  // greedily extends each segment as long as all skipped points are close enough to it
+  private static boolean[] thinLinear(int[] x, double[] y, double tolerance) {
+    boolean[] keep = new boolean[x.length];
+    keep[0] = true;
+    keep[x.length - 1] = true;
+    int prev = 0;
+    for(int i = 1; i < x.length - 1; i++) {
+      if(!isCoveredBySegment(x, y, prev, i + 1, tolerance)) {
+        keep[i] = true;
+        prev = i;
+      }
+    }
+    return keep;
+  }
+
+  private static boolean isCoveredBySegment(int[] x, double[] y, int from, int to, double tolerance) {
+    if(x[to] <= x[from]) {
+      return false;
+    }
+    double slope = (y[to] - y[from]) / (double)(x[to] - x[from]);
+    for(int i = from + 1; i < to; i++) {
+      if(Math.abs(y[from] + slope * (x[i] - x[from]) - y[i]) > tolerance) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // tries to drop each point and compares the resulting curve with the original one at every frame
+  private static boolean[] thinInterpolated(int[] x, double[] y, FlameParamCurveInterpolation interpolation, double tolerance) {
+    int frameCount = x[x.length - 1] - x[0] + 1;
+    if(frameCount <= 0 || (long)frameCount * x.length > MAX_SPLINE_EVALUATIONS) {
+      return null;
+    }
+    Envelope.Interpolation envelopeInterpolation = interpolation == FlameParamCurveInterpolation.BEZIER ?
+        Envelope.Interpolation.BEZIER : Envelope.Interpolation.SPLINE;
+    double[] reference = evaluate(x, y, envelopeInterpolation, x[0], frameCount);
+    boolean[] keep = new boolean[x.length];
+    Arrays.fill(keep, true);
+    for(int i = 1; i < x.length - 1; i++) {
+      keep[i] = false;
+      double[] candidate = evaluate(select(x, keep), select(y, keep), envelopeInterpolation, x[0], frameCount);
+      for(int frame = 0; frame < frameCount; frame++) {
+        if(Math.abs(candidate[frame] - reference[frame]) > tolerance) {
+          keep[i] = true;
+          break;
+        }
+      }
+    }
+    return keep;
+  }
+
+  private static double[] evaluate(int[] x, double[] y, Envelope.Interpolation interpolation, int firstFrame, int frameCount) {
+    Envelope envelope = new Envelope(x, y);
+    envelope.setInterpolation(interpolation);
+    double[] res = new double[frameCount];
+    for(int frame = 0; frame < frameCount; frame++) {
+      res[frame] = envelope.evaluate(firstFrame + frame);
+    }
+    return res;
+  }
+
+  private static int[] select(int[] values, boolean[] keep) {
+    int[] res = new int[values.length];
+    int count = 0;
+    for(int i = 0; i < values.length; i++) {
+      if(keep[i]) {
+        res[count++] = values[i];
+      }
+    }
+    return Arrays.copyOf(res, count);
+  }
+
+  private static double[] select(double[] values, boolean[] keep) {
+    double[] res = new double[values.length];
+    int count = 0;
+    for(int i = 0; i < values.length; i++) {
+      if(keep[i]) {
+        res[count++] = values[i];
+      }
+    }
+    return Arrays.copyOf(res, count);
+  }
+}
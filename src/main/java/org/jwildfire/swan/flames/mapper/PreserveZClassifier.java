@@ -0,0 +1,179 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+
+package org.jwildfire.swan.flames.mapper;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jwildfire.base.Prefs;
+import org.jwildfire.base.Tools;
+import org.jwildfire.base.mathlib.MathLib;
+import org.jwildfire.create.tina.base.Flame;
+import org.jwildfire.create.tina.base.Layer;
+import org.jwildfire.create.tina.base.XForm;
+import org.jwildfire.create.tina.base.XYZPoint;
+import org.jwildfire.create.tina.random.AbstractRandomGenerator;
+import org.jwildfire.create.tina.random.MarsagliaRandomGenerator;
+import org.jwildfire.create.tina.render.FlameRenderer;
+import org.jwildfire.create.tina.variation.FlameTransformationContext;
+import org.jwildfire.create.tina.variation.Variation;
+import org.jwildfire.create.tina.variation.VariationFuncList;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Determines which variations preserve the z-coordinate, i.e. which variations would contribute to z
+ * when the preserveZ-feature of JWildfire is turned on. The result only depends on the variation, so
+ * all variations are classified once (in parallel) after the application has started. The table may
+ * be persisted to a file (property swan.preserveZ.cacheFile) to speed up later starts. The file records the
+ * version of JWildfire it was created with and is ignored after an update, because variations may have changed.
+ */
+@Component
+@Slf4j
+public class PreserveZClassifier {
+  // not a valid variation name, so it does not clash with the entries of the table
+  private static final String VERSION_KEY = "@jwildfireVersion";
+
+  private final ConcurrentMap<String, Boolean> table = new ConcurrentHashMap<>();
+  // creating a FlameRenderer is expensive, so keep one context per thread
+  private final ThreadLocal<FlameTransformationContext> contexts = ThreadLocal.withInitial(PreserveZClassifier::createFlameTransformationContext);
+  private final Path cacheFile;
+
+  public PreserveZClassifier(@Value("${swan.preserveZ.cacheFile:}") String cacheFile) {
+    this.cacheFile = cacheFile != null && !cacheFile.isEmpty() ? Paths.get(cacheFile) : null;
+    loadCacheFile();
+  }
+
+  public boolean preservesZCoordinate(String variationName) {
+    Boolean res = table.get(variationName);
+    return res != null ? res : table.computeIfAbsent(variationName, this::classify);
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void classifyAllInBackground() {
+    CompletableFuture.runAsync(this::classifyAll);
+  }
+
+  public void classifyAll() {
+    int knownVariations = table.size();
+    long t0 = System.currentTimeMillis();
+    VariationFuncList.getNameList().parallelStream().forEach(this::preservesZCoordinate);
+    log.info("Classified {} variations in {} ms", table.size(), System.currentTimeMillis() - t0);
+    if (table.size() > knownVariations) {
+      saveCacheFile();
+    }
+  }
+
+  private boolean classify(String variationName) {
+    try {
+      final double x = 0.5;
+      final double y = 0.25;
+      final double z = 23.45;
+      final double amount = 1.0;
+      FlameTransformationContext ctx = contexts.get();
+      Layer layer = new Layer();
+      XForm xForm = new XForm();
+      Variation variation = xForm.addVariation(amount, VariationFuncList.getVariationFuncInstance(variationName, true));
+      variation.getFunc().initOnce(ctx, layer, xForm, amount);
+      variation.getFunc().init(ctx, layer, xForm, amount);
+
+      XYZPoint affine1TP = new XYZPoint();
+      affine1TP.x = x;
+      affine1TP.y = y;
+      affine1TP.z = z;
+      XYZPoint affine2TP = affine1TP.makeCopy();
+
+      XYZPoint var1TP = new XYZPoint();
+      XYZPoint var2TP = new XYZPoint();
+
+      ctx.setPreserveZCoordinate(true);
+      variation.transform(ctx, xForm, affine1TP, var1TP);
+      ctx.setPreserveZCoordinate(false);
+      variation.transform(ctx, xForm, affine2TP, var2TP);
+      return MathLib.fabs(var1TP.z - z * amount) < MathLib.EPSILON && MathLib.fabs(var2TP.z) < MathLib.EPSILON;
+    }
+    catch (Throwable ex) {
+      // some more complicated variation which fails outside real rendering,
+      // let it ignore for now
+      log.debug(String.format("Could not classify variation %s", variationName), ex);
+      return false;
+    }
+  }
+
+  private void loadCacheFile() {
+    if (cacheFile != null && Files.exists(cacheFile)) {
+      Properties props = new Properties();
+      try (InputStream in = Files.newInputStream(cacheFile)) {
+        props.load(in);
+        String version = (String) props.remove(VERSION_KEY);
+        if (!getJwildfireVersion().equals(version)) {
+          log.info("Ignoring {}, it was created with JWildfire version {}", cacheFile, version);
+          return;
+        }
+        props.forEach((name, value) -> table.put((String) name, Boolean.valueOf((String) value)));
+        log.info("Loaded classification of {} variations from {}", table.size(), cacheFile);
+      } catch (IOException ex) {
+        log.warn(String.format("Error reading %s", cacheFile), ex);
+      }
+    }
+  }
+
+  private void saveCacheFile() {
+    if (cacheFile != null) {
+      Properties props = new Properties();
+      table.forEach((name, value) -> props.setProperty(name, value.toString()));
+      props.setProperty(VERSION_KEY, getJwildfireVersion());
+      // written to a temp file first, so that a concurrent start or a crash never sees a truncated file
+      try {
+        Path dir = cacheFile.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmpFile = Files.createTempFile(dir, cacheFile.getFileName().toString(), ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmpFile)) {
+          props.store(out, "variations preserving the z-coordinate");
+        }
+        Files.move(tmpFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException ex) {
+        log.warn(String.format("Error writing %s", cacheFile), ex);
+      }
+    }
+  }
+
+  // the version of the jar if available, e.g. to tell snapshots apart, otherwise the version of the library
+  private static String getJwildfireVersion() {
+    String version = Variation.class.getPackage().getImplementationVersion();
+    return version != null ? version : Tools.APP_VERSION;
+  }
+
+  private static FlameTransformationContext createFlameTransformationContext() {
+    FlameRenderer renderer = new FlameRenderer(new Flame(), Prefs.getPrefs(), false, true);
+    AbstractRandomGenerator randGen = new MarsagliaRandomGenerator();
+    return new FlameTransformationContext(renderer, randGen, 1, 1);
+  }
+}
@@ -0,0 +1,76 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jwildfire.swan.flames.mapper;
+
+import org.jwildfire.swan.flames.model.flame.FlameParam;
+import org.jwildfire.swan.flames.model.flame.XForm;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+// Indexed access to the 48 affine params of an xform, in the order xy, yz, zx (pre-affine), followed by xy, yz, zx
+// (post-affine), each as c00, c01, c10, c11, c20, c21, rotate, scale
+public final class XFormAffineParams {
+  public static final int COUNT = 48;
+
+  private static final List<String> NAMES = List.of(
+      "xyC00", "xyC01", "xyC10", "xyC11", "xyC20", "xyC21", "xyRotate", "xyScale",
+      "yzC00", "yzC01", "yzC10", "yzC11", "yzC20", "yzC21", "yzRotate", "yzScale",
+      "zxC00", "zxC01", "zxC10", "zxC11", "zxC20", "zxC21", "zxRotate", "zxScale",
+      "xyP00", "xyP01", "xyP10", "xyP11", "xyP20", "xyP21", "xyPRotate", "xyPScale",
+      "yzP00", "yzP01", "yzP10", "yzP11", "yzP20", "yzP21", "yzPRotate", "yzPScale",
+      "zxP00", "zxP01", "zxP10", "zxP11", "zxP20", "zxP21", "zxPRotate", "zxPScale");
+
+  private static final List<Function<XForm, FlameParam>> GETTERS = List.of(
+      XForm::getXyC00, XForm::getXyC01, XForm::getXyC10, XForm::getXyC11, XForm::getXyC20, XForm::getXyC21, XForm::getXyRotate, XForm::getXyScale,
+      XForm::getYzC00, XForm::getYzC01, XForm::getYzC10, XForm::getYzC11, XForm::getYzC20, XForm::getYzC21, XForm::getYzRotate, XForm::getYzScale,
+      XForm::getZxC00, XForm::getZxC01, XForm::getZxC10, XForm::getZxC11, XForm::getZxC20, XForm::getZxC21, XForm::getZxRotate, XForm::getZxScale,
+      XForm::getXyP00, XForm::getXyP01, XForm::getXyP10, XForm::getXyP11, XForm::getXyP20, XForm::getXyP21, XForm::getXyPRotate, XForm::getXyPScale,
+      XForm::getYzP00, XForm::getYzP01, XForm::getYzP10, XForm::getYzP11, XForm::getYzP20, XForm::getYzP21, XForm::getYzPRotate, XForm::getYzPScale,
+      XForm::getZxP00, XForm::getZxP01, XForm::getZxP10, XForm::getZxP11, XForm::getZxP20, XForm::getZxP21, XForm::getZxPRotate, XForm::getZxPScale);
+
+  private static final List<BiConsumer<XForm, FlameParam>> SETTERS = List.of(
+      XForm::setXyC00, XForm::setXyC01, XForm::setXyC10, XForm::setXyC11, XForm::setXyC20, XForm::setXyC21, XForm::setXyRotate, XForm::setXyScale,
+      XForm::setYzC00, XForm::setYzC01, XForm::setYzC10, XForm::setYzC11, XForm::setYzC20, XForm::setYzC21, XForm::setYzRotate, XForm::setYzScale,
+      XForm::setZxC00, XForm::setZxC01, XForm::setZxC10, XForm::setZxC11, XForm::setZxC20, XForm::setZxC21, XForm::setZxRotate, XForm::setZxScale,
+      XForm::setXyP00, XForm::setXyP01, XForm::setXyP10, XForm::setXyP11, XForm::setXyP20, XForm::setXyP21, XForm::setXyPRotate, XForm::setXyPScale,
+      XForm::setYzP00, XForm::setYzP01, XForm::setYzP10, XForm::setYzP11, XForm::setYzP20, XForm::setYzP21, XForm::setYzPRotate, XForm::setYzPScale,
+      XForm::setZxP00, XForm::setZxP01, XForm::setZxP10, XForm::setZxP11, XForm::setZxP20, XForm::setZxP21, XForm::setZxPRotate, XForm::setZxPScale);
+
+  // default values of c00, c01, c10, c11, c20, c21, rotate, scale, repeated for all six affine transforms
+  private static final double[] DEFAULTS = {1.0, 0.0, 0.0, 1.0, 0.0, 0.0, 0.0, 1.0};
+
+  private XFormAffineParams() {
+  }
+
+  public static int indexOf(String name) {
+    return NAMES.indexOf(name);
+  }
+
+  public static FlameParam get(XForm xForm, int idx) {
+    return GETTERS.get(idx).apply(xForm);
+  }
+
+  public static void set(XForm xForm, int idx, FlameParam param) {
+    SETTERS.get(idx).accept(xForm, param);
+  }
+
+  public static double getDefault(int idx) {
+    return DEFAULTS[idx % DEFAULTS.length];
+  }
+}
@@ -30,19 +30,24 @@ import org.jwildfire.swan.flames.model.flame.VariationParam;
 import org.jwildfire.swan.flames.model.flame.VariationResource;
 import org.jwildfire.swan.flames.model.flame.VariationResourceType;
 import org.jwildfire.swan.flames.model.flame.XForm;
+import org.jwildfire.swan.flames.repository.VariationResourceRepository;
 import org.springframework.stereotype.Service;
 
+import java.util.Arrays;
+
 @Service
 public class XFormMapper {
+  private final VariationResourceRepository resourceRepository;
+
+  public XFormMapper(VariationResourceRepository resourceRepository) {
+    this.resourceRepository = resourceRepository;
+  }
 
   public XForm mapFromJwildfire(org.jwildfire.create.tina.base.Flame sourceFlame, org.jwildfire.create.tina.base.Layer sourceLayer, org.jwildfire.create.tina.base.XForm source) {
     XForm res = new XForm();
 
     res.setWeight(source.getWeight());
-    res.getModifiedWeights().clear();
-    for(int i=0;i<sourceLayer.getXForms().size() && i<source.getModifiedWeights().length;i++) {
-      res.getModifiedWeights().add(Double.valueOf(source.getModifiedWeights()[i]));
-    }
+    res.setModifiedWeights(Arrays.copyOf(source.getModifiedWeights(), Math.min(sourceLayer.getXForms().size(), source.getModifiedWeights().length)));
     res.setColor(source.getColor());
     res.setColorSymmetry(source.getColorSymmetry());
 
@@ -126,8 +131,14 @@ public class XFormMapper {
         VariationResource resource = new VariationResource();
         resource.setName(rName);
         resource.setResourceType(VariationResourceType.valueOf(rType.name()));
-        if(isByteArrayType(resource.getResourceType())) {
-          resource.setStringValue(Tools.byteArrayToHexString(rValue));
+        if(resource.getResourceType().isBinary()) {
+          // large resources are only referenced by their hash, clients download them from the resource store
+          if(resourceRepository.isInline(rValue)) {
+            resource.setStringValue(Tools.byteArrayToHexString(rValue));
+          }
+          else {
+            resource.setHash(resourceRepository.put(rValue));
+          }
         }
         else {
           resource.setStringValue(rValue!=null ? new String(rValue, Charsets.UTF_8) : "");
@@ -140,28 +151,11 @@ public class XFormMapper {
     return res;
   }
 
-  private boolean isByteArrayType(VariationResourceType resourceType) {
-    switch(resourceType) {
-      case BYTEARRAY:
-      case IMAGE_FILE:
-      case SVG_FILE:
-      case OBJ_MESH:
-        return true;
-      default:
-        return false;
-    }
-  }
-
   public org.jwildfire.create.tina.base.XForm mapToJwildfire(Layer sourceLayer, XForm source) {
     org.jwildfire.create.tina.base.XForm res = new org.jwildfire.create.tina.base.XForm();
 
     res.setWeight(source.getWeight());
-    for(int i=0;i<res.getModifiedWeights().length;i++) {
-      res.getModifiedWeights()[i] = 0.0;
-    }
-    for(int i=0;i<sourceLayer.getXforms().size() && i<source.getModifiedWeights().size();i++) {
-      res.getModifiedWeights()[i]=source.getModifiedWeights().get(i);
-    }
+    mapModifiedWeightsToJwildfire(sourceLayer, source, res);
     res.setColor(source.getColor());
     res.setColorSymmetry(source.getColorSymmetry());
 
@@ -247,7 +241,11 @@ public class XFormMapper {
       // resources
       for (int j = 0; j < srcVar.getResources().size(); j++) {
         VariationResource resource = srcVar.getResources().get(j);
-        if(isByteArrayType(resource.getResourceType())) {
+        if(resource.getResourceType().isBinary() && resource.getStringValue()==null && resource.getHash()!=null) {
+          varFunc.setRessource(resource.getName(), resourceRepository.getContent(resource.getHash())
+              .orElseThrow(() -> new IllegalArgumentException(String.format("Unknown variation resource %s", resource.getHash()))));
+        }
+        else if(resource.getResourceType().isBinary()) {
           varFunc.setRessource(resource.getName(), Tools.hexStringToByteArray(resource.getStringValue()));
         }
         else {
@@ -259,4 +257,14 @@ public class XFormMapper {
     }
     return res;
   }
+
+  public void mapModifiedWeightsToJwildfire(Layer sourceLayer, XForm source, org.jwildfire.create.tina.base.XForm dest) {
+    double[] weights = dest.getModifiedWeights();
+    for(int i=0;i<weights.length;i++) {
+      weights[i] = 0.0;
+    }
+    for(int i=0;i<sourceLayer.getXforms().size() && i<source.getModifiedWeights().length && i<weights.length;i++) {
+      weights[i]=source.getModifiedWeights()[i];
+    }
+  }
 }
@@ -173,4 +173,59 @@ public class Flame {
 
   @Nonnull
   private final List<@Nonnull Layer> layers = new ArrayList<>();
+
+  public Flame makeCopy() {
+    Flame res = new Flame();
+    res.setBrightness(brightness);
+    res.setContrast(contrast);
+    res.setSampleDensity(sampleDensity);
+    res.setLowDensityBrightness(lowDensityBrightness);
+    res.setForegroundOpacity(foregroundOpacity);
+    res.setVibrancy(vibrancy);
+    res.setSaturation(saturation);
+    res.setGamma(gamma);
+    res.setGammaThreshold(gammaThreshold);
+    res.setBalanceRed(balanceRed);
+    res.setBalanceGreen(balanceGreen);
+    res.setBalanceBlue(balanceBlue);
+    res.setWhiteLevel(whiteLevel);
+    res.setPixelsPerUnit(pixelsPerUnit);
+    res.setWidth(width);
+    res.setHeight(height);
+    res.setCamZoom(camZoom.makeCopy());
+    res.setCentreX(centreX.makeCopy());
+    res.setCentreY(centreY.makeCopy());
+    res.setCamYaw(camYaw.makeCopy());
+    res.setCamPitch(camPitch.makeCopy());
+    res.setCamRoll(camRoll.makeCopy());
+    res.setCamBank(camBank.makeCopy());
+    res.setCamDOF(camDOF);
+    res.setCamDOFArea(camDOFArea);
+    res.setCamPerspective(camPerspective);
+    res.setDiminishZ(diminishZ);
+    res.setCamPosX(camPosX);
+    res.setCamPosY(camPosY);
+    res.setCamPosZ(camPosZ);
+    res.setNewCamDOF(newCamDOF);
+    res.setBgTransparency(bgTransparency);
+    res.setDimZDistance(dimZDistance);
+    res.setCamZ(camZ);
+    res.setFocusX(focusX);
+    res.setFocusY(focusY);
+    res.setFocusZ(focusZ);
+    res.setCamDOFExponent(camDOFExponent);
+    res.setMotionBlurLength(motionBlurLength);
+    res.setMotionBlurTimeStep(motionBlurTimeStep);
+    res.setMotionBlurDecay(motionBlurDecay);
+    res.setFrame(frame);
+    res.setFrameCount(frameCount);
+    res.setFps(fps);
+    res.setResolutionProfile(resolutionProfile);
+    res.setQualityProfile(qualityProfile);
+    res.setName(name);
+    res.setBgImageFilename(bgImageFilename);
+    res.setLastFilename(lastFilename);
+    layers.forEach(layer -> res.getLayers().add(layer.makeCopy()));
+    return res;
+  }
 }
@@ -17,6 +17,7 @@
 
 package org.jwildfire.swan.flames.model.flame;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import dev.hilla.Nonnull;
@@ -26,10 +27,79 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 @NoArgsConstructor
 // Don't use inheritance or generics, which would not work well with automatic generated end-points
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class FlameParam {
-  @Nonnull FlameParamType paramType;
-  @Nonnull FlameParamDataType dataType;
-  Double floatScalar;
-  Integer intScalar;
-  FlameParamCurve curve;
+  // shared instances of the most common values (e.g. of the affine coefficients), their setters throw an exception,
+  // use the factory methods to get an instance and replace (not change) params which are to be altered
+  private static final FlameParam FLOAT_ZERO = new FlameParam(FlameParamType.SCALAR, FlameParamDataType.FLOAT, 0.0, null, null);
+  private static final FlameParam FLOAT_ONE = new FlameParam(FlameParamType.SCALAR, FlameParamDataType.FLOAT, 1.0, null, null);
+  private static final FlameParam INT_ZERO = new FlameParam(FlameParamType.SCALAR, FlameParamDataType.INT, null, 0, null);
+  private static final FlameParam INT_ONE = new FlameParam(FlameParamType.SCALAR, FlameParamDataType.INT, null, 1, null);
+
+  @Nonnull private FlameParamType paramType;
+  @Nonnull private FlameParamDataType dataType;
+  private Double floatScalar;
+  private Integer intScalar;
+  private FlameParamCurve curve;
+
+  public static FlameParam floatScalar(double value) {
+    if(Double.compare(value, 0.0) == 0) {
+      return FLOAT_ZERO;
+    }
+    else if(Double.compare(value, 1.0) == 0) {
+      return FLOAT_ONE;
+    }
+    return new FlameParam(FlameParamType.SCALAR, FlameParamDataType.FLOAT, value, null, null);
+  }
+
+  public static FlameParam intScalar(int value) {
+    switch(value) {
+      case 0: return INT_ZERO;
+      case 1: return INT_ONE;
+      default:
+        return new FlameParam(FlameParamType.SCALAR, FlameParamDataType.INT, null, value, null);
+    }
+  }
+
+  private boolean isShared() {
+    return this == FLOAT_ZERO || this == FLOAT_ONE || this == INT_ZERO || this == INT_ONE;
+  }
+
+  private void checkNotShared() {
+    if(isShared()) {
+      throw new UnsupportedOperationException("Shared params must not be modified, replace the param instead");
+    }
+  }
+
+  public void setParamType(FlameParamType paramType) {
+    checkNotShared();
+    this.paramType = paramType;
+  }
+
+  public void setDataType(FlameParamDataType dataType) {
+    checkNotShared();
+    this.dataType = dataType;
+  }
+
+  public void setFloatScalar(Double floatScalar) {
+    checkNotShared();
+    this.floatScalar = floatScalar;
+  }
+
+  public void setIntScalar(Integer intScalar) {
+    checkNotShared();
+    this.intScalar = intScalar;
+  }
+
+  public void setCurve(FlameParamCurve curve) {
+    checkNotShared();
+    this.curve = curve;
+  }
+
+  public FlameParam makeCopy() {
+    if(isShared()) {
+      return this;
+    }
+    return new FlameParam(paramType, dataType, floatScalar, intScalar, curve != null ? curve.makeCopy() : null);
+  }
 }
@@ -37,4 +37,9 @@ public class FlameParamCurve {
   private int[] x;
   private double[] y;
   private boolean locked;
+
+  public FlameParamCurve makeCopy() {
+    return new FlameParamCurve(viewXMin, viewXMax, viewYMin, viewYMax, interpolation, selectedIdx,
+            x != null ? x.clone() : null, y != null ? y.clone() : null, locked);
+  }
 }
@@ -0,0 +1,45 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jwildfire.swan.flames.model.flame;
+
+import dev.hilla.Nonnull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// A single change of a flame held in a flame-session, only the fields required by the type are evaluated:
+//  SET_XFORM_PARAM: layerIndex, xformIndex, finalXForm, paramName, value and optional variationIndex
+//    (paramName is the name of an affine param, "weight", "color", "colorSymmetry", or, if variationIndex is set,
+//    "amount" or the name of a variation param)
+//  REPLACE_XFORM: layerIndex, xformIndex, finalXForm, xform
+//  ADD_XFORM: layerIndex, finalXForm, xform
+//  REMOVE_XFORM: layerIndex, xformIndex, finalXForm
+//  SET_GRADIENT: layerIndex, gradient
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class FlamePatch {
+  @Nonnull private FlamePatchType type;
+  @Nonnull private int layerIndex;
+  @Nonnull private int xformIndex;
+  @Nonnull private boolean finalXForm;
+  private Integer variationIndex;
+  private String paramName;
+  private FlameParam value;
+  private XForm xform;
+  private int[] gradient;
+}
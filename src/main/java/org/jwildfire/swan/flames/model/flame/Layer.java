@@ -34,12 +34,20 @@ public class Layer {
   @Nonnull
   private double density;
 
+  // packed RGB colors (0xRRGGBB), which is much more compact than one object per color
   @Nonnull
-  private final List<@Nonnull Color> gradient = new ArrayList<>();
+  private int[] gradient = new int[0];
 
   @Nonnull
   private final List<@Nonnull XForm> xforms = new ArrayList<>();
 
   @Nonnull
   private final List<@Nonnull XForm> finalXforms = new ArrayList<>();
+
+  public Layer makeCopy() {
+    Layer res = new Layer(weight, density, gradient.clone());
+    xforms.forEach(xForm -> res.getXforms().add(xForm.makeCopy()));
+    finalXforms.forEach(xForm -> res.getFinalXforms().add(xForm.makeCopy()));
+    return res;
+  }
 }
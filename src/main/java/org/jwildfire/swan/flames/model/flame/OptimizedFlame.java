@@ -14,19 +14,18 @@
   if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
   02110-1301 USA, or see the FSF site: http://www.fsf.org.
 */
-
 package org.jwildfire.swan.flames.model.flame;
 
 import dev.hilla.Nonnull;
 import lombok.AllArgsConstructor;
 import lombok.Data;
-import lombok.NoArgsConstructor;
 
 @Data
 @AllArgsConstructor
-@NoArgsConstructor
-public class Color {
-  @Nonnull private int r;
-  @Nonnull private int g;
-  @Nonnull private int b;
+public class OptimizedFlame {
+  @Nonnull
+  private final Flame flame;
+
+  @Nonnull
+  private final FlameOptimizationReport report;
 }
@@ -0,0 +1,37 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jwildfire.swan.flames.model.flame;
+
+import dev.hilla.Nonnull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class RandomFlameGeneratorStats {
+  @Nonnull private final String name;
+  @Nonnull private final long count;
+  @Nonnull private final long timeouts;
+  // generations which were replaced by the fallback generator because they did not get a thread in time
+  @Nonnull private final long queueTimeouts;
+  @Nonnull private final long failures;
+  @Nonnull private final double meanTimeInMs;
+  @Nonnull private final long p50TimeInMs;
+  @Nonnull private final long p99TimeInMs;
+  // relative probability of the generator to be chosen
+  @Nonnull private final double weight;
+}
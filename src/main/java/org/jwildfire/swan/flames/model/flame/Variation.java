@@ -33,4 +33,11 @@ public class Variation {
   @Nonnull private FlameParam amount;
   @Nonnull private final List<@Nonnull VariationParam> params = new ArrayList<>();
   @Nonnull private final List<@Nonnull VariationResource> resources = new ArrayList<>();
+
+  public Variation makeCopy() {
+    Variation res = new Variation(name, amount.makeCopy());
+    params.forEach(param -> res.getParams().add(param.makeCopy()));
+    resources.forEach(resource -> res.getResources().add(resource.makeCopy()));
+    return res;
+  }
 }
@@ -31,4 +31,8 @@ import java.util.List;
 public class VariationParam {
   @Nonnull private String name;
   @Nonnull private FlameParam value;
+
+  public VariationParam makeCopy() {
+    return new VariationParam(name, value.makeCopy());
+  }
 }
@@ -29,4 +29,11 @@ public class VariationResource {
   @Nonnull private String name;
   @Nonnull private VariationResourceType resourceType;
   private String stringValue;
+  // additionally set for large binary resources, which are also served by the VariationResourceController; the
+  // stringValue is always set, so the flame never depends on the resource store when it is mapped back
+  private String hash;
+
+  public VariationResource makeCopy() {
+    return new VariationResource(name, resourceType, stringValue, hash);
+  }
 }
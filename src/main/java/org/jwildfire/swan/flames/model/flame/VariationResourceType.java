@@ -23,5 +23,18 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 public enum VariationResourceType {
-  BYTEARRAY, HREF, IMAGE_FILENAME, IMAGE_FILE, SVG_FILE, FONT_NAME, JAVA_CODE, OBJ_MESH, FLAME_FILENAME
+  BYTEARRAY, HREF, IMAGE_FILENAME, IMAGE_FILE, SVG_FILE, FONT_NAME, JAVA_CODE, OBJ_MESH, FLAME_FILENAME;
+
+  // the content of binary resources is hex-encoded, the others are plain strings
+  public boolean isBinary() {
+    switch(this) {
+      case BYTEARRAY:
+      case IMAGE_FILE:
+      case SVG_FILE:
+      case OBJ_MESH:
+        return true;
+      default:
+        return false;
+    }
+  }
 }
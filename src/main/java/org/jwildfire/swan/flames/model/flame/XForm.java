@@ -87,6 +87,64 @@ public class XForm {
   @Nonnull private FlameParam zxPRotate;
   @Nonnull private FlameParam zxPScale;
 
-  @Nonnull private final List<@Nonnull Double> modifiedWeights = new ArrayList<>();
+  @Nonnull private double[] modifiedWeights = new double[0];
   @Nonnull private final List<@Nonnull Variation> variations = new ArrayList<>();
+
+  public XForm makeCopy() {
+    XForm res = new XForm();
+    res.setWeight(weight);
+    res.setColor(color);
+    res.setColorSymmetry(colorSymmetry);
+    res.setXyC00(xyC00.makeCopy());
+    res.setXyC01(xyC01.makeCopy());
+    res.setXyC10(xyC10.makeCopy());
+    res.setXyC11(xyC11.makeCopy());
+    res.setXyC20(xyC20.makeCopy());
+    res.setXyC21(xyC21.makeCopy());
+    res.setXyRotate(xyRotate.makeCopy());
+    res.setXyScale(xyScale.makeCopy());
+    res.setYzC00(yzC00.makeCopy());
+    res.setYzC01(yzC01.makeCopy());
+    res.setYzC10(yzC10.makeCopy());
+    res.setYzC11(yzC11.makeCopy());
+    res.setYzC20(yzC20.makeCopy());
+    res.setYzC21(yzC21.makeCopy());
+    res.setYzRotate(yzRotate.makeCopy());
+    res.setYzScale(yzScale.makeCopy());
+    res.setZxC00(zxC00.makeCopy());
+    res.setZxC01(zxC01.makeCopy());
+    res.setZxC10(zxC10.makeCopy());
+    res.setZxC11(zxC11.makeCopy());
+    res.setZxC20(zxC20.makeCopy());
+    res.setZxC21(zxC21.makeCopy());
+    res.setZxRotate(zxRotate.makeCopy());
+    res.setZxScale(zxScale.makeCopy());
+    res.setXyP00(xyP00.makeCopy());
+    res.setXyP01(xyP01.makeCopy());
+    res.setXyP10(xyP10.makeCopy());
+    res.setXyP11(xyP11.makeCopy());
+    res.setXyP20(xyP20.makeCopy());
+    res.setXyP21(xyP21.makeCopy());
+    res.setXyPRotate(xyPRotate.makeCopy());
+    res.setXyPScale(xyPScale.makeCopy());
+    res.setYzP00(yzP00.makeCopy());
+    res.setYzP01(yzP01.makeCopy());
+    res.setYzP10(yzP10.makeCopy());
+    res.setYzP11(yzP11.makeCopy());
+    res.setYzP20(yzP20.makeCopy());
+    res.setYzP21(yzP21.makeCopy());
+    res.setYzPRotate(yzPRotate.makeCopy());
+    res.setYzPScale(yzPScale.makeCopy());
+    res.setZxP00(zxP00.makeCopy());
+    res.setZxP01(zxP01.makeCopy());
+    res.setZxP10(zxP10.makeCopy());
+    res.setZxP11(zxP11.makeCopy());
+    res.setZxP20(zxP20.makeCopy());
+    res.setZxP21(zxP21.makeCopy());
+    res.setZxPRotate(zxPRotate.makeCopy());
+    res.setZxPScale(zxPScale.makeCopy());
+    res.setModifiedWeights(modifiedWeights.clone());
+    variations.forEach(variation -> res.getVariations().add(variation.makeCopy()));
+    return res;
+  }
 }
@@ -0,0 +1,41 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+
+package org.jwildfire.swan.flames.model.gallery;
+
+import dev.hilla.Nonnull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ExampleQuery {
+  // examples must have all of the given tags
+  @Nonnull private List<@Nonnull String> tags = new ArrayList<>();
+  // words which must occur (as prefix of a word) in the title, may be empty
+  private String title;
+  @Nonnull private ExampleSortOrder sortOrder = ExampleSortOrder.NEWEST_FIRST;
+  // used by ExampleSortOrder.RANDOM, the same seed delivers the same order for all pages
+  @Nonnull private long seed;
+  @Nonnull private int page;
+  @Nonnull private int pageSize = 24;
+}
@@ -0,0 +1,89 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+
+package org.jwildfire.swan.flames.repository;
+
+import org.jwildfire.base.Prefs;
+import org.jwildfire.base.Tools;
+import org.jwildfire.create.tina.io.FlameReader;
+import org.jwildfire.swan.flames.mapper.FlameMapper;
+import org.jwildfire.swan.flames.mapper.FlameTransformer;
+import org.jwildfire.swan.flames.mapper.LayerMapper;
+import org.jwildfire.swan.flames.mapper.PreserveZClassifier;
+import org.jwildfire.swan.flames.mapper.XFormMapper;
+import org.jwildfire.swan.flames.model.gallery.ExampleIndex;
+import org.jwildfire.swan.flames.model.gallery.ExampleIndexEntry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Parses all example flames once at build time (see the exec-maven-plugin in the pom.xml) and writes
+ * the names, meta data and mapped flames into the index which is read by the ExampleIndexRepository.
+ * Usage: ExampleIndexBuilder &lt;example-directory&gt; &lt;index-file&gt;
+ */
+public class ExampleIndexBuilder {
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      throw new IllegalArgumentException("Usage: ExampleIndexBuilder <example-directory> <index-file>");
+    }
+    Path exampleDir = Paths.get(args[0]);
+    Path indexFile = Paths.get(args[1]);
+    ExampleIndex index = buildIndex(exampleDir);
+    try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(indexFile))) {
+      ExampleIndexRepository.createObjectMapper().writeValue(out, index);
+    }
+    System.out.println(String.format("Wrote %d examples to %s", index.getEntries().size(), indexFile));
+  }
+
+  public static ExampleIndex buildIndex(Path exampleDir) throws IOException {
+    FlameMapper flameMapper = new FlameMapper(new LayerMapper(new XFormMapper(VariationResourceRepository.inlineOnly())), new FlameTransformer(new PreserveZClassifier("")));
+    List<Path> flameFiles;
+    try (Stream<Path> files = Files.list(exampleDir)) {
+      flameFiles = files
+          .filter(file -> {
+            String filename = file.getFileName().toString();
+            return filename.startsWith("example") && filename.endsWith(".flame") && !filename.contains(" ");
+          })
+          .sorted()
+          .collect(Collectors.toList());
+    }
+    ExampleIndex index = new ExampleIndex();
+    for (Path flameFile : flameFiles) {
+      String name = Tools.trimFileExt(flameFile.getFileName().toString());
+      Path metaDataFile = exampleDir.resolve(name + ".json");
+      if (!Files.exists(metaDataFile)) {
+        continue;
+      }
+      String flameXml = Files.readString(flameFile, StandardCharsets.UTF_8);
+      org.jwildfire.create.tina.base.Flame jwfFlame =
+          new FlameReader(Prefs.getPrefs()).readFlamesfromXML(flameXml).stream().findFirst().orElseThrow();
+      index.getEntries().add(new ExampleIndexEntry(name, Files.readString(metaDataFile, StandardCharsets.UTF_8),
+          flameMapper.mapFromJwildfire(jwfFlame)));
+    }
+    return index;
+  }
+}
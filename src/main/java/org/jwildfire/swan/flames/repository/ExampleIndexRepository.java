@@ -0,0 +1,155 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+
+package org.jwildfire.swan.flames.repository;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.jwildfire.base.Tools;
+import org.jwildfire.swan.flames.model.flame.Flame;
+import org.jwildfire.swan.flames.model.gallery.ExampleIndex;
+import org.jwildfire.swan.flames.model.gallery.ExampleIndexEntry;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Provides the example flames from the prebuilt index (see ExampleIndexBuilder), so that neither
+ * scanning the classpath nor parsing of example flames is required at runtime. If the index is not
+ * available (e. g. when it was not built), names and meta data are read from the classpath, and the
+ * callers must fall back to parsing the example flames themselves.
+ */
+@Component
+@Slf4j
+public class ExampleIndexRepository {
+  public static final String INDEX_RESOURCE = "examples/example-index.json.gz";
+  private static final String EXAMPLE_PATH = "examples";
+
+  private volatile Map<String, ExampleIndexEntry> entries;
+  private volatile List<String> scannedExampleNames;
+
+  public static ObjectMapper createObjectMapper() {
+    return new ObjectMapper()
+        .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+  }
+
+  public boolean isAvailable() {
+    return !getEntries().isEmpty();
+  }
+
+  public List<String> getExampleNames() {
+    if (isAvailable()) {
+      return new ArrayList<>(getEntries().keySet());
+    }
+    if (scannedExampleNames == null) {
+      scannedExampleNames = scanExampleNames();
+    }
+    return scannedExampleNames;
+  }
+
+  public Optional<String> getMetaData(String name) {
+    ExampleIndexEntry entry = getEntries().get(name);
+    if (entry != null) {
+      return Optional.of(entry.getMetaData());
+    }
+    try (InputStream in = getResourceAsStream(String.format("%s/%s.json", EXAMPLE_PATH, name))) {
+      return in != null ? Optional.of(new String(in.readAllBytes(), StandardCharsets.UTF_8)) : Optional.empty();
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  public Optional<Flame> getFlame(String name) {
+    return Optional.ofNullable(getEntries().get(name)).map(entry -> entry.getFlame().makeCopy());
+  }
+
+  private Map<String, ExampleIndexEntry> getEntries() {
+    if (entries == null) {
+      synchronized (this) {
+        if (entries == null) {
+          entries = loadEntries();
+        }
+      }
+    }
+    return entries;
+  }
+
+  private List<String> scanExampleNames() {
+    try {
+      List<String> res = new ArrayList<>();
+      ResourcePatternResolver resolver = new PathMatchingResourcePatternResolver(getClass().getClassLoader());
+      Resource[] resources = resolver.getResources("classpath*:examples/example*.flame");
+      for (Resource resource : resources) {
+        // in dev mode the entries sometimes seem to get duplicated, where a number is appended
+        // to the duplicates (e. g. "example001" -> "example001 2").
+        // We now skip these entries by filtering any entry having a space char in the name
+        if (!resource.getFilename().contains(" ")) {
+          try (InputStream in = getResourceAsStream(String.format("%s/%s", EXAMPLE_PATH, resource.getFilename()))) {
+            if (in == null) {
+              continue;
+            }
+          }
+          try (InputStream in = getResourceAsStream(String.format("%s/%s.json", EXAMPLE_PATH, Tools.trimFileExt(resource.getFilename())))) {
+            if (in != null) {
+              res.add(Tools.trimFileExt(resource.getFilename()));
+            }
+          }
+        }
+      }
+      return Collections.unmodifiableList(res);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  private InputStream getResourceAsStream(String resource) {
+    return getClass().getClassLoader().getResourceAsStream(resource);
+  }
+
+  private Map<String, ExampleIndexEntry> loadEntries() {
+    try (InputStream in = getClass().getClassLoader().getResourceAsStream(INDEX_RESOURCE)) {
+      if (in == null) {
+        log.warn("Example index {} not found, reading examples directly", INDEX_RESOURCE);
+        return Collections.emptyMap();
+      }
+      ExampleIndex index = createObjectMapper().readValue(new GZIPInputStream(in), ExampleIndex.class);
+      Map<String, ExampleIndexEntry> res = new LinkedHashMap<>();
+      index.getEntries().forEach(entry -> res.put(entry.getName(), entry));
+      log.info("Loaded {} examples from example index", res.size());
+      return Collections.unmodifiableMap(res);
+    } catch (IOException ex) {
+      log.error("Error reading example index, reading examples directly", ex);
+      return Collections.emptyMap();
+    }
+  }
+}
@@ -0,0 +1,153 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jwildfire.swan.flames.repository;
+
+import org.jwildfire.swan.flames.model.upload.FlameLibraryEntry;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Scans a flame library (a flame-xml file which may contain many &lt;flame&gt;-elements) once and records the
+ * name and the byte range of each flame, without parsing any of them. A single flame may then be parsed by
+ * passing only its byte range to the FlameReader. Flame-elements are not nested, comments and CDATA-sections
+ * are skipped.
+ */
+public final class FlameLibraryIndexer {
+  private static final byte[] FLAME_START = "<flame".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] FLAME_END = "</flame>".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] COMMENT_START = "<!--".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] COMMENT_END = "-->".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] CDATA_START = "<![CDATA[".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] CDATA_END = "]]>".getBytes(StandardCharsets.US_ASCII);
+  private static final Pattern NAME_ATTRIBUTE = Pattern.compile("\\sname\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)')");
+
+  private FlameLibraryIndexer() {
+  }
+
+  // indexes the remaining bytes of the buffer, offsets are relative to its position
+  public static List<FlameLibraryEntry> index(ByteBuffer content) {
+    ByteBuffer buffer = content.slice();
+    int limit = buffer.limit();
+    List<FlameLibraryEntry> res = new ArrayList<>();
+    int pos = 0;
+    while (pos < limit) {
+      if (buffer.get(pos) != '<') {
+        pos++;
+      }
+      else if (startsWith(buffer, pos, COMMENT_START)) {
+        pos = skipPast(buffer, pos + COMMENT_START.length, COMMENT_END);
+      }
+      else if (startsWith(buffer, pos, CDATA_START)) {
+        pos = skipPast(buffer, pos + CDATA_START.length, CDATA_END);
+      }
+      else if (startsWith(buffer, pos, FLAME_START) && isTagNameEnd(buffer, pos + FLAME_START.length)) {
+        int tagEnd = findTagEnd(buffer, pos + FLAME_START.length);
+        if (tagEnd < 0) {
+          break;
+        }
+        int end = buffer.get(tagEnd - 1) == '/' ? tagEnd + 1 : skipPast(buffer, tagEnd + 1, FLAME_END);
+        if (end > limit) {
+          // truncated file
+          break;
+        }
+        res.add(new FlameLibraryEntry(res.size(), getName(buffer, pos, tagEnd), pos, end - pos));
+        pos = end;
+      }
+      else {
+        pos++;
+      }
+    }
+    return res;
+  }
+
+  // returns the bytes of the flame, the buffer must be the (whole) buffer which was indexed
+  public static ByteBuffer slice(ByteBuffer content, FlameLibraryEntry entry) {
+    ByteBuffer res = content.duplicate();
+    res.position(content.position() + (int) entry.getOffset());
+    res.limit(content.position() + (int) entry.getOffset() + entry.getLength());
+    return res.slice();
+  }
+
+  private static boolean startsWith(ByteBuffer buffer, int pos, byte[] prefix) {
+    if (pos + prefix.length > buffer.limit()) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (buffer.get(pos + i) != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // returns the position after the next occurrence of the marker, or a position past the limit if there is none
+  private static int skipPast(ByteBuffer buffer, int pos, byte[] marker) {
+    int last = buffer.limit() - marker.length;
+    for (int i = pos; i <= last; i++) {
+      if (startsWith(buffer, i, marker)) {
+        return i + marker.length;
+      }
+    }
+    return buffer.limit() + 1;
+  }
+
+  private static boolean isTagNameEnd(ByteBuffer buffer, int pos) {
+    if (pos >= buffer.limit()) {
+      return false;
+    }
+    byte b = buffer.get(pos);
+    return b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\r' || b == '\n';
+  }
+
+  // position of the closing '>' of a start tag, '>' inside of attribute values is ignored
+  private static int findTagEnd(ByteBuffer buffer, int pos) {
+    byte quote = 0;
+    for (int i = pos; i < buffer.limit(); i++) {
+      byte b = buffer.get(i);
+      if (quote != 0) {
+        if (b == quote) {
+          quote = 0;
+        }
+      }
+      else if (b == '"' || b == '\'') {
+        quote = b;
+      }
+      else if (b == '>') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static String getName(ByteBuffer buffer, int tagStart, int tagEnd) {
+    ByteBuffer tag = buffer.duplicate();
+    tag.position(tagStart);
+    tag.limit(tagEnd);
+    Matcher matcher = NAME_ATTRIBUTE.matcher(StandardCharsets.UTF_8.decode(tag));
+    if (!matcher.find()) {
+      return "";
+    }
+    String name = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+    return name.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&apos;", "'")
+        .replace("&amp;", "&");
+  }
+}
@@ -0,0 +1,108 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+
+package org.jwildfire.swan.flames.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * File format of the gallery resource pack, which contains all gallery resources (example flames,
+ * meta data and preview images) in one file, so that they can be served from one memory-mapped file.
+ * Layout: header (magic, version, entry count, start of data), index of all entries, data. All offsets
+ * of the entries are relative to the start of the data.
+ */
+public class GalleryPack {
+  public static final String PACK_RESOURCE = "gallery/gallery.pack";
+  public static final String MAGIC = "SWANPACK";
+  public static final int VERSION = 1;
+  public static final int HEADER_SIZE = 8 + 4 + 4 + 8;
+  public static final int NO_VARIANT = -1;
+
+  @Data
+  @AllArgsConstructor
+  public static class Entry {
+    private String name;
+    private String contentType;
+    // sha-256 of the uncompressed content
+    private String etag;
+    private long offset;
+    private int length;
+    private long gzipOffset;
+    private int gzipLength;
+
+    public boolean hasGzipVariant() {
+      return gzipLength != NO_VARIANT;
+    }
+  }
+
+  public static void writeIndex(DataOutputStream out, List<Entry> entries) throws IOException {
+    for (Entry entry : entries) {
+      out.writeUTF(entry.getName());
+      out.writeUTF(entry.getContentType());
+      out.writeUTF(entry.getEtag());
+      out.writeLong(entry.getOffset());
+      out.writeInt(entry.getLength());
+      out.writeLong(entry.getGzipOffset());
+      out.writeInt(entry.getGzipLength());
+    }
+  }
+
+  public static void writeHeader(DataOutputStream out, int entryCount, long dataOffset) throws IOException {
+    for (int i = 0; i < MAGIC.length(); i++) {
+      out.writeByte(MAGIC.charAt(i));
+    }
+    out.writeInt(VERSION);
+    out.writeInt(entryCount);
+    out.writeLong(dataOffset);
+  }
+
+  // reads header and index, returns the entries with absolute offsets
+  public static List<Entry> readIndex(DataInputStream in) throws IOException {
+    byte[] magic = new byte[MAGIC.length()];
+    in.readFully(magic);
+    if (!MAGIC.equals(new String(magic, StandardCharsets.US_ASCII))) {
+      throw new IOException("Invalid gallery pack");
+    }
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException(String.format("Unsupported gallery pack version %d", version));
+    }
+    int entryCount = in.readInt();
+    long dataOffset = in.readLong();
+    List<Entry> entries = new ArrayList<>(entryCount);
+    for (int i = 0; i < entryCount; i++) {
+      String name = in.readUTF();
+      String contentType = in.readUTF();
+      String etag = in.readUTF();
+      long offset = in.readLong() + dataOffset;
+      int length = in.readInt();
+      long gzipOffset = in.readLong();
+      int gzipLength = in.readInt();
+      entries.add(new Entry(name, contentType, etag, offset, length,
+          gzipLength != NO_VARIANT ? gzipOffset + dataOffset : gzipOffset, gzipLength));
+    }
+    return entries;
+  }
+}
@@ -0,0 +1,135 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+
+package org.jwildfire.swan.flames.repository;
+
+import com.google.common.hash.Hashing;
+import org.jwildfire.base.Tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the gallery resource pack (see GalleryPack) at build time, see the exec-maven-plugin in the
+ * pom.xml. Textual resources get an additional precompressed gzip-variant.
+ * Usage: GalleryPackBuilder &lt;example-directory&gt; &lt;image-directory&gt; &lt;pack-file&gt;
+ */
+public class GalleryPackBuilder {
+  public static final String METADATA_ENTRY = "examples/metadata.json";
+  // only keep compressed variants which save a reasonable amount of bytes
+  private static final double MAX_COMPRESSION_RATIO = 0.9;
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 3) {
+      throw new IllegalArgumentException("Usage: GalleryPackBuilder <example-directory> <image-directory> <pack-file>");
+    }
+    Path exampleDir = Paths.get(args[0]);
+    Path imageDir = Paths.get(args[1]);
+    Path packFile = Paths.get(args[2]);
+    Files.createDirectories(packFile.getParent());
+
+    List<String> names = new ArrayList<>();
+    List<String> contentTypes = new ArrayList<>();
+    List<byte[]> contents = new ArrayList<>();
+    List<String> metaData = new ArrayList<>();
+    for (Path flameFile : listFiles(exampleDir, "example", ".flame")) {
+      String example = Tools.trimFileExt(flameFile.getFileName().toString());
+      Path metaDataFile = exampleDir.resolve(example + ".json");
+      if (!Files.exists(metaDataFile)) {
+        continue;
+      }
+      byte[] metaDataContent = Files.readAllBytes(metaDataFile);
+      metaData.add(new String(metaDataContent, StandardCharsets.UTF_8));
+      add(names, contentTypes, contents, "examples/" + example + ".flame", "application/xml", Files.readAllBytes(flameFile));
+      add(names, contentTypes, contents, "examples/" + example + ".json", "application/json", metaDataContent);
+    }
+    add(names, contentTypes, contents, METADATA_ENTRY, "application/json",
+        ("[" + String.join(",", metaData) + "]").getBytes(StandardCharsets.UTF_8));
+    for (Path imageFile : listFiles(imageDir, "", ".jpg")) {
+      add(names, contentTypes, contents, "images/" + imageFile.getFileName(), "image/jpeg", Files.readAllBytes(imageFile));
+    }
+
+    List<GalleryPack.Entry> entries = new ArrayList<>();
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+    for (int i = 0; i < names.size(); i++) {
+      byte[] content = contents.get(i);
+      String etag = Hashing.sha256().hashBytes(content).toString();
+      long offset = data.size();
+      data.write(content);
+      long gzipOffset = GalleryPack.NO_VARIANT;
+      int gzipLength = GalleryPack.NO_VARIANT;
+      if (!contentTypes.get(i).startsWith("image/")) {
+        byte[] gzipContent = gzip(content);
+        if (gzipContent.length < content.length * MAX_COMPRESSION_RATIO) {
+          gzipOffset = data.size();
+          gzipLength = gzipContent.length;
+          data.write(gzipContent);
+        }
+      }
+      entries.add(new GalleryPack.Entry(names.get(i), contentTypes.get(i), etag, offset, content.length, gzipOffset, gzipLength));
+    }
+
+    ByteArrayOutputStream index = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(index)) {
+      GalleryPack.writeIndex(out, entries);
+    }
+    try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(packFile))) {
+      GalleryPack.writeHeader(out, entries.size(), GalleryPack.HEADER_SIZE + index.size());
+      index.writeTo(out);
+      data.writeTo(out);
+    }
+    System.out.println(String.format("Wrote %d gallery resources to %s", entries.size(), packFile));
+  }
+
+  private static void add(List<String> names, List<String> contentTypes, List<byte[]> contents, String name, String contentType, byte[] content) {
+    names.add(name);
+    contentTypes.add(contentType);
+    contents.add(content);
+  }
+
+  private static List<Path> listFiles(Path dir, String prefix, String suffix) throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files
+          .filter(file -> {
+            String filename = file.getFileName().toString();
+            return filename.startsWith(prefix) && filename.endsWith(suffix) && !filename.contains(" ");
+          })
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static byte[] gzip(byte[] content) throws IOException {
+    ByteArrayOutputStream res = new ByteArrayOutputStream();
+    try (OutputStream out = new GZIPOutputStream(res) {{ def.setLevel(Deflater.BEST_COMPRESSION); }}) {
+      out.write(content);
+    }
+    return res.toByteArray();
+  }
+}
@@ -0,0 +1,145 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+
+package org.jwildfire.swan.flames.repository;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Provides access to the memory-mapped gallery resource pack (see GalleryPack). When the application
+ * runs from a jar, the pack is extracted once into a temporary file, because resources inside of a
+ * jar can not be mapped.
+ */
+@Component
+@Slf4j
+public class GalleryPackRepository {
+  private volatile boolean loaded;
+  private Map<String, GalleryPack.Entry> entries = Collections.emptyMap();
+  private MappedByteBuffer buffer;
+  private Path packFile;
+  private String version = "";
+
+  public boolean isAvailable() {
+    load();
+    return buffer != null;
+  }
+
+  public Optional<GalleryPack.Entry> getEntry(String name) {
+    load();
+    return Optional.ofNullable(entries.get(name));
+  }
+
+  // a version which changes whenever any of the resources changes, to be used for cache-busting
+  public String getVersion() {
+    load();
+    return version;
+  }
+
+  public Path getPackFile() {
+    load();
+    return packFile;
+  }
+
+  // returns a read-only view of the content of the entry, which shares the memory of the mapped file
+  public ByteBuffer getContent(GalleryPack.Entry entry, boolean gzipVariant) {
+    load();
+    ByteBuffer res = buffer.asReadOnlyBuffer();
+    long offset = gzipVariant ? entry.getGzipOffset() : entry.getOffset();
+    int length = gzipVariant ? entry.getGzipLength() : entry.getLength();
+    res.position((int) offset);
+    res.limit((int) offset + length);
+    return res.slice();
+  }
+
+  public Optional<String> getContentAsString(String name) {
+    return getEntry(name).map(entry -> StandardCharsets.UTF_8.decode(getContent(entry, false)).toString());
+  }
+
+  private void load() {
+    if (!loaded) {
+      synchronized (this) {
+        if (!loaded) {
+          try {
+            loadPack();
+          } catch (Exception ex) {
+            log.error("Error loading gallery pack", ex);
+          }
+          loaded = true;
+        }
+      }
+    }
+  }
+
+  private void loadPack() throws IOException, URISyntaxException {
+    URL url = getClass().getClassLoader().getResource(GalleryPack.PACK_RESOURCE);
+    if (url == null) {
+      log.warn("Gallery pack {} not found", GalleryPack.PACK_RESOURCE);
+      return;
+    }
+    Path file;
+    if ("file".equals(url.getProtocol())) {
+      file = Paths.get(url.toURI());
+    } else {
+      file = Files.createTempFile("swan-gallery", ".pack");
+      file.toFile().deleteOnExit();
+      try (InputStream in = url.openStream()) {
+        Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    List<GalleryPack.Entry> packEntries;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      packEntries = GalleryPack.readIndex(in);
+    }
+    Map<String, GalleryPack.Entry> entryMap = new HashMap<>();
+    Hasher versionHasher = Hashing.sha256().newHasher();
+    for (GalleryPack.Entry entry : packEntries) {
+      entryMap.put(entry.getName(), entry);
+      versionHasher.putString(entry.getEtag(), StandardCharsets.US_ASCII);
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    entries = entryMap;
+    packFile = file;
+    version = versionHasher.hash().toString().substring(0, 16);
+    log.info("Loaded {} gallery resources from {}", entries.size(), file);
+  }
+}
@@ -17,133 +17,405 @@
 
 package org.jwildfire.swan.flames.repository;
 
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.jwildfire.swan.flames.model.upload.FlameLibraryEntry;
 import org.jwildfire.swan.flames.model.upload.TempFileUpload;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Queue;
 import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Temporary uploads, per session. Uploads of a session are indexed by a hash of their name and content, so
+ * uploading the same file again returns the existing upload, and the size of a session is kept as a running
+ * total. Expired uploads are removed by a timer wheel which is advanced by a background thread, so requests
+ * never have to scan the uploads of other sessions. Sessions are independent of each other and only
+ * operations on the same session are serialized.
+ * The content of uploads is streamed into temp files (property swan.tempUpload.dir) and memory-mapped when
+ * it is read, only the metadata is kept on the heap. The total size of all uploads is limited by a global
+ * budget, when it is exceeded the least recently used uploads of any session are removed.
+ */
 @Component
+@Slf4j
 public class TempFileUploadRepository {
-  private static final Map<String, List<UUID>> uploads = new HashMap<>();
-  private static final Map<String,Map<UUID, TempFileUpload>> uploadMetadata = new HashMap<>();
-  private static final Map<String,Map<UUID, byte[]>> uploadContent = new HashMap<>();
-  private static final int MAX_CONTENT_SIZE_PER_SESSION = 10 * 1000 * 1000; // 10 MB
-  private static final int MAX_FILE_SIZE = 2 * 1000 * 1000; // 2MB
-  private static final int MAX_DURATION_IN_SECONDS = 30 * 60;
+  private static final String FILE_PREFIX = "upload-";
+  private static final String FILE_SUFFIX = ".tmp";
+
+  private final ConcurrentMap<String, SessionUploads> sessions = new ConcurrentHashMap<>();
+  private final long maxContentSizePerSession;
+  private final long maxFileSize;
+  private final long maxTotalSize;
+  private final Path dir;
+  // all uploads in the order of their last access, guarded by itself, together with totalSize
+  private final LinkedHashMap<UUID, StoredUpload> leastRecentlyUsed = new LinkedHashMap<>(16, 0.75f, true);
+  private long totalSize;
+  private final long expiryInMillis;
+  private final Queue<ExpiryRef>[] expiryWheel;
+  private final long tickInMillis;
+  private final AtomicLong currentTick = new AtomicLong();
+  private final ScheduledExecutorService expiryTimer;
+
+  @SuppressWarnings("unchecked")
+  public TempFileUploadRepository(@Value("${swan.tempUpload.maxSizePerSessionInBytes:10000000}") long maxContentSizePerSession,
+                                  @Value("${swan.tempUpload.maxFileSizeInBytes:2000000}") long maxFileSize,
+                                  @Value("${swan.tempUpload.maxTotalSizeInBytes:268435456}") long maxTotalSize,
+                                  @Value("${swan.tempUpload.dir:}") String dir,
+                                  @Value("${swan.tempUpload.expiryInMinutes:30}") long expiryInMinutes,
+                                  @Value("${swan.tempUpload.expiryTickInSeconds:30}") long expiryTickInSeconds) throws IOException {
+    this.maxContentSizePerSession = maxContentSizePerSession;
+    this.maxFileSize = maxFileSize;
+    this.maxTotalSize = maxTotalSize;
+    this.dir = initDir(dir);
+    this.expiryInMillis = TimeUnit.MINUTES.toMillis(Math.max(expiryInMinutes, 1));
+    this.tickInMillis = TimeUnit.SECONDS.toMillis(Math.max(expiryTickInSeconds, 1));
+    // one slot per tick of the expiry duration, plus one because an upload may be added at any time during a tick
+    int slotCount = (int) ((expiryInMillis + tickInMillis - 1) / tickInMillis) + 1;
+    this.expiryWheel = new Queue[slotCount];
+    for(int i = 0; i < slotCount; i++) {
+      expiryWheel[i] = new ConcurrentLinkedQueue<>();
+    }
+    this.expiryTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("temp-upload-expiry-%d")
+        .setDaemon(true)
+        .build());
+    expiryTimer.scheduleAtFixedRate(this::advanceExpiryWheel, tickInMillis, tickInMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private static class StoredUpload {
+    private final TempFileUpload upload;
+    private final HashCode key;
+    private final HashCode contentHash;
+    private final Path file;
+    private volatile List<FlameLibraryEntry> libraryEntries;
+
+    StoredUpload(TempFileUpload upload, HashCode key, HashCode contentHash, Path file) {
+      this.upload = upload;
+      this.key = key;
+      this.contentHash = contentHash;
+      this.file = file;
+    }
+  }
+
+  // all access is synchronized on the instance, insertion order of uploads is the order of eviction
+  private static class SessionUploads {
+    private final Map<UUID, StoredUpload> uploads = new LinkedHashMap<>();
+    private final Map<HashCode, UUID> uploadsByKey = new HashMap<>();
+    private long totalSize;
+
+    void add(StoredUpload stored) {
+      uploads.put(stored.upload.getUuid(), stored);
+      uploadsByKey.put(stored.key, stored.upload.getUuid());
+      totalSize += stored.upload.getSize();
+    }
+
+    StoredUpload remove(UUID uuid) {
+      StoredUpload stored = uploads.remove(uuid);
+      if(stored != null) {
+        uploadsByKey.remove(stored.key);
+        totalSize -= stored.upload.getSize();
+      }
+      return stored;
+    }
+  }
+
+  private static class ExpiryRef {
+    private final String sessionId;
+    private final UUID uuid;
+
+    ExpiryRef(String sessionId, UUID uuid) {
+      this.sessionId = sessionId;
+      this.uuid = uuid;
+    }
+  }
 
   private String getSessionId() {
     return RequestContextHolder.currentRequestAttributes().getSessionId();
   }
 
-  public synchronized UUID addFile(MultipartFile file) {
+  public UUID addFile(MultipartFile file) {
     try {
+      if(file.getSize() > maxFileSize) {
+        throw new RuntimeException("Size of uploaded file is too large");
+      }
       final String filename = file.getOriginalFilename();
-      final byte[] fileContent = file.isEmpty() ? null : file.getInputStream().readAllBytes();
-      final int fileLength = file.isEmpty() | fileContent == null ? 0 : fileContent.length;
-      if(fileLength>MAX_FILE_SIZE) {
+      final String sessionId = getSessionId();
+      // stream the content into a temp file, it is hashed on the way
+      final Path contentFile = Files.createTempFile(dir, FILE_PREFIX, FILE_SUFFIX);
+      final long fileLength;
+      final HashCode contentHash;
+      try(HashingInputStream in = new HashingInputStream(Hashing.sha256(), file.getInputStream());
+          OutputStream out = Files.newOutputStream(contentFile)) {
+        fileLength = ByteStreams.copy(ByteStreams.limit(in, maxFileSize + 1), out);
+        contentHash = in.hash();
+      }
+      catch (IOException | RuntimeException ex) {
+        deleteFile(contentFile);
+        throw ex;
+      }
+      if(fileLength > maxFileSize) {
+        deleteFile(contentFile);
         throw new RuntimeException("Size of uploaded file is too large");
       }
-      // actually store only files which are not in memory yet
-      return findUploadByNameAndContent(filename, fileContent).map(TempFileUpload::getUuid).orElseGet(() -> {
+      final HashCode key = Hashing.combineOrdered(Arrays.asList(
+          Hashing.sha256().hashString(filename != null ? filename : "", StandardCharsets.UTF_8), contentHash));
+      final UUID[] res = new UUID[1];
+      final boolean[] added = new boolean[1];
+      final List<StoredUpload> evicted = new ArrayList<>();
+      sessions.compute(sessionId, (id, session) -> {
+        SessionUploads sessionUploads = session != null ? session : new SessionUploads();
+        synchronized (sessionUploads) {
+          // actually store only files which are not stored yet
+          UUID existing = sessionUploads.uploadsByKey.get(key);
+          if(existing != null) {
+            res[0] = existing;
+            return sessionUploads;
+          }
+          // remove the oldest entries of the same session to limit the session size
+          Iterator<StoredUpload> oldest = sessionUploads.uploads.values().iterator();
+          while(sessionUploads.totalSize + fileLength > maxContentSizePerSession && oldest.hasNext()) {
+            StoredUpload stored = oldest.next();
+            oldest.remove();
+            sessionUploads.uploadsByKey.remove(stored.key);
+            sessionUploads.totalSize -= stored.upload.getSize();
+            evicted.add(stored);
+          }
           TempFileUpload upload = new TempFileUpload();
           upload.setName(filename);
-          upload.setSize(fileLength);
+          upload.setSize((int) fileLength);
           upload.setContenttype(file.getContentType());
           upload.setUuid(UUID.randomUUID());
-          upload.setSessionId(getSessionId());
+          upload.setSessionId(sessionId);
           upload.setTimestamp(System.currentTimeMillis());
-          addUpload(upload, fileContent);
-          return upload.getUuid();
+          StoredUpload stored = new StoredUpload(upload, key, contentHash, contentFile);
+          sessionUploads.add(stored);
+          // registered while the session is locked, so that a concurrent removal always finds it
+          synchronized (leastRecentlyUsed) {
+            leastRecentlyUsed.put(upload.getUuid(), stored);
+            totalSize += fileLength;
+          }
+          scheduleExpiry(sessionId, upload.getUuid());
+          res[0] = upload.getUuid();
+          added[0] = true;
+          return sessionUploads;
         }
-      );
+      });
+      evicted.forEach(this::releaseUpload);
+      if(added[0]) {
+        enforceBudget();
+      }
+      else {
+        deleteFile(contentFile);
+        touch(res[0]);
+      }
+      return res[0];
     }
     catch (IOException e) {
       throw new RuntimeException("Failed to store temporary file.", e);
     }
   }
 
-  private Optional<TempFileUpload> findUploadByNameAndContent(String name, byte[] content) {
-    final String sessionId = getSessionId();
-    Map<UUID, byte[]> contentOfSession = uploadContent.getOrDefault(sessionId, new HashMap<>());
-    Map<UUID, TempFileUpload> metaDataOfSession = uploadMetadata.getOrDefault(sessionId, new HashMap<>());
-
-    return metaDataOfSession.values().stream()
-        .filter(upload -> upload.getName().equals(name) && upload.getSessionId().equals(sessionId))
-        .filter(upload -> {
-          byte[] uploadedContent = contentOfSession.get(upload.getUuid());
-          return ((uploadedContent == null && content == null)
-                  || (uploadedContent != null
-                  && content != null
-                  && Arrays.equals(uploadedContent, content)));
-                }
-             ).findFirst();
-  }
-
-  private void addUpload(TempFileUpload upload, byte[] fileContent) {
-    final String sessionId = getSessionId();
-    Map<UUID, byte[]> contentOfSession = uploadContent.computeIfAbsent(sessionId, k -> new HashMap<>());
-    Map<UUID, TempFileUpload> metaDataOfSession = uploadMetadata.computeIfAbsent(sessionId, k -> new HashMap<>());
-    List<UUID> uploadsOfSession = uploads.computeIfAbsent(sessionId, k -> new ArrayList<>());
-
-    // remove outdated entries regardless of session
-    long now = System.currentTimeMillis();
-    uploadMetadata.values().stream().map(Map::values).flatMap(Collection::stream)
-            .collect(Collectors.toList()).stream()
-            .filter(md -> md.getTimestamp() + MAX_DURATION_IN_SECONDS * 1000 < now).forEach(md -> {
-              final Map<UUID, byte[]> contentOfOtherSession = uploadContent.getOrDefault(md.getSessionId(), new HashMap<>());
-              contentOfOtherSession.remove(md.getUuid());
-              final Map<UUID, TempFileUpload> metaDataOfOtherSession = uploadMetadata.getOrDefault(md.getSessionId(), new HashMap<>());
-              metaDataOfOtherSession.remove(md.getUuid());
-              final List<UUID> uploadsOfOtherSession = uploads.getOrDefault(md.getSessionId(), new ArrayList<>());
-              uploadsOfOtherSession.remove(md.getUuid());
-            });
-    // remove entries of the same session to reduce session session size
-    int size = fileContent.length;
-    int currTotalSize = contentOfSession.values().stream().map(content -> content.length).reduce(0, Integer::sum);
-
-    while(size + currTotalSize > MAX_CONTENT_SIZE_PER_SESSION) {
-      UUID first = uploadsOfSession.get(0);
-      currTotalSize -= contentOfSession.get(first).length;
-      contentOfSession.remove(first);
-      metaDataOfSession.remove(first);
-      uploadsOfSession.remove(first);
-    }
-    // now add the recent file
-    uploadsOfSession.add(upload.getUuid());
-    metaDataOfSession.put(upload.getUuid(), upload);
-    contentOfSession.put(upload.getUuid(), fileContent);
-  }
-
-  public byte[] getContent(UUID uuid) {
-    Map<UUID, byte[]> contentMap = uploadContent.get(getSessionId());
-    if(contentMap==null) {
+  // returns a read-only view of the content, which shares the memory of the mapped temp file
+  public ByteBuffer getContent(UUID uuid) {
+    return getContent(getStoredUpload(uuid));
+  }
+
+  private ByteBuffer getContent(StoredUpload stored) {
+    try(FileChannel channel = FileChannel.open(stored.file, StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, stored.upload.getSize()).asReadOnlyBuffer();
+    }
+    catch (NoSuchFileException ex) {
+      // removed in the meantime
+      throw new RuntimeException("Content not found");
+    }
+    catch (IOException ex) {
+      throw new RuntimeException("Failed to read temporary file.", ex);
+    }
+  }
+
+  public String getContentAsString(UUID uuid) {
+    return StandardCharsets.UTF_8.decode(getContent(uuid)).toString();
+  }
+
+  // SHA-256 hash of the content, which was calculated while the upload was stored
+  public HashCode getContentHash(UUID uuid) {
+    return getStoredUpload(uuid).contentHash;
+  }
+
+  // the flames of an uploaded flame library, the content is scanned only once
+  public List<FlameLibraryEntry> getFlameLibraryEntries(UUID uuid) {
+    StoredUpload stored = getStoredUpload(uuid);
+    List<FlameLibraryEntry> res = stored.libraryEntries;
+    if(res == null) {
+      res = Collections.unmodifiableList(FlameLibraryIndexer.index(getContent(stored)));
+      stored.libraryEntries = res;
+    }
+    return res;
+  }
+
+  // returns a read-only view of a single flame of an uploaded flame library
+  public ByteBuffer getFlameLibraryEntryContent(UUID uuid, int index) {
+    List<FlameLibraryEntry> entries = getFlameLibraryEntries(uuid);
+    if(index < 0 || index >= entries.size()) {
+      throw new RuntimeException("Flame not found");
+    }
+    return FlameLibraryIndexer.slice(getContent(uuid), entries.get(index));
+  }
+
+  private StoredUpload getStoredUpload(UUID uuid) {
+    SessionUploads sessionUploads = sessions.get(getSessionId());
+    if(sessionUploads==null) {
       throw new RuntimeException("No content found");
     }
-    byte[] content = contentMap.get(uuid);
-    if(content==null) {
+    StoredUpload stored;
+    synchronized (sessionUploads) {
+      stored = sessionUploads.uploads.get(uuid);
+    }
+    if(stored==null) {
       throw new RuntimeException("Content not found");
     }
-    return content;
+    touch(uuid);
+    return stored;
   }
 
   public void removeTempFile(UUID uuid) {
-    final String sessionId = getSessionId();
-    List<UUID> uploadsOfSession = uploads.getOrDefault(sessionId, new ArrayList<>());
-    Map<UUID, byte[]> contentOfSession = uploadContent.getOrDefault(sessionId, new HashMap<>());
-    Map<UUID, TempFileUpload> metaDataOfSession = uploadMetadata.getOrDefault(sessionId, new HashMap<>());
-    uploadsOfSession.remove(uuid);
-    contentOfSession.remove(uuid);
-    metaDataOfSession.remove(uuid);
+    removeUpload(getSessionId(), uuid);
+  }
+
+  private void removeUpload(String sessionId, UUID uuid) {
+    final StoredUpload[] removed = new StoredUpload[1];
+    sessions.computeIfPresent(sessionId, (id, sessionUploads) -> {
+      synchronized (sessionUploads) {
+        removed[0] = sessionUploads.remove(uuid);
+        return sessionUploads.uploads.isEmpty() ? null : sessionUploads;
+      }
+    });
+    if(removed[0] != null) {
+      releaseUpload(removed[0]);
+    }
+  }
+
+  // frees the budget and the temp file of an upload which was removed from its session
+  private void releaseUpload(StoredUpload stored) {
+    synchronized (leastRecentlyUsed) {
+      if(leastRecentlyUsed.remove(stored.upload.getUuid()) != null) {
+        totalSize -= stored.upload.getSize();
+      }
+    }
+    deleteFile(stored.file);
+  }
+
+  private void touch(UUID uuid) {
+    synchronized (leastRecentlyUsed) {
+      leastRecentlyUsed.get(uuid);
+    }
+  }
+
+  private void enforceBudget() {
+    List<StoredUpload> victims = new ArrayList<>();
+    synchronized (leastRecentlyUsed) {
+      long freedSize = 0;
+      // the most recently used upload is never evicted
+      Iterator<StoredUpload> eldest = leastRecentlyUsed.values().iterator();
+      for(int i = leastRecentlyUsed.size() - 1; i > 0 && totalSize - freedSize > maxTotalSize; i--) {
+        StoredUpload victim = eldest.next();
+        victims.add(victim);
+        freedSize += victim.upload.getSize();
+      }
+    }
+    // removing an upload frees its budget
+    for(StoredUpload victim: victims) {
+      removeUpload(victim.upload.getSessionId(), victim.upload.getUuid());
+    }
+  }
+
+  private void scheduleExpiry(String sessionId, UUID uuid) {
+    // the current tick may be almost over, so wait one tick more than the expiry duration; this is the slot
+    // of the current tick, which is drained again only after a full turn of the wheel
+    long expiryTick = currentTick.get() + expiryWheel.length;
+    expiryWheel[(int) (expiryTick % expiryWheel.length)].add(new ExpiryRef(sessionId, uuid));
+  }
+
+  private void advanceExpiryWheel() {
+    try {
+      long tick = currentTick.incrementAndGet();
+      Queue<ExpiryRef> slot = expiryWheel[(int) (tick % expiryWheel.length)];
+      ExpiryRef ref;
+      while((ref = slot.poll()) != null) {
+        removeUpload(ref.sessionId, ref.uuid);
+      }
+    }
+    catch (Exception ex) {
+      log.error("Error removing expired uploads", ex);
+    }
+  }
+
+  private static Path initDir(String dir) throws IOException {
+    if(dir == null || dir.isEmpty()) {
+      return Files.createTempDirectory("swan-uploads");
+    }
+    Path res = Paths.get(dir);
+    Files.createDirectories(res);
+    // remove the files of a previous run
+    try(DirectoryStream<Path> files = Files.newDirectoryStream(res, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+      files.forEach(TempFileUploadRepository::deleteFile);
+    }
+    return res;
+  }
+
+  private static void deleteFile(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    }
+    catch (IOException ex) {
+      // e.g. on Windows, while the file is still mapped
+      log.debug("Could not delete temp file {}", file, ex);
+      file.toFile().deleteOnExit();
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    expiryTimer.shutdownNow();
+    sessions.values().forEach(sessionUploads -> {
+      synchronized (sessionUploads) {
+        sessionUploads.uploads.values().forEach(stored -> deleteFile(stored.file));
+      }
+    });
+    sessions.clear();
   }
 }
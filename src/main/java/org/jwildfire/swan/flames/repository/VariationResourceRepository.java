@@ -0,0 +1,225 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jwildfire.swan.flames.repository;
+
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+import org.jwildfire.base.Tools;
+import org.jwildfire.swan.flames.model.flame.Flame;
+import org.jwildfire.swan.flames.model.flame.VariationResource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed store of the binary variation resources (meshes, images, ...), keyed by their SHA-256
+ * hash. Flames sent to clients carry only the hash of large resources, and clients download (and cache) the
+ * raw bytes separately. The store is local to the server instance, the total size is bounded and the least
+ * recently used entries are removed first. So flames which are kept longer (caches, pools, files) are checked
+ * by containsAll before they are handed out, and persisted flames keep their resources inline (see
+ * internalize and externalize). Small resources (e.g. formulas) are not stored at all.
+ */
+@Component
+@Slf4j
+public class VariationResourceRepository {
+  private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+  private final String directory;
+  private final long maxSizeInBytes;
+  private final int inlineThreshold;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private volatile Path storeDir;
+  private long totalSize;
+
+  public VariationResourceRepository(@Value("${swan.resourceStore.dir:}") String directory,
+                                     @Value("${swan.resourceStore.maxSizeInBytes:268435456}") long maxSizeInBytes,
+                                     @Value("${swan.resourceStore.inlineThreshold:16384}") int inlineThreshold) {
+    this.directory = directory;
+    this.maxSizeInBytes = maxSizeInBytes;
+    this.inlineThreshold = inlineThreshold;
+  }
+
+  // a store which keeps all resources inline, e.g. for flames which are persisted (like the example index)
+  public static VariationResourceRepository inlineOnly() {
+    return new VariationResourceRepository("", 0L, Integer.MAX_VALUE);
+  }
+
+  public boolean isInline(byte[] content) {
+    return content == null || content.length <= inlineThreshold;
+  }
+
+  public static boolean isValidHash(String hash) {
+    return hash != null && HASH_PATTERN.matcher(hash).matches();
+  }
+
+  public String put(byte[] content) {
+    String hash = Hashing.sha256().hashBytes(content).toString();
+    Entry entry = entries.get(hash);
+    if (entry != null) {
+      entry.touch();
+      return hash;
+    }
+    synchronized (this) {
+      if (!entries.containsKey(hash)) {
+        Path file = getStoreDir().resolve(hash);
+        try {
+          Path tmpFile = Files.createTempFile(getStoreDir(), hash, ".tmp");
+          Files.write(tmpFile, content);
+          Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+          throw new UncheckedIOException(ex);
+        }
+        entries.put(hash, new Entry(file, content.length));
+        totalSize += content.length;
+        evict(hash);
+      }
+    }
+    return hash;
+  }
+
+  public Optional<Path> getFile(String hash) {
+    Entry entry = isValidHash(hash) ? entries.get(hash) : null;
+    if (entry == null) {
+      return Optional.empty();
+    }
+    entry.touch();
+    return Optional.of(entry.file);
+  }
+
+  public boolean contains(String hash) {
+    return getFile(hash).isPresent();
+  }
+
+  // true if the content of all resources of the flame which are referenced by hash is available
+  public boolean containsAll(Flame flame) {
+    return getResources(flame)
+        .filter(resource -> resource.getStringValue() == null && resource.getHash() != null)
+        .allMatch(resource -> contains(resource.getHash()));
+  }
+
+  // replaces the inline content of large binary resources by their hash, e.g. for flames which are sent to clients
+  public void externalize(Flame flame) {
+    getResources(flame)
+        .filter(resource -> resource.getResourceType().isBinary() && resource.getStringValue() != null
+            && resource.getStringValue().length() / 2 > inlineThreshold)
+        .forEach(resource -> {
+          resource.setHash(put(Tools.hexStringToByteArray(resource.getStringValue())));
+          resource.setStringValue(null);
+        });
+  }
+
+  // replaces the hash of large binary resources by the inline content, e.g. for flames which are persisted, returns
+  // false if the content of a resource is not available (anymore)
+  public boolean internalize(Flame flame) {
+    return getResources(flame)
+        .filter(resource -> resource.getStringValue() == null && resource.getHash() != null)
+        .allMatch(resource -> getContent(resource.getHash())
+            .map(content -> {
+              resource.setStringValue(Tools.byteArrayToHexString(content));
+              resource.setHash(null);
+              return true;
+            })
+            .orElse(false));
+  }
+
+  private static Stream<VariationResource> getResources(Flame flame) {
+    return flame.getLayers().stream()
+        .flatMap(layer -> Stream.concat(layer.getXforms().stream(), layer.getFinalXforms().stream()))
+        .flatMap(xForm -> xForm.getVariations().stream())
+        .flatMap(variation -> variation.getResources().stream());
+  }
+
+  public Optional<byte[]> getContent(String hash) {
+    return getFile(hash).map(file -> {
+      try {
+        return Files.readAllBytes(file);
+      } catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+    });
+  }
+
+  // removes the least recently used entries until the size limit is met, but never the entry just added
+  private void evict(String keepHash) {
+    if (totalSize <= maxSizeInBytes) {
+      return;
+    }
+    List<Map.Entry<String, Entry>> candidates = entries.entrySet().stream()
+        .filter(e -> !e.getKey().equals(keepHash))
+        .sorted(Comparator.comparingLong(e -> e.getValue().lastAccess))
+        .collect(Collectors.toList());
+    for (Map.Entry<String, Entry> candidate : candidates) {
+      if (totalSize <= maxSizeInBytes) {
+        break;
+      }
+      entries.remove(candidate.getKey());
+      totalSize -= candidate.getValue().size;
+      try {
+        Files.deleteIfExists(candidate.getValue().file);
+      } catch (IOException ex) {
+        log.warn("Error deleting resource {}", candidate.getValue().file, ex);
+      }
+    }
+  }
+
+  private Path getStoreDir() {
+    if (storeDir == null) {
+      synchronized (this) {
+        if (storeDir == null) {
+          try {
+            Path dir = directory.isBlank() ? Files.createTempDirectory("swan-resources") : Paths.get(directory);
+            Files.createDirectories(dir);
+            storeDir = dir;
+          } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+          }
+        }
+      }
+    }
+    return storeDir;
+  }
+
+  private static class Entry {
+    private final Path file;
+    private final long size;
+    private volatile long lastAccess;
+
+    Entry(Path file, long size) {
+      this.file = file;
+      this.size = size;
+      touch();
+    }
+
+    void touch() {
+      lastAccess = System.nanoTime();
+    }
+  }
+}
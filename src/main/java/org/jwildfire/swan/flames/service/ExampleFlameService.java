@@ -0,0 +1,54 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jwildfire.swan.flames.service;
+
+import com.google.common.io.Resources;
+import org.jwildfire.swan.flames.model.flame.Flame;
+import org.jwildfire.swan.flames.repository.ExampleIndexRepository;
+import org.jwildfire.swan.flames.repository.VariationResourceRepository;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+// Provides the example flames, from the prebuilt index or (if not indexed) by parsing the flame file. The index
+// keeps all resources inline, large ones are replaced by their hash, like in all flames sent to clients
+@Service
+public class ExampleFlameService {
+  private final ExampleIndexRepository exampleIndexRepository;
+  private final FlamesService flamesService;
+  private final VariationResourceRepository resourceRepository;
+
+  public ExampleFlameService(ExampleIndexRepository exampleIndexRepository, FlamesService flamesService,
+                             VariationResourceRepository resourceRepository) {
+    this.exampleIndexRepository = exampleIndexRepository;
+    this.flamesService = flamesService;
+    this.resourceRepository = resourceRepository;
+  }
+
+  public Flame getExampleFlame(String name) throws IOException {
+    Optional<Flame> indexedFlame = exampleIndexRepository.getFlame(name);
+    if(indexedFlame.isPresent()) {
+      resourceRepository.externalize(indexedFlame.get());
+      return indexedFlame.get();
+    }
+    URL url = Resources.getResource(String.format("examples/%s.flame", name));
+    return flamesService.parseFlame(Resources.toString(url, StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,203 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+
+package org.jwildfire.swan.flames.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.jwildfire.swan.flames.model.gallery.ExampleMetaData;
+import org.jwildfire.swan.flames.model.gallery.ExampleQuery;
+import org.jwildfire.swan.flames.model.gallery.ExampleQueryResult;
+import org.jwildfire.swan.flames.model.gallery.ExampleTag;
+import org.jwildfire.swan.flames.repository.ExampleIndexRepository;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Answers gallery queries using an inverted index over the tags and title words of the example meta
+ * data. The index is built once, as the examples do not change at runtime. Examples are referred to by
+ * their position in the list of examples, so matching sets are simple BitSets.
+ */
+@Service
+@Slf4j
+public class ExampleQueryService {
+  private static final int MAX_PAGE_SIZE = 100;
+
+  private final ExampleIndexRepository exampleIndexRepository;
+  private volatile Index index;
+
+  private static class Index {
+    final List<ExampleMetaData> examples = new ArrayList<>();
+    final Map<String, BitSet> tags = new HashMap<>();
+    final Map<String, BitSet> titleWords = new HashMap<>();
+    int[] byModified;
+    int[] byTitle;
+  }
+
+  public ExampleQueryService(ExampleIndexRepository exampleIndexRepository) {
+    this.exampleIndexRepository = exampleIndexRepository;
+  }
+
+  public ExampleQueryResult query(ExampleQuery query) {
+    Index idx = getIndex();
+    BitSet matches = new BitSet();
+    matches.set(0, idx.examples.size());
+    for (String tag : query.getTags()) {
+      matches.and(idx.tags.getOrDefault(normalize(tag), new BitSet()));
+    }
+    for (String word : splitWords(query.getTitle())) {
+      BitSet wordMatches = new BitSet();
+      idx.titleWords.forEach((titleWord, examples) -> {
+        if (titleWord.startsWith(word)) {
+          wordMatches.or(examples);
+        }
+      });
+      matches.and(wordMatches);
+    }
+
+    int pageSize = Math.max(1, Math.min(query.getPageSize(), MAX_PAGE_SIZE));
+    int page = Math.max(0, query.getPage());
+    int first = page * pageSize;
+    List<ExampleMetaData> pageExamples = new ArrayList<>(pageSize);
+    int[] order = getOrder(idx, query, matches);
+    int matchIdx = 0;
+    for (int i = 0; i < order.length && pageExamples.size() < pageSize; i++) {
+      if (matches.get(order[i])) {
+        if (matchIdx++ >= first) {
+          pageExamples.add(idx.examples.get(order[i]));
+        }
+      }
+    }
+    return new ExampleQueryResult(pageExamples, matches.cardinality(), page, pageSize);
+  }
+
+  public List<ExampleTag> getTags() {
+    return getIndex().tags.entrySet().stream()
+        .map(entry -> new ExampleTag(entry.getKey(), entry.getValue().cardinality()))
+        .sorted(Comparator.comparing(ExampleTag::getCount).reversed().thenComparing(ExampleTag::getName))
+        .collect(Collectors.toList());
+  }
+
+  private int[] getOrder(Index idx, ExampleQuery query, BitSet matches) {
+    switch (query.getSortOrder()) {
+      case OLDEST_FIRST:
+        return idx.byModified;
+      case TITLE:
+        return idx.byTitle;
+      case RANDOM: {
+        int[] res = matches.stream().toArray();
+        Random random = new Random(query.getSeed());
+        for (int i = res.length - 1; i > 0; i--) {
+          int j = random.nextInt(i + 1);
+          int tmp = res[i];
+          res[i] = res[j];
+          res[j] = tmp;
+        }
+        return res;
+      }
+      case NEWEST_FIRST:
+      default: {
+        int[] res = new int[idx.byModified.length];
+        for (int i = 0; i < res.length; i++) {
+          res[i] = idx.byModified[res.length - 1 - i];
+        }
+        return res;
+      }
+    }
+  }
+
+  private Index getIndex() {
+    if (index == null) {
+      synchronized (this) {
+        if (index == null) {
+          index = buildIndex();
+        }
+      }
+    }
+    return index;
+  }
+
+  private Index buildIndex() {
+    ObjectMapper objectMapper = ExampleIndexRepository.createObjectMapper();
+    Index res = new Index();
+    for (String name : exampleIndexRepository.getExampleNames()) {
+      try {
+        String metaDataJson = exampleIndexRepository.getMetaData(name).orElse(null);
+        if (metaDataJson != null) {
+          ExampleMetaData metaData = objectMapper.readValue(metaDataJson, ExampleMetaData.class);
+          metaData.setName(name);
+          res.examples.add(metaData);
+        }
+      } catch (IOException ex) {
+        log.error(String.format("Error reading meta data of example %s", name), ex);
+      }
+    }
+    for (int i = 0; i < res.examples.size(); i++) {
+      ExampleMetaData example = res.examples.get(i);
+      for (String tag : example.getTags()) {
+        res.tags.computeIfAbsent(normalize(tag), k -> new BitSet()).set(i);
+      }
+      for (String word : splitWords(example.getTitle())) {
+        res.titleWords.computeIfAbsent(word, k -> new BitSet()).set(i);
+      }
+    }
+    List<Instant> modified = res.examples.stream().map(example -> parseTimestamp(example.getModified())).collect(Collectors.toList());
+    res.byModified = IntStream.range(0, res.examples.size()).boxed()
+        .sorted(Comparator.comparing((Integer i) -> modified.get(i)).thenComparing(i -> res.examples.get(i).getName()))
+        .mapToInt(Integer::intValue).toArray();
+    res.byTitle = IntStream.range(0, res.examples.size()).boxed()
+        .sorted(Comparator.comparing((Integer i) -> normalize(res.examples.get(i).getTitle())).thenComparing(i -> res.examples.get(i).getName()))
+        .mapToInt(Integer::intValue).toArray();
+    log.info("Indexed {} examples with {} tags", res.examples.size(), res.tags.size());
+    return res;
+  }
+
+  private static Instant parseTimestamp(String timestamp) {
+    try {
+      return timestamp != null ? Instant.parse(timestamp) : Instant.EPOCH;
+    } catch (DateTimeParseException ex) {
+      return Instant.EPOCH;
+    }
+  }
+
+  private static String normalize(String s) {
+    return s != null ? s.trim().toLowerCase(Locale.ROOT) : "";
+  }
+
+  private static List<String> splitWords(String s) {
+    List<String> res = new ArrayList<>();
+    for (String word : normalize(s).split("[^\\p{L}\\p{N}]+")) {
+      if (!word.isEmpty()) {
+        res.add(word);
+      }
+    }
+    return res;
+  }
+}
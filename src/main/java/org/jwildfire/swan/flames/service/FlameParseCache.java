@@ -0,0 +1,156 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+
+package org.jwildfire.swan.flames.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.jwildfire.swan.flames.model.flame.Flame;
+import org.jwildfire.swan.flames.model.flame.FlameParam;
+import org.jwildfire.swan.flames.model.flame.Layer;
+import org.jwildfire.swan.flames.model.flame.Variation;
+import org.jwildfire.swan.flames.model.flame.VariationParam;
+import org.jwildfire.swan.flames.model.flame.VariationResource;
+import org.jwildfire.swan.flames.model.flame.XForm;
+import org.jwildfire.swan.flames.repository.VariationResourceRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Caches parsed and mapped flames, keyed by the SHA-256 hash of the flame-xml, so that loading the same
+ * example or file again does not run the whole reader/transformer/mapper-pipeline. The cache is bounded
+ * by the estimated heap size of the cached flames and evicts the least recently used entries first.
+ * Only copies of the cached flames are handed out, so callers may modify the result. A flame which refers
+ * to resources which were removed from the resource store meanwhile is parsed again (which stores them again).
+ */
+@Component
+public class FlameParseCache {
+  // rough estimates of the heap size of the model objects, in bytes
+  private static final int FLAME_SIZE = 512;
+  private static final int LAYER_SIZE = 96;
+  private static final int XFORM_SIZE = 320;
+  private static final int XFORM_PARAM_COUNT = 48;
+  private static final int FLAME_PARAM_SIZE = 56;
+  private static final int VARIATION_SIZE = 128;
+  private static final int VARIATION_PARAM_SIZE = 32;
+  private static final int VARIATION_RESOURCE_SIZE = 48;
+  private static final int STRING_SIZE = 48;
+
+  private final Cache<HashCode, Flame> cache;
+  private final VariationResourceRepository resourceRepository;
+
+  public FlameParseCache(VariationResourceRepository resourceRepository,
+                         @Value("${swan.parseCache.maxSizeInBytes:33554432}") long maxSizeInBytes) {
+    this.resourceRepository = resourceRepository;
+    this.cache = CacheBuilder.newBuilder()
+        .maximumWeight(maxSizeInBytes)
+        .weigher((HashCode key, Flame flame) -> estimateSize(flame))
+        .recordStats()
+        .build();
+  }
+
+  public Flame get(String flameXml, Function<String, Flame> parser) {
+    return get(Hashing.sha256().hashString(flameXml, StandardCharsets.UTF_8), () -> flameXml, parser);
+  }
+
+  // key must be the SHA-256 hash of the UTF-8 encoded flame-xml, which is only read if the flame is not cached
+  public Flame get(HashCode key, Supplier<String> flameXml, Function<String, Flame> parser) {
+    Flame cached = cache.getIfPresent(key);
+    if (cached != null && !resourceRepository.containsAll(cached)) {
+      cache.invalidate(key);
+    }
+    try {
+      return cache.get(key, () -> parser.apply(flameXml.get())).makeCopy();
+    } catch (ExecutionException | UncheckedExecutionException ex) {
+      Throwable cause = ex.getCause();
+      throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+    }
+  }
+
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  public long getHitCount() {
+    return cache.stats().hitCount();
+  }
+
+  public long getMissCount() {
+    return cache.stats().missCount();
+  }
+
+  public long getEvictionCount() {
+    return cache.stats().evictionCount();
+  }
+
+  public long getSize() {
+    return cache.size();
+  }
+
+  static int estimateSize(Flame flame) {
+    long size = FLAME_SIZE + 7 * FLAME_PARAM_SIZE;
+    for (Layer layer : flame.getLayers()) {
+      size += LAYER_SIZE + 16 + (long) layer.getGradient().length * 4;
+      for (XForm xForm : layer.getXforms()) {
+        size += estimateSize(xForm);
+      }
+      for (XForm xForm : layer.getFinalXforms()) {
+        size += estimateSize(xForm);
+      }
+    }
+    return (int) Math.min(size, Integer.MAX_VALUE);
+  }
+
+  private static long estimateSize(XForm xForm) {
+    long size = XFORM_SIZE + XFORM_PARAM_COUNT * FLAME_PARAM_SIZE + 16 + xForm.getModifiedWeights().length * 8L;
+    for (Variation variation : xForm.getVariations()) {
+      size += VARIATION_SIZE + STRING_SIZE + estimateSize(variation.getAmount());
+      for (VariationParam param : variation.getParams()) {
+        size += VARIATION_PARAM_SIZE + STRING_SIZE + estimateSize(param.getValue());
+      }
+      for (VariationResource resource : variation.getResources()) {
+        size += VARIATION_RESOURCE_SIZE + STRING_SIZE;
+        if (resource.getStringValue() != null) {
+          size += STRING_SIZE + resource.getStringValue().length();
+        }
+      }
+    }
+    return size;
+  }
+
+  private static long estimateSize(FlameParam param) {
+    long size = FLAME_PARAM_SIZE;
+    if (param.getCurve() != null) {
+      size += 96;
+      if (param.getCurve().getX() != null) {
+        size += 16 + param.getCurve().getX().length * 4L;
+      }
+      if (param.getCurve().getY() != null) {
+        size += 16 + param.getCurve().getY().length * 8L;
+      }
+    }
+    return size;
+  }
+}
@@ -0,0 +1,345 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jwildfire.swan.flames.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.jwildfire.create.tina.io.FlameWriter;
+import org.jwildfire.create.tina.palette.RGBPalette;
+import org.jwildfire.swan.flames.mapper.FlameMapper;
+import org.jwildfire.swan.flames.mapper.LayerMapper;
+import org.jwildfire.swan.flames.mapper.XFormAffineParams;
+import org.jwildfire.swan.flames.mapper.XFormMapper;
+import org.jwildfire.swan.flames.model.flame.Flame;
+import org.jwildfire.swan.flames.model.flame.FlameParam;
+import org.jwildfire.swan.flames.model.flame.FlameParamDataType;
+import org.jwildfire.swan.flames.model.flame.FlameParamType;
+import org.jwildfire.swan.flames.model.flame.FlamePatch;
+import org.jwildfire.swan.flames.model.flame.Layer;
+import org.jwildfire.swan.flames.model.flame.Variation;
+import org.jwildfire.swan.flames.model.flame.VariationParam;
+import org.jwildfire.swan.flames.model.flame.XForm;
+import org.jwildfire.swan.flames.repository.VariationResourceRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps flames which are edited by a client on the server, together with their mapped JWildfire-counterpart.
+ * Changes are sent as patches and only the touched xforms (or the touched gradient) are mapped again, so
+ * the costs of an edit depend on the size of the change rather than on the size of the flame.
+ * Sessions expire when they were not accessed for a while.
+ */
+@Service
+public class FlameSessionService {
+  private final FlameMapper flameMapper;
+  private final XFormMapper xFormMapper;
+  private final FlamesService flamesService;
+  private final VariationResourceRepository resourceRepository;
+  private final Cache<UUID, FlameSession> sessions;
+
+  public FlameSessionService(FlameMapper flameMapper, XFormMapper xFormMapper, FlamesService flamesService,
+                             VariationResourceRepository resourceRepository,
+                             @Value("${swan.flameSession.expiryInMinutes:30}") long expiryInMinutes,
+                             @Value("${swan.flameSession.maxCount:1000}") long maxCount) {
+    this.flameMapper = flameMapper;
+    this.xFormMapper = xFormMapper;
+    this.flamesService = flamesService;
+    this.resourceRepository = resourceRepository;
+    this.sessions = CacheBuilder.newBuilder()
+        .expireAfterAccess(expiryInMinutes, TimeUnit.MINUTES)
+        .maximumSize(maxCount)
+        .build();
+  }
+
+  private static class FlameSession {
+    private final Flame flame;
+    private final org.jwildfire.create.tina.base.Flame jwfFlame;
+
+    FlameSession(Flame flame, org.jwildfire.create.tina.base.Flame jwfFlame) {
+      this.flame = flame;
+      this.jwfFlame = jwfFlame;
+    }
+  }
+
+  public UUID openSession(Flame flame) {
+    Flame sessionFlame = flame.makeCopy();
+    UUID id = UUID.randomUUID();
+    sessions.put(id, new FlameSession(sessionFlame, flameMapper.mapToJwildfire(sessionFlame)));
+    return id;
+  }
+
+  public void closeSession(UUID id) {
+    sessions.invalidate(id);
+  }
+
+  public Flame getFlame(UUID id) {
+    FlameSession session = getSession(id);
+    Flame res;
+    synchronized (session) {
+      res = session.flame.makeCopy();
+    }
+    // clients may have sent large resources inline
+    resourceRepository.externalize(res);
+    return res;
+  }
+
+  public String getFlameXml(UUID id) {
+    FlameSession session = getSession(id);
+    synchronized (session) {
+      try {
+        return new FlameWriter().getFlameXML(session.jwfFlame);
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  // all patches are applied or none: they are applied to working copies of the touched layers and all changes of
+  // the JWildfire-flame are prepared (i.e. mapped) first, only when all patches succeeded both are committed
+  public void applyPatches(UUID id, List<FlamePatch> patches) {
+    FlameSession session = getSession(id);
+    synchronized (session) {
+      PatchTransaction tx = new PatchTransaction(session);
+      patches.forEach(patch -> applyPatch(tx, patch));
+      tx.commit();
+    }
+  }
+
+  private class PatchTransaction {
+    private final FlameSession session;
+    private final Map<Integer, Layer> workingLayers = new HashMap<>();
+    private final List<Runnable> jwfChanges = new ArrayList<>();
+    private final Set<Integer> changedXFormCounts = new HashSet<>();
+
+    PatchTransaction(FlameSession session) {
+      this.session = session;
+    }
+
+    // shallow copy of the layer, xforms must be copied before they are changed
+    Layer getLayer(int layerIndex) {
+      return workingLayers.computeIfAbsent(layerIndex, idx -> {
+        Layer layer = FlameSessionService.this.getLayer(session.flame, idx);
+        Layer res = new Layer(layer.getWeight(), layer.getDensity(), layer.getGradient());
+        res.getXforms().addAll(layer.getXforms());
+        res.getFinalXforms().addAll(layer.getFinalXforms());
+        return res;
+      });
+    }
+
+    void commit() {
+      jwfChanges.forEach(Runnable::run);
+      workingLayers.forEach((idx, layer) -> session.flame.getLayers().set(idx, layer));
+      changedXFormCounts.forEach(idx -> updateModifiedWeights(workingLayers.get(idx), session.jwfFlame.getLayers().get(idx)));
+    }
+  }
+
+  // replaces the gradient of the given layer by a random one and returns the new gradient
+  public int[] generateRandomGradient(UUID id, int layerIndex) {
+    RGBPalette palette = flamesService.generateRandomGradient();
+    FlameSession session = getSession(id);
+    synchronized (session) {
+      Layer layer = getLayer(session.flame, layerIndex);
+      layer.setGradient(LayerMapper.mapGradientFromJwildfire(palette));
+      session.jwfFlame.getLayers().get(layerIndex).setPalette(palette);
+      return layer.getGradient().clone();
+    }
+  }
+
+  private FlameSession getSession(UUID id) {
+    FlameSession session = sessions.getIfPresent(id);
+    if(session==null) {
+      throw new IllegalArgumentException(String.format("Unknown or expired flame session %s", id));
+    }
+    return session;
+  }
+
+  private void applyPatch(PatchTransaction tx, FlamePatch patch) {
+    Layer layer = tx.getLayer(patch.getLayerIndex());
+    org.jwildfire.create.tina.base.Layer jwfLayer = tx.session.jwfFlame.getLayers().get(patch.getLayerIndex());
+    List<XForm> xForms = patch.isFinalXForm() ? layer.getFinalXforms() : layer.getXforms();
+    List<org.jwildfire.create.tina.base.XForm> jwfXForms = patch.isFinalXForm() ? jwfLayer.getFinalXForms() : jwfLayer.getXForms();
+    switch(patch.getType()) {
+      case SET_XFORM_PARAM: {
+        int idx = patch.getXformIndex();
+        XForm xForm = getXForm(xForms, idx).makeCopy();
+        setXFormParam(xForm, patch);
+        xForms.set(idx, xForm);
+        org.jwildfire.create.tina.base.XForm jwfXForm = xFormMapper.mapToJwildfire(layer, xForm);
+        tx.jwfChanges.add(() -> jwfXForms.set(idx, jwfXForm));
+      }
+      break;
+      case REPLACE_XFORM: {
+        int idx = patch.getXformIndex();
+        getXForm(xForms, idx);
+        XForm xForm = requireXForm(patch).makeCopy();
+        xForms.set(idx, xForm);
+        org.jwildfire.create.tina.base.XForm jwfXForm = xFormMapper.mapToJwildfire(layer, xForm);
+        tx.jwfChanges.add(() -> jwfXForms.set(idx, jwfXForm));
+      }
+      break;
+      case ADD_XFORM: {
+        XForm xForm = requireXForm(patch).makeCopy();
+        if(!patch.isFinalXForm()) {
+          // the new xform is reachable from all existing xforms
+          int idx = xForms.size();
+          for(int i=0;i<xForms.size();i++) {
+            double[] weights = xForms.get(i).getModifiedWeights();
+            if(weights.length==idx) {
+              weights = Arrays.copyOf(weights, idx + 1);
+              weights[idx] = 1.0;
+              XForm other = xForms.get(i).makeCopy();
+              other.setModifiedWeights(weights);
+              xForms.set(i, other);
+            }
+          }
+          if(xForm.getModifiedWeights().length==0) {
+            double[] weights = new double[idx + 1];
+            Arrays.fill(weights, 1.0);
+            xForm.setModifiedWeights(weights);
+          }
+          tx.changedXFormCounts.add(patch.getLayerIndex());
+        }
+        xForms.add(xForm);
+        org.jwildfire.create.tina.base.XForm jwfXForm = xFormMapper.mapToJwildfire(layer, xForm);
+        tx.jwfChanges.add(() -> jwfXForms.add(jwfXForm));
+      }
+      break;
+      case REMOVE_XFORM: {
+        int idx = patch.getXformIndex();
+        getXForm(xForms, idx);
+        xForms.remove(idx);
+        tx.jwfChanges.add(() -> jwfXForms.remove(idx));
+        if(!patch.isFinalXForm()) {
+          for(int i=0;i<xForms.size();i++) {
+            double[] weights = xForms.get(i).getModifiedWeights();
+            if(idx<weights.length) {
+              double[] newWeights = new double[weights.length - 1];
+              System.arraycopy(weights, 0, newWeights, 0, idx);
+              System.arraycopy(weights, idx + 1, newWeights, idx, weights.length - idx - 1);
+              XForm other = xForms.get(i).makeCopy();
+              other.setModifiedWeights(newWeights);
+              xForms.set(i, other);
+            }
+          }
+          tx.changedXFormCounts.add(patch.getLayerIndex());
+        }
+      }
+      break;
+      case SET_GRADIENT: {
+        if(patch.getGradient()==null) {
+          throw new IllegalArgumentException("Missing gradient");
+        }
+        layer.setGradient(patch.getGradient().clone());
+        RGBPalette palette = LayerMapper.mapGradientToJwildfire(layer.getGradient());
+        tx.jwfChanges.add(() -> jwfLayer.setPalette(palette));
+      }
+      break;
+      default:
+        throw new IllegalArgumentException(String.format("Unsupported patch type %s", patch.getType()));
+    }
+  }
+
+  // the xaos-weights are the only property of the untouched xforms which depends on the number of xforms
+  private void updateModifiedWeights(Layer layer, org.jwildfire.create.tina.base.Layer jwfLayer) {
+    for(int i=0;i<layer.getXforms().size();i++) {
+      xFormMapper.mapModifiedWeightsToJwildfire(layer, layer.getXforms().get(i), jwfLayer.getXForms().get(i));
+    }
+    for(int i=0;i<layer.getFinalXforms().size();i++) {
+      xFormMapper.mapModifiedWeightsToJwildfire(layer, layer.getFinalXforms().get(i), jwfLayer.getFinalXForms().get(i));
+    }
+  }
+
+  private void setXFormParam(XForm xForm, FlamePatch patch) {
+    String paramName = patch.getParamName();
+    FlameParam value = patch.getValue();
+    if(paramName==null || value==null) {
+      throw new IllegalArgumentException("Missing param name or value");
+    }
+    if(patch.getVariationIndex()!=null) {
+      if(patch.getVariationIndex()<0 || patch.getVariationIndex()>=xForm.getVariations().size()) {
+        throw new IllegalArgumentException(String.format("Invalid variation index %d", patch.getVariationIndex()));
+      }
+      Variation variation = xForm.getVariations().get(patch.getVariationIndex());
+      if("amount".equals(paramName)) {
+        variation.setAmount(value);
+        return;
+      }
+      VariationParam param = variation.getParams().stream()
+          .filter(p -> paramName.equals(p.getName()))
+          .findFirst()
+          .orElseThrow(() -> new IllegalArgumentException(String.format("Unknown param %s of variation %s", paramName, variation.getName())));
+      param.setValue(value);
+      return;
+    }
+    switch(paramName) {
+      case "weight":
+        xForm.setWeight(getScalarValue(value));
+        break;
+      case "color":
+        xForm.setColor(getScalarValue(value));
+        break;
+      case "colorSymmetry":
+        xForm.setColorSymmetry(getScalarValue(value));
+        break;
+      default: {
+        int idx = XFormAffineParams.indexOf(paramName);
+        if(idx<0) {
+          throw new IllegalArgumentException(String.format("Unknown xform param %s", paramName));
+        }
+        XFormAffineParams.set(xForm, idx, value);
+      }
+    }
+  }
+
+  private double getScalarValue(FlameParam value) {
+    if(value.getParamType()!=FlameParamType.SCALAR) {
+      throw new IllegalArgumentException("Scalar value expected");
+    }
+    return value.getDataType()==FlameParamDataType.INT ? value.getIntScalar() : value.getFloatScalar();
+  }
+
+  private XForm requireXForm(FlamePatch patch) {
+    if(patch.getXform()==null) {
+      throw new IllegalArgumentException("Missing xform");
+    }
+    return patch.getXform();
+  }
+
+  private Layer getLayer(Flame flame, int layerIndex) {
+    if(layerIndex<0 || layerIndex>=flame.getLayers().size()) {
+      throw new IllegalArgumentException(String.format("Invalid layer index %d", layerIndex));
+    }
+    return flame.getLayers().get(layerIndex);
+  }
+
+  private XForm getXForm(List<XForm> xForms, int xFormIndex) {
+    if(xFormIndex<0 || xFormIndex>=xForms.size()) {
+      throw new IllegalArgumentException(String.format("Invalid xform index %d", xFormIndex));
+    }
+    return xForms.get(xFormIndex);
+  }
+}
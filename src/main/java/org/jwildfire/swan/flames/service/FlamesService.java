@@ -17,37 +17,52 @@
 
 package org.jwildfire.swan.flames.service;
 
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import org.jwildfire.base.Prefs;
 import org.jwildfire.base.Tools;
-import org.jwildfire.cli.CliUtils;
 import org.jwildfire.create.tina.io.FlameReader;
 import org.jwildfire.create.tina.io.FlameWriter;
 import org.jwildfire.create.tina.palette.RGBPalette;
-import org.jwildfire.create.tina.randomflame.*;
+import org.jwildfire.create.tina.random.AbstractRandomGenerator;
 import org.jwildfire.create.tina.randomgradient.AllRandomGradientGenerator;
 import org.jwildfire.create.tina.randomgradient.RandomGradientGenerator;
 import org.jwildfire.create.tina.randomgradient.RandomGradientGeneratorList;
-import org.jwildfire.create.tina.randomsymmetry.RandomSymmetryGeneratorList;
-import org.jwildfire.create.tina.randomweightingfield.RandomWeightingFieldGeneratorList;
-import org.jwildfire.create.tina.variation.VariationFuncList;
 import org.jwildfire.swan.flames.mapper.FlameMapper;
+import org.jwildfire.swan.flames.mapper.FlameOptimizer;
+import org.jwildfire.swan.flames.mapper.LayerMapper;
 import org.jwildfire.swan.flames.model.flame.Flame;
+import org.jwildfire.swan.flames.model.flame.OptimizedFlame;
 import org.jwildfire.swan.flames.model.flame.RandomFlame;
+import org.jwildfire.swan.flames.model.upload.FlameLibraryEntry;
+import org.jwildfire.swan.flames.repository.FlameLibraryIndexer;
 import org.jwildfire.swan.flames.repository.FlamesRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Service
 public class FlamesService {
+  public static final int MAX_RANDOM_GRADIENT_COUNT = 64;
+
   private final FlamesRepository repository;
   private final FlameMapper flameMapper;
+  private final FlameParseCache parseCache;
+  private final FlameOptimizer flameOptimizer;
+  private final RandomFlameGeneratorService randomFlameGeneratorService;
 
-  public FlamesService(@Autowired FlamesRepository repository, FlameMapper flameMapper) {
+  public FlamesService(@Autowired FlamesRepository repository, FlameMapper flameMapper, FlameParseCache parseCache, FlameOptimizer flameOptimizer, RandomFlameGeneratorService randomFlameGeneratorService) {
     this.repository = repository;
     this.flameMapper = flameMapper;
+    this.parseCache = parseCache;
+    this.flameOptimizer = flameOptimizer;
+    this.randomFlameGeneratorService = randomFlameGeneratorService;
   }
 
   public int count() {
@@ -55,69 +70,67 @@ public class FlamesService {
   }
 
   public Flame parseFlame(String flameXml) {
+    return parseCache.get(flameXml, this::parseFlameUncached);
+  }
+
+  // parses a flame by the SHA-256 hash of its xml, the xml is only read when the flame is not in the cache
+  public Flame parseFlame(HashCode flameXmlHash, Supplier<String> flameXml) {
+    return parseCache.get(flameXmlHash, flameXml, this::parseFlameUncached);
+  }
+
+  // parses a flame from UTF-8 encoded xml, e.g. a single flame of a mapped flame library
+  public Flame parseFlame(ByteBuffer flameXml) {
+    HashCode flameXmlHash = Hashing.sha256().newHasher().putBytes(flameXml.duplicate()).hash();
+    return parseFlame(flameXmlHash, () -> StandardCharsets.UTF_8.decode(flameXml.duplicate()).toString());
+  }
+
+  public OptimizedFlame optimizeFlame(Flame flame) {
+    Flame res = flame.makeCopy();
+    return new OptimizedFlame(res, flameOptimizer.optimize(res));
+  }
+
+  private Flame parseFlameUncached(String flameXml) {
     org.jwildfire.create.tina.base.Flame jwfFlame =
-        new FlameReader(Prefs.getPrefs()).readFlamesfromXML(flameXml).stream().findFirst().orElseThrow();
+        new FlameReader(Prefs.getPrefs()).readFlamesfromXML(getFirstFlameXml(flameXml)).stream().findFirst().orElseThrow();
     return flameMapper.mapFromJwildfire(jwfFlame);
   }
 
-  private static List<RandomFlameGenerator> allGenerators;
-
-  static {
-    allGenerators = new ArrayList<>();
-    allGenerators.add(new BubblesRandomFlameGenerator());
-    allGenerators.add(new Bubbles3DRandomFlameGenerator());
-    allGenerators.add(new ExperimentalBubbles3DRandomFlameGenerator());
-    allGenerators.add(new ExperimentalSimpleRandomFlameGenerator());
-    allGenerators.add(new JulianDiscRandomFlameGenerator());
-    allGenerators.add(new JuliansRandomFlameGenerator());
-    allGenerators.add(new LinearRandomFlameGenerator());
-    allGenerators.add(new RaysRandomFlameGenerator());
-    allGenerators.add(new SimpleRandomFlameGenerator());
-    allGenerators.add(new SierpinskyRandomFlameGenerator());
-    allGenerators.add(new SphericalRandomFlameGenerator());
-    allGenerators.add(new Spherical3DRandomFlameGenerator());
-    allGenerators.add(new SplitsRandomFlameGenerator());
-    allGenerators.add(new TentacleRandomFlameGenerator());
-    allGenerators.add(new XenomorphRandomFlameGenerator());
-    allGenerators.add(new BrokatRandomFlameGenerator());
-    allGenerators.add(new Brokat3DRandomFlameGenerator());
-    allGenerators.add(new CrossRandomFlameGenerator());
-    allGenerators.add(new DualityRandomFlameGenerator());
-    allGenerators.add(new DuckiesRandomFlameGenerator());
-    allGenerators.add(new ExperimentalGnarlRandomFlameGenerator());
-    allGenerators.add(new FilledFlowers3DRandomFlameGenerator());
-    allGenerators.add(new Flowers3DRandomFlameGenerator());
-    allGenerators.add(new GalaxiesRandomFlameGenerator());
-    allGenerators.add(new GhostsRandomFlameGenerator());
-    allGenerators.add(new OrchidsRandomFlameGenerator());
-    allGenerators.add(new EDiscRandomFlameGenerator());
-    allGenerators.add(new PhoenixRandomFlameGenerator());
-    allGenerators.add(new SpiralsRandomFlameGenerator());
-    allGenerators.add(new Spirals3DRandomFlameGenerator());
-    allGenerators.add(new GnarlRandomFlameGenerator());
-    allGenerators.add(new Gnarl3DRandomFlameGenerator());
-    allGenerators.add(new JulianRingsRandomFlameGenerator());
-    allGenerators.add(new Affine3DRandomFlameGenerator());
-    allGenerators.add(new MachineRandomFlameGenerator());
-    allGenerators.add(new OutlinesRandomFlameGenerator());
-    allGenerators.add(new RasterRandomFlameGenerator());
-    allGenerators.add(new SimpleTilingRandomFlameGenerator());
-    allGenerators.add(new SynthRandomFlameGenerator());
-    allGenerators.add(new TileBallRandomFlameGenerator());
-    allGenerators.add(new LayersRandomFlameGenerator());
-    allGenerators.add(new RunRandomScriptRandomFlameGenerator());
-    allGenerators.add(new BlackAndWhiteRandomFlameGenerator());
+  // only the first flame is used, so the other flames of a flame library are not parsed at all
+  private String getFirstFlameXml(String flameXml) {
+    int firstFlame = flameXml.indexOf("<flame");
+    if(firstFlame < 0 || flameXml.indexOf("<flame", firstFlame + 1) < 0) {
+      return flameXml;
+    }
+    ByteBuffer xml = StandardCharsets.UTF_8.encode(flameXml);
+    List<FlameLibraryEntry> entries = FlameLibraryIndexer.index(xml);
+    return entries.size() > 1 ? StandardCharsets.UTF_8.decode(FlameLibraryIndexer.slice(xml, entries.get(0))).toString() : flameXml;
   }
 
   public RandomFlame generateRandomFlame(List<String> supportedVariations) {
-    int idx = (int)(Math.random()*allGenerators.size());
-    String randGenFlameName = allGenerators.get(idx).getName(); //RandomFlameGeneratorList.DEFAULT_GENERATOR_NAME;
-    String randGenGradientName = new AllRandomGradientGenerator().getName();
-    String randGenSymmetryName = RandomSymmetryGeneratorList.SPARSE.getName();
-    String randGenWFieldName = RandomWeightingFieldGeneratorList.NONE.getName();
+    return generateRandomFlame(VariationFilter.of(supportedVariations));
+  }
+
+  // does not change any global state, so it may be called concurrently for different variation filters
+  public RandomFlame generateRandomFlame(VariationFilter variationFilter) {
+    return generateRandomFlame(variationFilter, null);
+  }
 
-    VariationFuncList.setSupportedVariations(supportedVariations);
-    org.jwildfire.create.tina.base.Flame flame = CliUtils.createRandomFlame(randGenFlameName, randGenGradientName, randGenSymmetryName, randGenWFieldName);
+  // uses a random generator of the given generator names, or of all generators if no names are specified
+  public RandomFlame generateRandomFlame(VariationFilter variationFilter, List<String> generatorNames) {
+    org.jwildfire.create.tina.base.Flame flame = randomFlameGeneratorService.createRandomFlame(generatorNames);
+    variationFilter.apply(flame);
+    return createRandomFlame(flame);
+  }
+
+  // the choices of Swan (generator and replaced variations) are made by the given random generator, the
+  // generators of JWildfire use their own (unseeded) random numbers
+  public RandomFlame generateRandomFlame(VariationFilter variationFilter, List<String> generatorNames, AbstractRandomGenerator randGen) {
+    org.jwildfire.create.tina.base.Flame flame = randomFlameGeneratorService.createRandomFlame(generatorNames, randGen);
+    variationFilter.apply(flame, bound -> Math.min((int) (randGen.random() * bound), bound - 1));
+    return createRandomFlame(flame);
+  }
+
+  private RandomFlame createRandomFlame(org.jwildfire.create.tina.base.Flame flame) {
     String flameXml = null;
     try {
       flameXml = new FlameWriter().getFlameXML(flame);
@@ -127,7 +140,11 @@ public class FlamesService {
     return new RandomFlame(flameMapper.mapFromJwildfire(flame), flameXml);
   }
 
-  public RandomFlame generateRandomGradientForFlame(Flame refFlame) {
+  public List<String> getRandomFlameGeneratorNames() {
+    return randomFlameGeneratorService.getGeneratorNames();
+  }
+
+  public RGBPalette generateRandomGradient() {
     String randGenGradientName = new AllRandomGradientGenerator().getName();
 
     RandomGradientGenerator rndGradGen = RandomGradientGeneratorList.getRandomGradientGeneratorInstance(randGenGradientName, true);
@@ -135,7 +152,22 @@ public class FlamesService {
     boolean fadePaletteColors = Math.random() > 0.21;
     boolean uniformSize = Math.random() > 0.75;
 
-    RGBPalette palette = rndGradGen.generatePalette(palettePoints, fadePaletteColors, uniformSize);
+    return rndGradGen.generatePalette(palettePoints, fadePaletteColors, uniformSize);
+  }
+
+  // generates packed gradients only, which is all a client needs to exchange the gradient of a flame
+  public List<int[]> generateRandomGradients(int count) {
+    if(count<1 || count>MAX_RANDOM_GRADIENT_COUNT) {
+      throw new IllegalArgumentException(String.format("Invalid gradient count %d", count));
+    }
+    return IntStream.range(0, count)
+        .parallel()
+        .mapToObj(i -> LayerMapper.mapGradientFromJwildfire(generateRandomGradient()))
+        .collect(Collectors.toList());
+  }
+
+  public RandomFlame generateRandomGradientForFlame(Flame refFlame) {
+    RGBPalette palette = generateRandomGradient();
 
     org.jwildfire.create.tina.base.Flame jwfFlame = flameMapper.mapToJwildfire(refFlame);
     jwfFlame.getFirstLayer().setPalette(palette);
@@ -0,0 +1,168 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jwildfire.swan.flames.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.jwildfire.swan.flames.mapper.LayerMapper;
+import org.jwildfire.swan.flames.model.flame.RandomFlame;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import javax.annotation.PreDestroy;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Endless feeds of random flames or gradients which are pushed to a client. A feed only generates as many
+ * items as the client has requested (initially and by requestMore), which allows the client to keep a few
+ * items ahead without flooding it. Generation stops as soon as the client cancels the feed or disconnects.
+ * The ids of feeds are random UUIDs created by the server (by createFeedId), each of them may open one feed,
+ * so a client can not request items of the feeds of other clients.
+ */
+@Service
+@Slf4j
+public class RandomFeedService {
+  private final FlamesService flamesService;
+  private final RandomFlamePool randomFlamePool;
+  private final long maxDemand;
+  private final ExecutorService executor;
+  private final ConcurrentMap<String, Feed<?>> feeds = new ConcurrentHashMap<>();
+  // ids which were handed out but not used to open a feed yet
+  private final Cache<String, Boolean> unusedFeedIds;
+
+  public RandomFeedService(FlamesService flamesService, RandomFlamePool randomFlamePool,
+                           @Value("${swan.randomFeed.threads:4}") int threads,
+                           @Value("${swan.randomFeed.maxDemand:16}") long maxDemand,
+                           @Value("${swan.randomFeed.maxUnusedIds:10000}") long maxUnusedIds) {
+    this.flamesService = flamesService;
+    this.randomFlamePool = randomFlamePool;
+    this.maxDemand = Math.max(maxDemand, 1);
+    this.executor = Executors.newFixedThreadPool(Math.max(threads, 1), new ThreadFactoryBuilder()
+        .setNameFormat("random-feed-%d")
+        .setDaemon(true)
+        .build());
+    this.unusedFeedIds = CacheBuilder.newBuilder()
+        .expireAfterWrite(1, TimeUnit.MINUTES)
+        .maximumSize(maxUnusedIds)
+        .build();
+  }
+
+  private class Feed<T> {
+    private final String id;
+    private final FluxSink<T> sink;
+    private final Supplier<T> generator;
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicBoolean producing = new AtomicBoolean();
+
+    Feed(String id, FluxSink<T> sink, Supplier<T> generator) {
+      this.id = id;
+      this.sink = sink;
+      this.generator = generator;
+    }
+
+    void request(long count) {
+      demand.accumulateAndGet(count, (curr, add) -> Math.min(curr + add, maxDemand));
+      schedule();
+    }
+
+    private void schedule() {
+      if(!sink.isCancelled() && demand.get() > 0 && producing.compareAndSet(false, true)) {
+        executor.execute(this::produce);
+      }
+    }
+
+    private void produce() {
+      try {
+        while(!sink.isCancelled() && demand.get() > 0) {
+          T item = generator.get();
+          if(sink.isCancelled()) {
+            break;
+          }
+          demand.decrementAndGet();
+          sink.next(item);
+        }
+      }
+      catch (Throwable ex) {
+        log.warn(String.format("Error generating item of feed %s", id), ex);
+        sink.error(ex);
+        return;
+      }
+      finally {
+        producing.set(false);
+      }
+      // demand may have been added after the loop has ended
+      schedule();
+    }
+  }
+
+  public String createFeedId() {
+    String id = UUID.randomUUID().toString();
+    unusedFeedIds.put(id, Boolean.TRUE);
+    return id;
+  }
+
+  public Flux<RandomFlame> randomFlameFeed(String feedId, VariationFilter variationFilter, int initialDemand) {
+    return createFeed(feedId, initialDemand, () -> randomFlamePool.get(variationFilter));
+  }
+
+  public Flux<int[]> randomGradientFeed(String feedId, int initialDemand) {
+    return createFeed(feedId, initialDemand, () -> LayerMapper.mapGradientFromJwildfire(flamesService.generateRandomGradient()));
+  }
+
+  // allows the feed to generate count further items
+  public void requestMore(String feedId, int count) {
+    Feed<?> feed = feeds.get(feedId);
+    if(feed == null) {
+      throw new IllegalArgumentException(String.format("Unknown or closed feed %s", feedId));
+    }
+    if(count > 0) {
+      feed.request(count);
+    }
+  }
+
+  private <T> Flux<T> createFeed(String feedId, int initialDemand, Supplier<T> generator) {
+    if(feedId == null || unusedFeedIds.asMap().remove(feedId) == null) {
+      throw new IllegalArgumentException(String.format("Unknown or already used feed id %s", feedId));
+    }
+    return Flux.create(sink -> {
+      Feed<T> feed = new Feed<>(feedId, sink, generator);
+      if(feeds.putIfAbsent(feedId, feed) != null) {
+        sink.error(new IllegalArgumentException(String.format("Feed %s is already open", feedId)));
+        return;
+      }
+      sink.onDispose(() -> feeds.remove(feedId, feed));
+      feed.request(Math.max(initialDemand, 0));
+    });
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+}
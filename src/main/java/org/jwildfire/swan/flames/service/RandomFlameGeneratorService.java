@@ -0,0 +1,310 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jwildfire.swan.flames.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.jwildfire.cli.CliUtils;
+import org.jwildfire.create.tina.base.Flame;
+import org.jwildfire.create.tina.random.AbstractRandomGenerator;
+import org.jwildfire.create.tina.randomflame.*;
+import org.jwildfire.create.tina.randomgradient.AllRandomGradientGenerator;
+import org.jwildfire.create.tina.randomsymmetry.RandomSymmetryGeneratorList;
+import org.jwildfire.create.tina.randomweightingfield.RandomWeightingFieldGeneratorList;
+import org.jwildfire.swan.flames.model.flame.RandomFlameGeneratorStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the random flame generators of JWildfire with a deadline, which starts when the generation starts. A
+ * generation which exceeds the deadline, or which waits too long for a free thread, is cancelled and replaced by a
+ * flame of the (fast) fallback generator, which runs under the same limits and fails the request if it exceeds
+ * them, too. Each run is recorded once by the waiting caller, timed-out runs with a latency of (at least) the
+ * deadline, in histograms per generator. Generators which are often slow or time out are chosen less frequently
+ * (property swan.randomFlameGenerator.adaptiveWeights).
+ */
+@Service
+@Slf4j
+public class RandomFlameGeneratorService {
+  // upper bounds of the buckets of the latency histograms
+  private static final long[] BUCKET_BOUNDS_IN_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, Long.MAX_VALUE};
+  // generators are weighted only after some generations, to not punish them for a slow first run
+  private static final long MIN_SAMPLES_FOR_WEIGHT = 10;
+  // generators are never turned off completely, so that they can recover
+  private static final double MIN_WEIGHT = 0.05;
+
+  private static final List<RandomFlameGenerator> allGenerators;
+
+  static {
+    allGenerators = new ArrayList<>();
+    allGenerators.add(new BubblesRandomFlameGenerator());
+    allGenerators.add(new Bubbles3DRandomFlameGenerator());
+    allGenerators.add(new ExperimentalBubbles3DRandomFlameGenerator());
+    allGenerators.add(new ExperimentalSimpleRandomFlameGenerator());
+    allGenerators.add(new JulianDiscRandomFlameGenerator());
+    allGenerators.add(new JuliansRandomFlameGenerator());
+    allGenerators.add(new LinearRandomFlameGenerator());
+    allGenerators.add(new RaysRandomFlameGenerator());
+    allGenerators.add(new SimpleRandomFlameGenerator());
+    allGenerators.add(new SierpinskyRandomFlameGenerator());
+    allGenerators.add(new SphericalRandomFlameGenerator());
+    allGenerators.add(new Spherical3DRandomFlameGenerator());
+    allGenerators.add(new SplitsRandomFlameGenerator());
+    allGenerators.add(new TentacleRandomFlameGenerator());
+    allGenerators.add(new XenomorphRandomFlameGenerator());
+    allGenerators.add(new BrokatRandomFlameGenerator());
+    allGenerators.add(new Brokat3DRandomFlameGenerator());
+    allGenerators.add(new CrossRandomFlameGenerator());
+    allGenerators.add(new DualityRandomFlameGenerator());
+    allGenerators.add(new DuckiesRandomFlameGenerator());
+    allGenerators.add(new ExperimentalGnarlRandomFlameGenerator());
+    allGenerators.add(new FilledFlowers3DRandomFlameGenerator());
+    allGenerators.add(new Flowers3DRandomFlameGenerator());
+    allGenerators.add(new GalaxiesRandomFlameGenerator());
+    allGenerators.add(new GhostsRandomFlameGenerator());
+    allGenerators.add(new OrchidsRandomFlameGenerator());
+    allGenerators.add(new EDiscRandomFlameGenerator());
+    allGenerators.add(new PhoenixRandomFlameGenerator());
+    allGenerators.add(new SpiralsRandomFlameGenerator());
+    allGenerators.add(new Spirals3DRandomFlameGenerator());
+    allGenerators.add(new GnarlRandomFlameGenerator());
+    allGenerators.add(new Gnarl3DRandomFlameGenerator());
+    allGenerators.add(new JulianRingsRandomFlameGenerator());
+    allGenerators.add(new Affine3DRandomFlameGenerator());
+    allGenerators.add(new MachineRandomFlameGenerator());
+    allGenerators.add(new OutlinesRandomFlameGenerator());
+    allGenerators.add(new RasterRandomFlameGenerator());
+    allGenerators.add(new SimpleTilingRandomFlameGenerator());
+    allGenerators.add(new SynthRandomFlameGenerator());
+    allGenerators.add(new TileBallRandomFlameGenerator());
+    allGenerators.add(new LayersRandomFlameGenerator());
+    allGenerators.add(new RunRandomScriptRandomFlameGenerator());
+    allGenerators.add(new BlackAndWhiteRandomFlameGenerator());
+  }
+
+
+  private final Map<String, GeneratorStats> stats = new LinkedHashMap<>();
+  private final long deadlineInMs;
+  private final long queueTimeoutInMs;
+  private final String fallbackGeneratorName;
+  private final boolean adaptiveWeights;
+  private final ExecutorService executor;
+
+  public RandomFlameGeneratorService(@Value("${swan.randomFlameGenerator.deadlineInMs:5000}") long deadlineInMs,
+                                     @Value("${swan.randomFlameGenerator.queueTimeoutInMs:5000}") long queueTimeoutInMs,
+                                     @Value("${swan.randomFlameGenerator.fallback:}") String fallbackGeneratorName,
+                                     @Value("${swan.randomFlameGenerator.adaptiveWeights:true}") boolean adaptiveWeights,
+                                     @Value("${swan.randomFlameGenerator.threads:16}") int threads) {
+    this.deadlineInMs = deadlineInMs;
+    this.queueTimeoutInMs = queueTimeoutInMs;
+    this.fallbackGeneratorName = fallbackGeneratorName != null && !fallbackGeneratorName.isEmpty() ?
+        fallbackGeneratorName : new SimpleRandomFlameGenerator().getName();
+    this.adaptiveWeights = adaptiveWeights;
+    // generators which ignore the cancellation may keep a thread busy, so the number of threads is bounded
+    this.executor = Executors.newFixedThreadPool(Math.max(threads, 1), new ThreadFactoryBuilder()
+        .setNameFormat("random-flame-generator-%d")
+        .setDaemon(true)
+        .build());
+    allGenerators.forEach(generator -> stats.put(generator.getName(), new GeneratorStats()));
+    stats.putIfAbsent(this.fallbackGeneratorName, new GeneratorStats());
+  }
+
+  private static class GeneratorStats {
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_IN_MS.length);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalTimeInMs = new LongAdder();
+    // timed-out runs are included in the count and the histogram, too
+    private final LongAdder timeouts = new LongAdder();
+    // waiting for a free thread is not caused by the generator, so it does not affect its weight
+    private final LongAdder queueTimeouts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    void record(long timeInMs) {
+      int bucket = 0;
+      while(timeInMs > BUCKET_BOUNDS_IN_MS[bucket]) {
+        bucket++;
+      }
+      buckets.incrementAndGet(bucket);
+      count.increment();
+      totalTimeInMs.add(timeInMs);
+    }
+
+    // upper bound of the latency of the given fraction of generations
+    long getPercentile(double fraction) {
+      long total = 0;
+      for(int i = 0; i < buckets.length(); i++) {
+        total += buckets.get(i);
+      }
+      long threshold = (long) Math.ceil(total * fraction);
+      long sum = 0;
+      for(int i = 0; i < buckets.length(); i++) {
+        sum += buckets.get(i);
+        if(sum >= threshold && sum > 0) {
+          return BUCKET_BOUNDS_IN_MS[i];
+        }
+      }
+      return 0;
+    }
+
+    double getWeight(long deadlineInMs) {
+      long samples = count.sum();
+      if(samples < MIN_SAMPLES_FOR_WEIGHT) {
+        return 1.0;
+      }
+      double weight = 1.0 - (double) timeouts.sum() / samples;
+      long p99 = getPercentile(0.99);
+      if(p99 > deadlineInMs) {
+        weight *= (double) deadlineInMs / p99;
+      }
+      return Math.max(weight, MIN_WEIGHT);
+    }
+  }
+
+  public List<String> getGeneratorNames() {
+    return allGenerators.stream().map(RandomFlameGenerator::getName).collect(Collectors.toList());
+  }
+
+  public List<RandomFlameGeneratorStats> getStats() {
+    return stats.entrySet().stream()
+        .map(e -> {
+          GeneratorStats generatorStats = e.getValue();
+          long count = generatorStats.count.sum();
+          return new RandomFlameGeneratorStats(e.getKey(), count, generatorStats.timeouts.sum(), generatorStats.queueTimeouts.sum(),
+              generatorStats.failures.sum(),
+              count > 0 ? (double) generatorStats.totalTimeInMs.sum() / count : 0.0,
+              generatorStats.getPercentile(0.5), generatorStats.getPercentile(0.99), getWeight(e.getKey()));
+        })
+        .collect(Collectors.toList());
+  }
+
+  // uses a random generator of the given generator names, or of all generators if no names are specified
+  public Flame createRandomFlame(List<String> generatorNames) {
+    return createRandomFlame(chooseGenerator(generatorNames, Math::random, adaptiveWeights));
+  }
+
+  // the generator is chosen by the given random generator (and without adaptive weights), so that the same
+  // generator is chosen for the same random sequence
+  public Flame createRandomFlame(List<String> generatorNames, AbstractRandomGenerator randGen) {
+    return createRandomFlame(chooseGenerator(generatorNames, randGen::random, false));
+  }
+
+  private Flame createRandomFlame(String generatorName) {
+    Flame res = generateWithDeadline(generatorName);
+    if(res == null && !generatorName.equals(fallbackGeneratorName)) {
+      log.info("Random flame generator {} did not finish in time, using {}", generatorName, fallbackGeneratorName);
+      res = generateWithDeadline(fallbackGeneratorName);
+    }
+    if(res == null) {
+      throw new RuntimeException(String.format("Random flame generator %s did not finish in time", fallbackGeneratorName));
+    }
+    return res;
+  }
+
+  // returns null if the generation did not start or finish in time, a cancelled generator may keep running when
+  // it ignores the interrupt, so the run is recorded here and not by the generating thread
+  private Flame generateWithDeadline(String generatorName) {
+    GeneratorStats generatorStats = stats.get(generatorName);
+    CompletableFuture<Long> started = new CompletableFuture<>();
+    Future<Flame> future = executor.submit(() -> {
+      started.complete(System.currentTimeMillis());
+      return generate(generatorName);
+    });
+    long startTime;
+    try {
+      try {
+        startTime = started.get(queueTimeoutInMs, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException ex) {
+        future.cancel(true);
+        generatorStats.queueTimeouts.increment();
+        log.info("Random flame generator {} did not start within {} ms", generatorName, queueTimeoutInMs);
+        return null;
+      }
+      try {
+        Flame res = future.get(Math.max(startTime + deadlineInMs - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+        generatorStats.record(System.currentTimeMillis() - startTime);
+        return res;
+      } catch (TimeoutException ex) {
+        future.cancel(true);
+        generatorStats.timeouts.increment();
+        generatorStats.record(Math.max(System.currentTimeMillis() - startTime, deadlineInMs));
+        log.info("Random flame generator {} exceeded the deadline of {} ms", generatorName, deadlineInMs);
+        return null;
+      }
+    } catch (ExecutionException ex) {
+      generatorStats.failures.increment();
+      Throwable cause = ex.getCause();
+      throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+    } catch (InterruptedException ex) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  private Flame generate(String generatorName) {
+    String randGenGradientName = new AllRandomGradientGenerator().getName();
+    String randGenSymmetryName = RandomSymmetryGeneratorList.SPARSE.getName();
+    String randGenWFieldName = RandomWeightingFieldGeneratorList.NONE.getName();
+    return CliUtils.createRandomFlame(generatorName, randGenGradientName, randGenSymmetryName, randGenWFieldName);
+  }
+
+  private double getWeight(String generatorName) {
+    return adaptiveWeights ? stats.get(generatorName).getWeight(deadlineInMs) : 1.0;
+  }
+
+  private String chooseGenerator(List<String> generatorNames, DoubleSupplier random, boolean weighted) {
+    List<String> candidates = allGenerators.stream()
+        .map(RandomFlameGenerator::getName)
+        .filter(name -> generatorNames == null || generatorNames.isEmpty() || generatorNames.contains(name))
+        .collect(Collectors.toList());
+    if(candidates.isEmpty()) {
+      throw new IllegalArgumentException(String.format("Unknown random flame generators %s", generatorNames));
+    }
+    double[] weights = candidates.stream().mapToDouble(name -> weighted ? getWeight(name) : 1.0).toArray();
+    double r = random.getAsDouble() * Arrays.stream(weights).sum();
+    for(int i = 0; i < candidates.size(); i++) {
+      r -= weights[i];
+      if(r < 0) {
+        return candidates.get(i);
+      }
+    }
+    return candidates.get(candidates.size() - 1);
+  }
+}
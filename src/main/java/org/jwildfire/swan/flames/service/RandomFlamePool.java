@@ -0,0 +1,269 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jwildfire.swan.flames.service;
+
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.jwildfire.swan.flames.mapper.FlameBinaryCodec;
+import org.jwildfire.swan.flames.model.flame.Flame;
+import org.jwildfire.swan.flames.model.flame.RandomFlame;
+import org.jwildfire.swan.flames.repository.VariationResourceRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Bounded pool of ready-made random flames, one queue per set of supported variations. Random flames are
+ * taken from the pool when available, and background workers refill a queue as soon as it drops below the
+ * low watermark, so that most requests do not have to wait for (possibly slow) random flame generators.
+ * The pool may be persisted to a file (property swan.randomFlamePool.file) to be warm after a restart.
+ */
+@Component
+@Slf4j
+public class RandomFlamePool {
+  private static final int FILE_VERSION = 1;
+
+  private final FlamesService flamesService;
+  private final VariationResourceRepository resourceRepository;
+  private final int size;
+  private final int lowWatermark;
+  private final int maxVariationSets;
+  private final Path file;
+  private final ConcurrentMap<HashCode, PoolEntry> entries = new ConcurrentHashMap<>();
+  private final ExecutorService workers;
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private volatile boolean shutdown;
+
+  public RandomFlamePool(FlamesService flamesService, VariationResourceRepository resourceRepository,
+                         @Value("${swan.randomFlamePool.size:8}") int size,
+                         @Value("${swan.randomFlamePool.lowWatermark:4}") int lowWatermark,
+                         @Value("${swan.randomFlamePool.threads:2}") int threads,
+                         @Value("${swan.randomFlamePool.maxVariationSets:16}") int maxVariationSets,
+                         @Value("${swan.randomFlamePool.file:}") String file) {
+    this.flamesService = flamesService;
+    this.resourceRepository = resourceRepository;
+    this.size = Math.max(size, 0);
+    this.lowWatermark = Math.min(Math.max(lowWatermark, 0), this.size);
+    this.maxVariationSets = Math.max(maxVariationSets, 1);
+    this.file = file != null && !file.isEmpty() ? Paths.get(file) : null;
+    this.workers = Executors.newFixedThreadPool(Math.max(threads, 1), new ThreadFactoryBuilder()
+        .setNameFormat("random-flame-pool-%d")
+        .setDaemon(true)
+        .setPriority(Thread.MIN_PRIORITY)
+        .build());
+    loadFile();
+  }
+
+  private static class PoolEntry {
+    private final VariationFilter variationFilter;
+    private final BlockingQueue<RandomFlame> flames;
+    private final AtomicBoolean refilling = new AtomicBoolean();
+    private volatile long lastAccessTime = System.currentTimeMillis();
+
+    PoolEntry(VariationFilter variationFilter, int size) {
+      this.variationFilter = variationFilter;
+      this.flames = new ArrayBlockingQueue<>(size);
+    }
+  }
+
+  // takes a random flame from the pool, or generates one if the pool is empty
+  public RandomFlame get(VariationFilter variationFilter) {
+    return take(variationFilter).orElseGet(() -> flamesService.generateRandomFlame(variationFilter));
+  }
+
+  public Optional<RandomFlame> take(VariationFilter variationFilter) {
+    if(size == 0) {
+      return Optional.empty();
+    }
+    PoolEntry entry = entries.computeIfAbsent(variationFilter.getKey(), key -> new PoolEntry(variationFilter, size));
+    entry.lastAccessTime = System.currentTimeMillis();
+    RandomFlame res = entry.flames.poll();
+    // the resources of a pooled flame may have been removed from the resource store meanwhile
+    while(res != null && !resourceRepository.containsAll(res.getFlame())) {
+      res = entry.flames.poll();
+    }
+    if(res != null) {
+      hitCount.incrementAndGet();
+    }
+    else {
+      missCount.incrementAndGet();
+    }
+    if(entry.flames.size() <= lowWatermark) {
+      scheduleRefill(entry);
+    }
+    evictVariationSets();
+    return Optional.ofNullable(res);
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  public int getSize() {
+    return entries.values().stream().mapToInt(entry -> entry.flames.size()).sum();
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    shutdown = true;
+    workers.shutdownNow();
+    try {
+      workers.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    saveFile();
+  }
+
+  private void scheduleRefill(PoolEntry entry) {
+    if(!shutdown && entry.refilling.compareAndSet(false, true)) {
+      workers.execute(() -> refill(entry));
+    }
+  }
+
+  private void refill(PoolEntry entry) {
+    try {
+      while(!shutdown && !Thread.currentThread().isInterrupted() && entry.flames.remainingCapacity() > 0
+          && entries.containsValue(entry)) {
+        if(!entry.flames.offer(flamesService.generateRandomFlame(entry.variationFilter))) {
+          break;
+        }
+      }
+    }
+    catch (Throwable ex) {
+      log.warn("Error refilling random flame pool", ex);
+    }
+    finally {
+      entry.refilling.set(false);
+    }
+  }
+
+  // drop the queues of the variation sets which were not used for the longest time
+  private void evictVariationSets() {
+    while(entries.size() > maxVariationSets) {
+      entries.entrySet().stream()
+          .min(Comparator.comparingLong(e -> e.getValue().lastAccessTime))
+          .ifPresent(e -> entries.remove(e.getKey(), e.getValue()));
+    }
+  }
+
+  // the file keeps large resources inline, because the resource store does not survive a restart
+  private boolean restoreResources(Flame flame) {
+    resourceRepository.externalize(flame);
+    // flames of older files may only have the hash and are dropped if it is unknown
+    return resourceRepository.containsAll(flame);
+  }
+
+  private Optional<byte[]> encodeWithInlineResources(RandomFlame flame) {
+    RandomFlame copy = new RandomFlame(flame.getFlame().makeCopy(), flame.getFlameXml());
+    return resourceRepository.internalize(copy.getFlame()) ? Optional.of(FlameBinaryCodec.encode(copy)) : Optional.empty();
+  }
+
+  private void loadFile() {
+    if(file == null || size == 0 || !Files.exists(file)) {
+      return;
+    }
+    int flameCount = 0;
+    try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if(in.readInt() != FILE_VERSION) {
+        log.warn("Ignoring {} with unsupported version", file);
+        return;
+      }
+      int entryCount = in.readInt();
+      for(int i = 0; i < entryCount; i++) {
+        int variationCount = in.readInt();
+        List<String> variations = new ArrayList<>(variationCount);
+        for(int j = 0; j < variationCount; j++) {
+          variations.add(in.readUTF());
+        }
+        PoolEntry entry = new PoolEntry(VariationFilter.of(variations), size);
+        int count = in.readInt();
+        for(int j = 0; j < count; j++) {
+          byte[] data = new byte[in.readInt()];
+          in.readFully(data);
+          RandomFlame flame = FlameBinaryCodec.decodeRandomFlame(data);
+          if(restoreResources(flame.getFlame()) && entry.flames.offer(flame)) {
+            flameCount++;
+          }
+        }
+        if(entries.size() < maxVariationSets) {
+          entries.put(entry.variationFilter.getKey(), entry);
+        }
+      }
+      log.info("Loaded {} random flames from {}", flameCount, file);
+    } catch (IOException | RuntimeException ex) {
+      log.warn(String.format("Error reading %s", file), ex);
+    }
+  }
+
+  private void saveFile() {
+    if(file == null || size == 0) {
+      return;
+    }
+    List<PoolEntry> currEntries = new ArrayList<>(entries.values());
+    try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+      out.writeInt(FILE_VERSION);
+      out.writeInt(currEntries.size());
+      for(PoolEntry entry: currEntries) {
+        out.writeInt(entry.variationFilter.getNames().size());
+        for(String name: entry.variationFilter.getNames()) {
+          out.writeUTF(name);
+        }
+        List<byte[]> flames = entry.flames.stream()
+            .map(this::encodeWithInlineResources)
+            .flatMap(Optional::stream)
+            .collect(Collectors.toList());
+        out.writeInt(flames.size());
+        for(byte[] data: flames) {
+          out.writeInt(data.length);
+          out.write(data);
+        }
+      }
+    } catch (IOException ex) {
+      log.warn(String.format("Error writing %s", file), ex);
+    }
+  }
+}
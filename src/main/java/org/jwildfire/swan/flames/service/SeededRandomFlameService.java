@@ -0,0 +1,261 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jwildfire.swan.flames.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import lombok.extern.slf4j.Slf4j;
+import org.jwildfire.create.tina.random.MarsagliaRandomGenerator;
+import org.jwildfire.swan.flames.mapper.FlameBinaryCodec;
+import org.jwildfire.swan.flames.model.flame.RandomFlame;
+import org.jwildfire.swan.flames.repository.VariationResourceRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Random flames identified by a seed, a variation set and an optional generator. The choices made by Swan are
+ * driven by a random generator seeded with the seed, but the generators of JWildfire use their own random
+ * numbers. So the first flame generated for a key is stored (in memory and optionally in a directory) and
+ * returned for all later requests, which makes the result stable and allows to cache and share it by link.
+ * The stored flames keep large resources inline, so they do not depend on the (volatile) resource store.
+ * As any seed may be requested, both stores are bounded by size (the least recently used flames are removed
+ * first), and the number of generations is limited per variation set and minute and in total at a time.
+ */
+@Service
+@Slf4j
+public class SeededRandomFlameService {
+  private static final String FILE_EXT = ".swf";
+
+  private final FlamesService flamesService;
+  private final VariationResourceRepository resourceRepository;
+  private final Cache<String, byte[]> cache;
+  private final Path directory;
+  private final long maxDirSizeInBytes;
+  private final Map<String, DirEntry> dirEntries = new ConcurrentHashMap<>();
+  private long dirSize;
+  private final int maxGenerationsPerMinute;
+  // the counters are removed one minute after their creation, i.e. they count per fixed window of one minute
+  private final Cache<HashCode, AtomicInteger> generationCounts = CacheBuilder.newBuilder()
+      .expireAfterWrite(1, TimeUnit.MINUTES)
+      .build();
+  private final Semaphore generationPermits;
+
+  public static class TooManyGenerationsException extends RuntimeException {
+    public TooManyGenerationsException(String message) {
+      super(message);
+    }
+  }
+
+  public SeededRandomFlameService(FlamesService flamesService, VariationResourceRepository resourceRepository,
+                                  @Value("${swan.seededFlames.maxSizeInBytes:67108864}") long maxSizeInBytes,
+                                  @Value("${swan.seededFlames.dir:}") String directory,
+                                  @Value("${swan.seededFlames.maxDirSizeInBytes:268435456}") long maxDirSizeInBytes,
+                                  @Value("${swan.seededFlames.maxGenerationsPerMinute:60}") int maxGenerationsPerMinute,
+                                  @Value("${swan.seededFlames.maxConcurrentGenerations:4}") int maxConcurrentGenerations) {
+    this.flamesService = flamesService;
+    this.resourceRepository = resourceRepository;
+    this.cache = CacheBuilder.newBuilder()
+        .maximumWeight(maxSizeInBytes)
+        .weigher((String key, byte[] data) -> data.length)
+        .build();
+    this.directory = directory != null && !directory.isEmpty() ? Paths.get(directory) : null;
+    this.maxDirSizeInBytes = maxDirSizeInBytes;
+    this.maxGenerationsPerMinute = Math.max(maxGenerationsPerMinute, 1);
+    this.generationPermits = new Semaphore(Math.max(maxConcurrentGenerations, 1));
+    scanDirectory();
+  }
+
+  private static class DirEntry {
+    private final long size;
+    private volatile long lastAccess;
+
+    DirEntry(long size, long lastAccess) {
+      this.size = size;
+      this.lastAccess = lastAccess;
+    }
+  }
+
+  // identifies a seeded random flame
+  public String getKey(VariationFilter variationFilter, String generatorName, long seed) {
+    Hasher hasher = Hashing.sha256().newHasher()
+        .putBytes(variationFilter.getKey().asBytes())
+        .putString(generatorName != null ? generatorName : "", StandardCharsets.UTF_8)
+        .putLong(seed);
+    return hasher.hash().toString();
+  }
+
+  // only a persistent store returns the same flame for a key after a restart
+  public boolean isPersistent() {
+    return directory != null;
+  }
+
+  public boolean isValidGeneratorName(String generatorName) {
+    return generatorName == null || flamesService.getRandomFlameGeneratorNames().contains(generatorName);
+  }
+
+  // the flame in the binary format, with all resources inline
+  public byte[] getRandomFlameData(VariationFilter variationFilter, String generatorName, long seed) {
+    String key = getKey(variationFilter, generatorName, seed);
+    try {
+      return cache.get(key, () -> loadOrGenerate(key, variationFilter, generatorName, seed));
+    } catch (ExecutionException | UncheckedExecutionException ex) {
+      Throwable cause = ex.getCause();
+      throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+    }
+  }
+
+  private byte[] loadOrGenerate(String key, VariationFilter variationFilter, String generatorName, long seed) {
+    Path file = directory != null ? directory.resolve(key + FILE_EXT) : null;
+    if(file != null && Files.exists(file)) {
+      try {
+        byte[] res = Files.readAllBytes(file);
+        // the file may also have been written by another instance sharing the directory
+        DirEntry entry = dirEntries.get(key);
+        if(entry != null) {
+          entry.lastAccess = System.currentTimeMillis();
+        }
+        else {
+          addDirEntry(key, res.length);
+        }
+        return res;
+      } catch (IOException ex) {
+        log.warn(String.format("Error reading %s", file), ex);
+      }
+    }
+    byte[] res = generate(variationFilter, generatorName, seed);
+    if(file != null) {
+      try {
+        Files.createDirectories(directory);
+        Path tmpFile = Files.createTempFile(directory, key, ".tmp");
+        Files.write(tmpFile, res);
+        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        addDirEntry(key, res.length);
+      } catch (IOException ex) {
+        log.warn(String.format("Error writing %s", file), ex);
+      }
+    }
+    return res;
+  }
+
+  private byte[] generate(VariationFilter variationFilter, String generatorName, long seed) {
+    AtomicInteger count;
+    try {
+      count = generationCounts.get(variationFilter.getKey(), AtomicInteger::new);
+    } catch (ExecutionException ex) {
+      throw new RuntimeException(ex.getCause());
+    }
+    if(count.incrementAndGet() > maxGenerationsPerMinute) {
+      throw new TooManyGenerationsException("Too many seeded random flames requested for this variation set");
+    }
+    if(!generationPermits.tryAcquire()) {
+      throw new TooManyGenerationsException("Too many seeded random flames are currently generated");
+    }
+    try {
+      MarsagliaRandomGenerator randGen = new MarsagliaRandomGenerator();
+      randGen.randomize(seed);
+      RandomFlame flame = flamesService.generateRandomFlame(variationFilter,
+          generatorName != null ? List.of(generatorName) : null, randGen);
+      if(!resourceRepository.internalize(flame.getFlame())) {
+        throw new IllegalStateException("Variation resources of the generated flame are not available");
+      }
+      return FlameBinaryCodec.encode(flame);
+    }
+    finally {
+      generationPermits.release();
+    }
+  }
+
+  private void addDirEntry(String key, long size) {
+    synchronized (dirEntries) {
+      if(dirEntries.putIfAbsent(key, new DirEntry(size, System.currentTimeMillis())) == null) {
+        dirSize += size;
+        evictDirEntries(key);
+      }
+    }
+  }
+
+  // removes the least recently used files until the size limit is met, but never the file just added
+  private void evictDirEntries(String keepKey) {
+    if(dirSize <= maxDirSizeInBytes) {
+      return;
+    }
+    List<Map.Entry<String, DirEntry>> candidates = dirEntries.entrySet().stream()
+        .filter(e -> !e.getKey().equals(keepKey))
+        .sorted(Comparator.comparingLong(e -> e.getValue().lastAccess))
+        .collect(Collectors.toList());
+    for(Map.Entry<String, DirEntry> candidate : candidates) {
+      if(dirSize <= maxDirSizeInBytes) {
+        break;
+      }
+      dirEntries.remove(candidate.getKey());
+      dirSize -= candidate.getValue().size;
+      Path file = directory.resolve(candidate.getKey() + FILE_EXT);
+      try {
+        Files.deleteIfExists(file);
+      } catch (IOException ex) {
+        log.warn("Error deleting {}", file, ex);
+      }
+    }
+  }
+
+  // registers the files of an earlier run, so that they count against the size limit
+  private void scanDirectory() {
+    if(directory == null || !Files.isDirectory(directory)) {
+      return;
+    }
+    try(Stream<Path> files = Files.list(directory)) {
+      files.filter(file -> file.getFileName().toString().endsWith(FILE_EXT)).forEach(file -> {
+        String name = file.getFileName().toString();
+        try {
+          DirEntry entry = new DirEntry(Files.size(file), Files.getLastModifiedTime(file).toMillis());
+          synchronized (dirEntries) {
+            dirEntries.put(name.substring(0, name.length() - FILE_EXT.length()), entry);
+            dirSize += entry.size;
+          }
+        } catch (IOException ex) {
+          log.warn("Error reading size of {}", file, ex);
+        }
+      });
+    } catch (IOException ex) {
+      log.warn("Error listing {}", directory, ex);
+    }
+    synchronized (dirEntries) {
+      evictDirEntries(null);
+    }
+  }
+}
@@ -62,8 +62,12 @@ public class SessionInfoService {
   }
 
   public void incRandomGradientsCreated() {
+    incRandomGradientsCreated(1);
+  }
+
+  public void incRandomGradientsCreated(int count) {
     synchronized (this) {
-      randomGradientsCreated++;
+      randomGradientsCreated += count;
     }
   }
 
@@ -0,0 +1,58 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jwildfire.swan.flames.service;
+
+import org.jwildfire.swan.flames.model.flame.Flame;
+import org.jwildfire.swan.flames.model.upload.FlameLibraryEntry;
+import org.jwildfire.swan.flames.repository.TempFileUploadRepository;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Parses uploaded flames and flame libraries. A library is indexed once and only the requested flames are
+ * parsed, all flames are parsed by the FlamesService and thus are cached by the hash of their xml.
+ */
+@Service
+public class TempFlameService {
+  private final TempFileUploadRepository repository;
+  private final FlamesService flamesService;
+
+  public TempFlameService(TempFileUploadRepository repository, FlamesService flamesService) {
+    this.repository = repository;
+    this.flamesService = flamesService;
+  }
+
+  // parses the first flame of the upload
+  public Flame parseFlame(UUID uuid) {
+    List<FlameLibraryEntry> entries = repository.getFlameLibraryEntries(uuid);
+    if(entries.size() > 1) {
+      return flamesService.parseFlame(repository.getFlameLibraryEntryContent(uuid, 0));
+    }
+    // a single flame (or nothing the index could find) is parsed as a whole, keyed by the hash of the upload
+    return flamesService.parseFlame(repository.getContentHash(uuid), () -> repository.getContentAsString(uuid));
+  }
+
+  public List<FlameLibraryEntry> getLibraryEntries(UUID uuid) {
+    return repository.getFlameLibraryEntries(uuid);
+  }
+
+  public Flame parseLibraryEntry(UUID uuid, int index) {
+    return flamesService.parseFlame(repository.getFlameLibraryEntryContent(uuid, index));
+  }
+}
@@ -0,0 +1,161 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jwildfire.swan.flames.service;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.jwildfire.base.Tools;
+import org.jwildfire.create.tina.base.Layer;
+import org.jwildfire.create.tina.base.XForm;
+import org.jwildfire.create.tina.variation.Variation;
+import org.jwildfire.create.tina.variation.VariationFuncList;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * The variations a client is able to render. A filter is passed along with each random flame generation
+ * instead of changing the (global) supported variations of JWildfire, so that generations for different
+ * clients can run in parallel. Generated flames are checked against the filter and unsupported variations
+ * are replaced by random supported variations of the same kind (pre-, post- or regular variation).
+ * Membership is stored as bitset over the indices of the variations of VariationFuncList, variations
+ * unknown to JWildfire are ignored.
+ */
+public final class VariationFilter {
+  private static final String PRE_PREFIX = "pre_";
+  private static final String POST_PREFIX = "post_";
+
+  // all variations of JWildfire, initialized on first use
+  private static final class VariationIndex {
+    private static final List<String> NAMES = List.copyOf(VariationFuncList.getNameList());
+    private static final Map<String, Integer> INDICES = createIndices();
+
+    private static Map<String, Integer> createIndices() {
+      Map<String, Integer> res = new HashMap<>();
+      for(int i=0;i<NAMES.size();i++) {
+        res.putIfAbsent(NAMES.get(i), i);
+      }
+      return res;
+    }
+  }
+
+  private final BitSet supported;
+  private final List<String> names;
+  private final List<String> preVariations;
+  private final List<String> postVariations;
+  private final List<String> regularVariations;
+  private final HashCode key;
+
+  private VariationFilter(BitSet supported) {
+    this.supported = supported;
+    this.names = supported.stream()
+        .mapToObj(VariationIndex.NAMES::get)
+        .sorted()
+        .collect(Collectors.toUnmodifiableList());
+    this.preVariations = names.stream().filter(name -> name.startsWith(PRE_PREFIX)).collect(Collectors.toUnmodifiableList());
+    this.postVariations = names.stream().filter(name -> name.startsWith(POST_PREFIX)).collect(Collectors.toUnmodifiableList());
+    this.regularVariations = names.stream().filter(name -> !name.startsWith(PRE_PREFIX) && !name.startsWith(POST_PREFIX)).collect(Collectors.toUnmodifiableList());
+    Hasher hasher = Hashing.sha256().newHasher();
+    names.forEach(name -> hasher.putString(name, StandardCharsets.UTF_8).putByte((byte) 0));
+    this.key = hasher.hash();
+  }
+
+  public static VariationFilter of(Collection<String> supportedVariations) {
+    BitSet supported = new BitSet(VariationIndex.NAMES.size());
+    for(String name: supportedVariations) {
+      Integer idx = VariationIndex.INDICES.get(name);
+      if(idx != null) {
+        supported.set(idx);
+      }
+    }
+    return new VariationFilter(supported);
+  }
+
+  public boolean isSupported(String variationName) {
+    Integer idx = VariationIndex.INDICES.get(variationName);
+    return idx != null && supported.get(idx);
+  }
+
+  // the supported variations, sorted by name
+  public List<String> getNames() {
+    return names;
+  }
+
+  // identifies the set of supported variations, independent of the order they were specified
+  public HashCode getKey() {
+    return key;
+  }
+
+  // replaces all unsupported variations of the given flame, returns the number of replaced variations
+  public int apply(org.jwildfire.create.tina.base.Flame flame) {
+    return apply(flame, Tools::randomInt);
+  }
+
+  // randomInt returns a random int between 0 (inclusive) and the given bound (exclusive)
+  public int apply(org.jwildfire.create.tina.base.Flame flame, IntUnaryOperator randomInt) {
+    int replaced = 0;
+    for(Layer layer: flame.getLayers()) {
+      for(XForm xForm: layer.getXForms()) {
+        replaced += apply(xForm, randomInt);
+      }
+      for(XForm xForm: layer.getFinalXForms()) {
+        replaced += apply(xForm, randomInt);
+      }
+    }
+    return replaced;
+  }
+
+  private int apply(XForm xForm, IntUnaryOperator randomInt) {
+    int replaced = 0;
+    List<Variation> unsupported = new ArrayList<>();
+    for(int i=0;i<xForm.getVariationCount();i++) {
+      Variation variation = xForm.getVariation(i);
+      if(!isSupported(variation.getFunc().getName())) {
+        unsupported.add(variation);
+      }
+    }
+    for(Variation variation: unsupported) {
+      List<String> candidates = getCandidates(variation.getFunc().getName());
+      if(candidates.isEmpty()) {
+        xForm.removeVariation(variation);
+      }
+      else {
+        variation.setFunc(VariationFuncList.getVariationFuncInstance(candidates.get(randomInt.applyAsInt(candidates.size())), true));
+      }
+      replaced++;
+    }
+    return replaced;
+  }
+
+  private List<String> getCandidates(String variationName) {
+    if(variationName.startsWith(PRE_PREFIX)) {
+      return preVariations;
+    }
+    else if(variationName.startsWith(POST_PREFIX)) {
+      return postVariations;
+    }
+    return regularVariations;
+  }
+}
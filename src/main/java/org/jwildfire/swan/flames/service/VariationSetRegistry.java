@@ -0,0 +1,60 @@
+/*
+  JWildfire Swan - fractal flames the playful way, GPU accelerated
+  Copyright (C) 2021-2022 Andreas Maschke
+
+  This is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser
+  General Public License as published by the Free Software Foundation; either version 2.1 of the
+  License, or (at your option) any later version.
+
+  This software is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+  even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public License along with this software;
+  if not, write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jwildfire.swan.flames.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Variation sets which were registered by clients, so that the (long) list of supported variations has to be
+ * sent only once. The handle of a set is derived from its content, so registering the same set again (e.g.
+ * after it has expired or the server was restarted) results in the same handle.
+ */
+@Component
+public class VariationSetRegistry {
+  private static final int HANDLE_LENGTH = 16;
+
+  private final Cache<String, VariationFilter> variationSets;
+
+  public VariationSetRegistry(@Value("${swan.variationSets.expiryInHours:24}") long expiryInHours,
+                              @Value("${swan.variationSets.maxCount:1000}") long maxCount) {
+    this.variationSets = CacheBuilder.newBuilder()
+        .expireAfterAccess(expiryInHours, TimeUnit.HOURS)
+        .maximumSize(maxCount)
+        .build();
+  }
+
+  public String register(List<String> supportedVariations) {
+    VariationFilter filter = VariationFilter.of(supportedVariations);
+    String handle = filter.getKey().toString().substring(0, HANDLE_LENGTH);
+    variationSets.asMap().putIfAbsent(handle, filter);
+    return handle;
+  }
+
+  public VariationFilter get(String handle) {
+    VariationFilter res = variationSets.getIfPresent(handle);
+    if(res == null) {
+      throw new IllegalArgumentException(String.format("Unknown or expired variation set %s", handle));
+    }
+    return res;
+  }
+}